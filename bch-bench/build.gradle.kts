@@ -0,0 +1,77 @@
+import me.champeau.gradle.JMHPluginExtension
+
+plugins {
+    java
+    id("me.champeau.gradle.jmh") version "0.4.7"
+}
+
+group = "nchain"
+version = "1.0-SNAPSHOT"
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    implementation("com.fasterxml.jackson.core", "jackson-databind", "2.5.2")
+    jmh(project(":bch-crypto"))
+    jmh(project(":bch-tx"))
+    jmh("com.madgag.spongycastle", "core", "1.58.0.0")
+    jmh("com.fasterxml.jackson.core", "jackson-databind", "2.5.2")
+}
+
+configure<JavaPluginConvention> {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    // The script and transaction suites replay the data-driven test vectors of bch-tx.
+    sourceSets.getByName("jmh").resources.srcDir("../bch-tx/src/test/resources")
+}
+
+val jmhResults = file("$buildDir/reports/jmh/results.json")
+val baselineDir = file("baselines")
+
+// ./gradlew :bch-bench:jmh [-PjmhInclude=Sighash]
+configure<JMHPluginExtension> {
+    jmhVersion = "1.21"
+    if (project.hasProperty("jmhInclude"))
+        include = listOf(project.property("jmhInclude") as String)
+    if (project.hasProperty("jmhWorkload"))
+        jvmArgsAppend = listOf("-Dbench.workload=" + file(project.property("jmhWorkload") as String).path)
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    // Every result carries gc.alloc.rate.norm, the bytes allocated per operation.
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    resultsFile = jmhResults
+    humanOutputFile = file("$buildDir/reports/jmh/human.txt")
+    duplicateClassesStrategy = DuplicatesStrategy.EXCLUDE
+}
+
+val mainClasspath = the<JavaPluginConvention>().sourceSets.getByName("main").runtimeClasspath
+
+// Writes the results of the last jmh run as baselines/<version>.tsv, a sorted text table meant to be committed.
+task<JavaExec>("jmhBaseline") {
+    description = "Saves the last JMH results as the baseline of this version."
+    classpath = mainClasspath
+    main = "com.nchain.bench.Baseline"
+    args("write", jmhResults, file("$baselineDir/${project.findProperty("baselineName") ?: project.version}.tsv"))
+}
+
+// ./gradlew :bch-bench:jmhCompare -Pbaseline=baselines/1.0.tsv [-Pthreshold=10]
+task<JavaExec>("jmhCompare") {
+    description = "Compares the last JMH results with a saved baseline."
+    classpath = mainClasspath
+    main = "com.nchain.bench.Baseline"
+    args("compare", file(project.findProperty("baseline") ?: "$baselineDir/${project.version}.tsv"), jmhResults,
+            project.findProperty("threshold") ?: "5")
+}
+
+// ./gradlew :bch-bench:jmhWorkload -Pmegabytes=32 [-Pseed=1], then -PjmhInclude=BlockValidation -PjmhWorkload=<file>
+task<JavaExec>("jmhWorkload") {
+    description = "Writes a synthetic block workload for BlockValidationBenchmark to replay."
+    classpath = the<JavaPluginConvention>().sourceSets.getByName("jmh").runtimeClasspath
+    main = "com.nchain.tools.WorkloadGenerator"
+    args(file("$buildDir/workloads/${project.findProperty("megabytes") ?: "32"}mb.workload"),
+            project.findProperty("seed") ?: "1", project.findProperty("megabytes") ?: "32")
+    doFirst { file("$buildDir/workloads").mkdirs() }
+}
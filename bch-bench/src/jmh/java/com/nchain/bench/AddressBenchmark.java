@@ -0,0 +1,90 @@
+package com.nchain.bench;
+
+import com.nchain.address.Base58;
+import com.nchain.address.CashAddress;
+import com.nchain.address.CashAddressCodec;
+import com.nchain.params.MainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Address encoding of a P2PKH hash: checked Base58 (legacy) and CashAddr, through the String APIs and through the
+ * buffer APIs that allocate nothing per call, plus the full [CashAddress] round trips.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AddressBenchmark {
+    private byte[] hash160;
+    private byte[] payload;
+    private String legacy;
+    private String cashAddr;
+    private CashAddressCodec codec;
+    private final char[] chars = new char[64];
+    private final byte[] bytes = new byte[64];
+
+    @Setup
+    public void setup() {
+        Random random = Fixtures.random();
+        hash160 = Fixtures.bytes(random, 20);
+        CashAddress address = CashAddress.fromHash160(MainNetParams.INSTANCE, hash160);
+        payload = new byte[21];
+        System.arraycopy(hash160, 0, payload, 1, 20);
+        legacy = address.toBase58();
+        cashAddr = address.toCashAddress();
+        codec = new CashAddressCodec(MainNetParams.INSTANCE);
+    }
+
+    @Benchmark
+    public String base58Encode() {
+        return Base58.encodeChecked(payload);
+    }
+
+    @Benchmark
+    public int base58EncodeInto() {
+        return Base58.encodeChecked(payload, 0, payload.length, chars, 0);
+    }
+
+    @Benchmark
+    public byte[] base58Decode() {
+        return Base58.decodeChecked(legacy);
+    }
+
+    @Benchmark
+    public int base58DecodeInto() {
+        return Base58.decodeChecked(legacy, bytes, 0);
+    }
+
+    @Benchmark
+    public String cashAddrEncode() {
+        return codec.encode(CashAddress.CashAddressType.PubKey, hash160);
+    }
+
+    @Benchmark
+    public int cashAddrEncodeInto() {
+        return codec.encode(CashAddress.CashAddressType.PubKey, hash160, chars, 0);
+    }
+
+    @Benchmark
+    public CashAddressCodec.Status cashAddrCheck() {
+        return codec.check(cashAddr);
+    }
+
+    @Benchmark
+    public String legacyToCashAddr() {
+        return CashAddress.from(legacy).toCashAddress();
+    }
+
+    @Benchmark
+    public String cashAddrToLegacy() {
+        return CashAddress.from(cashAddr).toBase58();
+    }
+}
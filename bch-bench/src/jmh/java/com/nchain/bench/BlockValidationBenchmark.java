@@ -0,0 +1,70 @@
+package com.nchain.bench;
+
+import com.nchain.tools.Workload;
+import com.nchain.tools.WorkloadGenerator;
+import com.nchain.tx.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a {@link WorkloadGenerator} workload through script validation, the way a validator checks a block: every
+ * input of every transaction, in order, on one thread. Scores are per block; divide by its size to compare with the
+ * time budget of a block interval. By default a small workload is generated on setup; pass a file written by
+ * {@code WorkloadGenerator <file> <seed> <megabytes>} with {@code -p workload=<file>}, or the bench.workload system
+ * property, to replay a 32 MB one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BlockValidationBenchmark {
+    /** A workload file, or empty for the bench.workload property or else {@link #transactions} generated ones. */
+    @Param("")
+    public String workload;
+
+    @Param("2000")
+    public int transactions;
+
+    private Workload block;
+
+    @Setup
+    public void setup() throws IOException {
+        if (workload.isEmpty())
+            workload = System.getProperty("bench.workload", "");
+        if (workload.isEmpty()) {
+            WorkloadGenerator generator = new WorkloadGenerator(1);
+            generator.setTransactions(transactions);
+            block = generator.generate();
+        } else {
+            InputStream in = new BufferedInputStream(new FileInputStream(workload));
+            try {
+                block = Workload.read(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Benchmark
+    public void validate() {
+        for (Transaction tx : block.getTransactions())
+            block.verify(tx);
+    }
+}
@@ -0,0 +1,55 @@
+package com.nchain.bench;
+
+import com.nchain.key.ECKey;
+import com.nchain.shared.Sha256Hash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ECDSA over secp256k1: signing, which is deterministic (RFC 6979), and verification from a parsed signature and from
+ * its DER encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EcdsaBenchmark {
+    private ECKey key;
+    private ECKey publicKey;
+    private Sha256Hash hash;
+    private ECKey.ECDSASignature signature;
+    private byte[] der;
+
+    @Setup
+    public void setup() {
+        Random random = Fixtures.random();
+        key = ECKey.fromPrivate(new BigInteger(1, Fixtures.bytes(random, 32)), true);
+        publicKey = ECKey.fromPublicOnly(key.getPubKey());
+        hash = Sha256Hash.wrap(Fixtures.bytes(random, 32));
+        signature = key.sign(hash);
+        der = signature.encodeToDER();
+    }
+
+    @Benchmark
+    public ECKey.ECDSASignature sign() {
+        return key.sign(hash);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return publicKey.verify(hash, signature);
+    }
+
+    @Benchmark
+    public boolean verifyDer() {
+        return publicKey.verify(hash.getBytes(), der);
+    }
+}
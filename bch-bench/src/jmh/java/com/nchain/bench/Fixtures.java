@@ -0,0 +1,59 @@
+package com.nchain.bench;
+
+import com.nchain.script.Script;
+import com.nchain.script.ScriptBuilder;
+import com.nchain.script.ScriptOpCodes;
+import com.nchain.shared.Sha256Hash;
+import com.nchain.tx.Coin;
+import com.nchain.tx.Transaction;
+import com.nchain.tx.TransactionBuilder;
+import com.nchain.tx.TransactionInput;
+import com.nchain.tx.TransactionOutPoint;
+import com.nchain.tx.TransactionOutput;
+
+import java.util.Random;
+
+/**
+ * Deterministic inputs for the benchmarks, so that runs of different releases measure the same work.
+ */
+final class Fixtures {
+    static final long SEED = 0x6263682d62656e63L;
+
+    private Fixtures() {
+    }
+
+    static Random random() {
+        return new Random(SEED);
+    }
+
+    static byte[] bytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /** A pay-to-pubkey-hash output script. */
+    static Script p2pkh(byte[] hash160) {
+        return new ScriptBuilder().op(ScriptOpCodes.OP_DUP).op(ScriptOpCodes.OP_HASH160).data(hash160)
+                .op(ScriptOpCodes.OP_EQUALVERIFY).op(ScriptOpCodes.OP_CHECKSIG).build();
+    }
+
+    /**
+     * A transaction shaped like a typical payment: P2PKH inputs whose scriptSigs hold a 72 byte signature and a 33
+     * byte key, and P2PKH outputs.
+     */
+    static Transaction transaction(int inputs, int outputs) {
+        Random random = random();
+        TransactionBuilder tx = new TransactionBuilder();
+        tx.setVersion(1);
+        tx.setLockTime(0);
+        for (int i = 0; i < inputs; i++) {
+            byte[] scriptSig = new ScriptBuilder().data(bytes(random, 72)).data(bytes(random, 33)).build().getProgram();
+            TransactionOutPoint outpoint = new TransactionOutPoint(i % 4, Sha256Hash.wrap(bytes(random, 32)));
+            tx.addInput(new TransactionInput(scriptSig, outpoint));
+        }
+        for (int i = 0; i < outputs; i++)
+            tx.addOutput(new TransactionOutput(Coin.valueOf(10000 + i), p2pkh(bytes(random, 20)).getProgram()));
+        return tx.build();
+    }
+}
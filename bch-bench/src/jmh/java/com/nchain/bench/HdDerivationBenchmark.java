@@ -0,0 +1,67 @@
+package com.nchain.bench;
+
+import com.nchain.bip32.ChildNumber;
+import com.nchain.bip32.DeterministicKey;
+import com.nchain.bip32.HDKeyDerivation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BIP32 derivation: single children from a private or a public parent, and a range of children at once as a wallet
+ * does when it scans for used addresses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HdDerivationBenchmark {
+    private static final int RANGE = 100;
+
+    private byte[] seed;
+    private DeterministicKey account;
+    private DeterministicKey watching;
+    private final ChildNumber hardened = new ChildNumber(7, true);
+    private final ChildNumber normal = new ChildNumber(7, false);
+
+    @Setup
+    public void setup() {
+        seed = Fixtures.bytes(Fixtures.random(), 64);
+        DeterministicKey master = HDKeyDerivation.INSTANCE.createMasterPrivateKey(seed);
+        account = HDKeyDerivation.INSTANCE.deriveChildKey(master, new ChildNumber(0, true));
+        watching = account.dropPrivateBytes().dropParent();
+    }
+
+    @Benchmark
+    public DeterministicKey masterFromSeed() {
+        return HDKeyDerivation.INSTANCE.createMasterPrivateKey(seed);
+    }
+
+    @Benchmark
+    public DeterministicKey privateHardened() {
+        return HDKeyDerivation.INSTANCE.deriveChildKey(account, hardened);
+    }
+
+    @Benchmark
+    public DeterministicKey privateNormal() {
+        return HDKeyDerivation.INSTANCE.deriveChildKey(account, normal);
+    }
+
+    @Benchmark
+    public DeterministicKey publicNormal() {
+        return HDKeyDerivation.INSTANCE.deriveChildKey(watching, normal);
+    }
+
+    /** Scores are per child. */
+    @Benchmark
+    @OperationsPerInvocation(RANGE)
+    public HDKeyDerivation.DerivedChildren publicRange() {
+        return HDKeyDerivation.INSTANCE.deriveChildren(watching, 0, RANGE, 1);
+    }
+}
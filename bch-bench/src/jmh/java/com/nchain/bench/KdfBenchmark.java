@@ -0,0 +1,50 @@
+package com.nchain.bench;
+
+import com.nchain.bip39.PBKDF2SHA512;
+import com.nchain.keycrypter.Scrypt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Password based key derivation: PBKDF2-HMAC-SHA512 with the 2048 iterations of a BIP39 seed, and scrypt with the
+ * parameters of BIP38 (N = 16384, r = 8, p = 8), on one thread or on as many as there are lanes. The gc profiler only
+ * sees the benchmark thread, so the allocation of the parallel runs leaves out the 16 MB lane state of each worker.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class KdfBenchmark {
+    // Separate, so that the parameter doesn't multiply the PBKDF2 runs.
+    @State(Scope.Thread)
+    public static class ScryptThreads {
+        @Param({"1", "8"})
+        public int parallelism;
+    }
+
+    private byte[] password;
+    private byte[] salt;
+
+    @Setup
+    public void setup() {
+        password = "correct horse battery staple".getBytes();
+        salt = Fixtures.bytes(Fixtures.random(), 8);
+    }
+
+    @Benchmark
+    public byte[] pbkdf2Bip39() {
+        return PBKDF2SHA512.INSTANCE.derive(password, salt, 2048, 64);
+    }
+
+    @Benchmark
+    public byte[] scryptBip38(ScryptThreads threads) {
+        return Scrypt.scrypt(password, salt, 16384, 8, 8, 64, threads.parallelism);
+    }
+}
@@ -0,0 +1,60 @@
+package com.nchain.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Script interpreter throughput over the passing vectors of script_tests.json and the inputs of tx_valid.json. Each
+ * operation verifies every vector once; the scores are per vector.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScriptBenchmark {
+    // Vectors verified per operation.
+    private static final int SCRIPT_TESTS = 1024;
+    private static final int TX_VALID_INPUTS = 128;
+
+    private TestVectors.Spend[] scriptTests;
+    private TestVectors.Spend[] txValid;
+
+    @Setup
+    public void setup() throws IOException {
+        scriptTests = sample(TestVectors.scriptTests(), SCRIPT_TESTS);
+        txValid = sample(TestVectors.validTransactions(), TX_VALID_INPUTS);
+    }
+
+    // Repeats the vectors up to a fixed count, so that @OperationsPerInvocation holds whatever the files contain.
+    private static TestVectors.Spend[] sample(List<TestVectors.Spend> spends, int count) {
+        if (spends.isEmpty())
+            throw new IllegalStateException("No test vectors");
+        TestVectors.Spend[] sample = new TestVectors.Spend[count];
+        for (int i = 0; i < count; i++)
+            sample[i] = spends.get(i % spends.size());
+        return sample;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCRIPT_TESTS)
+    public void scriptTests() {
+        for (TestVectors.Spend spend : scriptTests)
+            spend.verify();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TX_VALID_INPUTS)
+    public void txValidInputs() {
+        for (TestVectors.Spend spend : txValid)
+            spend.verify();
+    }
+}
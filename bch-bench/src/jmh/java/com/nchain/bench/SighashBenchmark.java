@@ -0,0 +1,62 @@
+package com.nchain.bench;
+
+import com.nchain.bitcoinkt.core.TransactionSignatureService;
+import com.nchain.script.Script;
+import com.nchain.shared.Sha256Hash;
+import com.nchain.tx.Coin;
+import com.nchain.tx.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signature hashes of every input of a transaction, as when signing or verifying all of it. The legacy algorithm
+ * serializes a modified copy of the transaction per input, so its cost grows with the square of the input count; the
+ * FORKID (BIP143-style) algorithm should grow linearly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SighashBenchmark {
+    @Param({"1", "10", "100"})
+    public int inputs;
+
+    private Transaction tx;
+    private byte[] scriptCode;
+    private final Coin value = Coin.valueOf(100000);
+    private final Set<Script.VerifyFlag> flags = EnumSet.noneOf(Script.VerifyFlag.class);
+
+    @Setup
+    public void setup() {
+        tx = Fixtures.transaction(inputs, 2);
+        scriptCode = Fixtures.p2pkh(Fixtures.bytes(Fixtures.random(), 20)).getProgram();
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) {
+        for (int i = 0; i < inputs; i++) {
+            Sha256Hash hash = TransactionSignatureService.INSTANCE.hashForSignature(tx, i, scriptCode,
+                    Transaction.SigHash.ALL, false);
+            bh.consume(hash);
+        }
+    }
+
+    @Benchmark
+    public void forkId(Blackhole bh) {
+        for (int i = 0; i < inputs; i++) {
+            Sha256Hash hash = TransactionSignatureService.INSTANCE.hashForSignatureWitness(tx, i, scriptCode, value,
+                    Transaction.SigHash.ALL, false, flags);
+            bh.consume(hash);
+        }
+    }
+}
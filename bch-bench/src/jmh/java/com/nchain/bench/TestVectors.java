@@ -0,0 +1,210 @@
+package com.nchain.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nchain.script.Script;
+import com.nchain.script.ScriptBuilder;
+import com.nchain.script.ScriptOpCodes;
+import com.nchain.shared.Sha256Hash;
+import com.nchain.tools.ByteUtils;
+import com.nchain.tools.HEX;
+import com.nchain.tx.Coin;
+import com.nchain.tx.Transaction;
+import com.nchain.tx.TransactionBuilder;
+import com.nchain.tx.TransactionInput;
+import com.nchain.tx.TransactionOutPoint;
+import com.nchain.tx.TransactionOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads the data-driven test vectors of bch-tx, script_tests.json and tx_valid.json, as ready to run script
+ * verifications. Only the vectors that are expected to pass are kept, so that every benchmark operation runs a script
+ * to completion rather than measuring how fast an error is thrown; vectors the loaders here can't reproduce are left
+ * out too.
+ */
+final class TestVectors {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** A scriptSig and the scriptPubKey it spends, with everything needed to verify it. */
+    static final class Spend {
+        final Transaction tx;
+        final int index;
+        final Script scriptSig;
+        final Script scriptPubKey;
+        final Coin value;
+        final Set<Script.VerifyFlag> flags;
+
+        Spend(Transaction tx, int index, Script scriptSig, Script scriptPubKey, Coin value, Set<Script.VerifyFlag> flags) {
+            this.tx = tx;
+            this.index = index;
+            this.scriptSig = scriptSig;
+            this.scriptPubKey = scriptPubKey;
+            this.value = value;
+            this.flags = flags;
+        }
+
+        void verify() {
+            scriptSig.correctlySpends(tx, index, scriptPubKey, value, flags);
+        }
+
+        // Whether the verification passes.
+        boolean passes() {
+            try {
+                verify();
+                return true;
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+    }
+
+    private TestVectors() {
+    }
+
+    /** The script_tests.json vectors expected to be OK, each in its own crediting and spending transactions. */
+    static List<Spend> scriptTests() throws IOException {
+        List<Spend> spends = new ArrayList<Spend>();
+        for (JsonNode test : read("script_tests.json")) {
+            if (test.size() < 4)
+                continue; // A comment.
+            int i = 0;
+            Coin value = Coin.valueOf(0);
+            if (test.get(0).isArray())
+                value = Coin.parseCoin(test.get(i++).get(0).asText());
+            String scriptSig = test.get(i++).asText();
+            String scriptPubKey = test.get(i++).asText();
+            String flags = test.get(i++).asText();
+            if (!"OK".equals(test.get(i).asText()))
+                continue;
+            try {
+                Script sig = parseScript(scriptSig);
+                Script pubKey = parseScript(scriptPubKey);
+                Transaction credit = creditingTransaction(pubKey, value);
+                Spend spend = new Spend(spendingTransaction(sig, credit), 0, sig, pubKey, value, parseFlags(flags));
+                if (spend.passes())
+                    spends.add(spend);
+            } catch (RuntimeException e) {
+                // Not supported by this parser; leave it to the unit tests.
+            }
+        }
+        return spends;
+    }
+
+    /** The input scripts of the tx_valid.json transactions. */
+    static List<Spend> validTransactions() throws IOException {
+        List<Spend> spends = new ArrayList<Spend>();
+        for (JsonNode test : read("tx_valid.json")) {
+            if (test.size() == 1 && test.get(0).isTextual())
+                continue; // A comment.
+            Map<TransactionOutPoint, Script> scriptPubKeys = new HashMap<TransactionOutPoint, Script>();
+            for (JsonNode input : test.get(0)) {
+                Sha256Hash hash = Sha256Hash.wrap(HEX.decode(input.get(0).asText()));
+                scriptPubKeys.put(new TransactionOutPoint(input.get(1).asInt(), hash), parseScript(input.get(2).asText()));
+            }
+            try {
+                Transaction tx = Transaction.parse(test.get(1).asText().toLowerCase());
+                Set<Script.VerifyFlag> flags = parseFlags(test.get(2).asText());
+                for (int i = 0; i < tx.getInputs().size(); i++) {
+                    TransactionInput input = tx.getInputs().get(i);
+                    TransactionOutPoint outpoint = input.getOutpoint();
+                    if (outpoint.isUnconnected())
+                        outpoint = new TransactionOutPoint(-1, outpoint.getHash());
+                    Spend spend = new Spend(tx, i, input.getScriptSig(), scriptPubKeys.get(outpoint), Coin.getZERO(), flags);
+                    if (spend.passes())
+                        spends.add(spend);
+                }
+            } catch (RuntimeException e) {
+                // As above.
+            }
+        }
+        return spends;
+    }
+
+    /** The raw transactions of tx_valid.json. */
+    static List<byte[]> rawTransactions() throws IOException {
+        List<byte[]> transactions = new ArrayList<byte[]>();
+        for (JsonNode test : read("tx_valid.json")) {
+            if (test.size() == 1 && test.get(0).isTextual())
+                continue;
+            transactions.add(HEX.decode(test.get(1).asText().toLowerCase()));
+        }
+        return transactions;
+    }
+
+    private static JsonNode read(String resource) throws IOException {
+        InputStream in = TestVectors.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null)
+            throw new IOException(resource + " is not on the classpath");
+        try {
+            return new ObjectMapper().readTree(new InputStreamReader(in, UTF8));
+        } finally {
+            in.close();
+        }
+    }
+
+    // The script notation of the test vectors, as read by the bch-tx tests.
+    static Script parseScript(String string) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String w : string.split("[ \\t\\n]")) {
+            if (w.isEmpty())
+                continue;
+            if (w.matches("^-?[0-9]*$")) {
+                long val = Long.parseLong(w);
+                if (val >= -1 && val <= 16)
+                    out.write(Script.encodeToOpN((int) val));
+                else
+                    Script.writeBytes(out, ByteUtils.reverseBytes(ByteUtils.encodeMPI(BigInteger.valueOf(val), false)));
+            } else if (w.matches("^0x[0-9a-fA-F]*$")) {
+                out.write(HEX.decode(w.substring(2).toLowerCase()));
+            } else if (w.length() >= 2 && w.startsWith("'") && w.endsWith("'")) {
+                Script.writeBytes(out, w.substring(1, w.length() - 1).getBytes(UTF8));
+            } else if (ScriptOpCodes.getOpCode(w) != ScriptOpCodes.OP_INVALIDOPCODE) {
+                out.write(ScriptOpCodes.getOpCode(w));
+            } else if (w.startsWith("OP_") && ScriptOpCodes.getOpCode(w.substring(3)) != ScriptOpCodes.OP_INVALIDOPCODE) {
+                out.write(ScriptOpCodes.getOpCode(w.substring(3)));
+            } else {
+                throw new IllegalArgumentException("Invalid data: " + w);
+            }
+        }
+        return new Script(out.toByteArray());
+    }
+
+    static Set<Script.VerifyFlag> parseFlags(String str) {
+        Set<Script.VerifyFlag> flags = EnumSet.noneOf(Script.VerifyFlag.class);
+        if (!"NONE".equals(str) && !"".equals(str)) {
+            for (String flag : str.split(","))
+                flags.add(Script.VerifyFlag.valueOf(flag));
+        }
+        return flags;
+    }
+
+    private static Transaction creditingTransaction(Script scriptPubKey, Coin value) {
+        TransactionBuilder tx = new TransactionBuilder();
+        tx.setVersion(1);
+        tx.setLockTime(0);
+        tx.addInput(new TransactionInput(new ScriptBuilder().number(0).number(0).build().getProgram()));
+        tx.addOutput(new TransactionOutput(value, scriptPubKey.getProgram()));
+        return tx.build();
+    }
+
+    private static Transaction spendingTransaction(Script scriptSig, Transaction credit) {
+        TransactionBuilder tx = new TransactionBuilder();
+        tx.setVersion(1);
+        tx.setLockTime(0);
+        tx.addInput(new TransactionInput(scriptSig.getProgram(), TransactionOutPoint.create(0, credit)));
+        tx.addOutput(new TransactionOutput(credit.getOutput(0).getValue(), new ScriptBuilder().build().getProgram()));
+        return tx.build();
+    }
+}
@@ -0,0 +1,79 @@
+package com.nchain.bench;
+
+import com.nchain.shared.Sha256Hash;
+import com.nchain.tx.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transaction parsing, serialization and txid computation, on synthetic payments of a few sizes and on the
+ * transactions of tx_valid.json. The txid is cached once computed, so it is measured on freshly parsed transactions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransactionBenchmark {
+    private static final int VECTORS = 64;
+
+    @State(Scope.Thread)
+    public static class Payment {
+        /** Inputs and outputs of the synthetic transaction. */
+        @Param({"1x2", "10x2", "100x10"})
+        public String shape;
+
+        Transaction tx;
+        byte[] raw;
+
+        @Setup
+        public void setup() {
+            String[] io = shape.split("x");
+            tx = Fixtures.transaction(Integer.parseInt(io[0]), Integer.parseInt(io[1]));
+            raw = tx.bitcoinSerialize();
+        }
+    }
+
+    private byte[][] vectors;
+
+    @Setup
+    public void setup() throws IOException {
+        List<byte[]> all = TestVectors.rawTransactions();
+        vectors = new byte[VECTORS][];
+        for (int i = 0; i < VECTORS; i++)
+            vectors[i] = all.get(i % all.size());
+    }
+
+    @Benchmark
+    public Transaction parse(Payment payment) {
+        return Transaction.parse(payment.raw);
+    }
+
+    @Benchmark
+    public byte[] serialize(Payment payment) {
+        return payment.tx.bitcoinSerialize();
+    }
+
+    @Benchmark
+    public Sha256Hash parseAndHash(Payment payment) {
+        return Transaction.parse(payment.raw).getHash();
+    }
+
+    /** Scores are per transaction. */
+    @Benchmark
+    @OperationsPerInvocation(VECTORS)
+    public void parseAndHashVectors(Blackhole bh) {
+        for (byte[] vector : vectors)
+            bh.consume(Transaction.parse(vector).getHash());
+    }
+}
@@ -0,0 +1,224 @@
+package com.nchain.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Baselines of the benchmark results, to diff between releases.
+ *
+ * A baseline is a tab separated text file with one sorted row per benchmark and parameter combination:
+ * <pre>
+ * # benchmark  params  mode  score  error  unit  alloc
+ * com.nchain.bench.SighashBenchmark.forkId  inputs=10  avgt  3.215  0.041  us/op  4032.0
+ * </pre>
+ * where alloc is the bytes allocated per operation as measured by JMH's gc profiler, or NaN if it wasn't enabled.
+ * Committing one per release makes a plain text diff show what changed, and {@code compare} reports the changes
+ * beyond a threshold.
+ *
+ * <pre>
+ * Baseline write &lt;jmh results.json&gt; &lt;baseline.tsv&gt;
+ * Baseline compare &lt;old baseline.tsv or results.json&gt; &lt;new baseline.tsv or results.json&gt; [threshold %]
+ * </pre>
+ * {@code compare} exits with status 1 if any benchmark got slower, or allocates more, by more than the threshold.
+ */
+public final class Baseline {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String HEADER = "# benchmark\tparams\tmode\tscore\terror\tunit\talloc";
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+    /** One benchmark result. */
+    static final class Row {
+        final String benchmark;
+        final String params;
+        final String mode;
+        final double score;
+        final double error;
+        final String unit;
+        final double alloc;
+
+        Row(String benchmark, String params, String mode, double score, double error, String unit, double alloc) {
+            this.benchmark = benchmark;
+            this.params = params;
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+            this.alloc = alloc;
+        }
+
+        String key() {
+            return benchmark + '\t' + params + '\t' + mode;
+        }
+
+        String name() {
+            String name = benchmark.replace("com.nchain.bench.", "");
+            return "-".equals(params) ? name : name + " [" + params + "]";
+        }
+
+        // In throughput mode a higher score is better; in the time modes a lower one.
+        double slowdown(Row before) {
+            double change = (score - before.score) / before.score;
+            return "thrpt".equals(mode) ? -change : change;
+        }
+    }
+
+    private Baseline() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && "write".equals(args[0])) {
+            write(read(new File(args[1])).values(), new File(args[2]));
+        } else if ((args.length == 3 || args.length == 4) && "compare".equals(args[0])) {
+            double threshold = args.length == 4 ? Double.parseDouble(args[3]) : 5;
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, UTF8), true);
+            int regressions = compare(read(new File(args[1])), read(new File(args[2])), threshold / 100, out);
+            out.flush();
+            if (regressions > 0)
+                System.exit(1);
+        } else {
+            System.err.println("Usage: Baseline write <results.json> <baseline.tsv>");
+            System.err.println("       Baseline compare <old baseline> <new baseline> [threshold %]");
+            System.exit(2);
+        }
+    }
+
+    /** Reads a baseline, or the JSON results of a JMH run, by the file name. The rows are sorted. */
+    static Map<String, Row> read(File file) throws IOException {
+        List<Row> rows = file.getName().endsWith(".json") ? readJson(file) : readTsv(file);
+        Map<String, Row> sorted = new TreeMap<String, Row>();
+        for (Row row : rows)
+            sorted.put(row.key(), row);
+        return sorted;
+    }
+
+    static List<Row> readJson(File file) throws IOException {
+        List<Row> rows = new ArrayList<Row>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            JsonNode primary = result.get("primaryMetric");
+            double alloc = Double.NaN;
+            JsonNode secondary = result.get("secondaryMetrics");
+            if (secondary != null) {
+                for (Iterator<Map.Entry<String, JsonNode>> i = secondary.fields(); i.hasNext(); ) {
+                    Map.Entry<String, JsonNode> metric = i.next();
+                    // JMH prefixes the profiler metrics with a middle dot.
+                    if (metric.getKey().endsWith(ALLOC_METRIC))
+                        alloc = metric.getValue().get("score").asDouble();
+                }
+            }
+            rows.add(new Row(result.get("benchmark").asText(), params(result.get("params")), result.get("mode").asText(),
+                    primary.get("score").asDouble(), primary.get("scoreError").asDouble(),
+                    primary.get("scoreUnit").asText(), alloc));
+        }
+        return rows;
+    }
+
+    private static String params(JsonNode params) {
+        if (params == null || params.size() == 0)
+            return "-";
+        Map<String, String> sorted = new TreeMap<String, String>();
+        for (Iterator<Map.Entry<String, JsonNode>> i = params.fields(); i.hasNext(); ) {
+            Map.Entry<String, JsonNode> param = i.next();
+            sorted.put(param.getKey(), param.getValue().asText());
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> param : sorted.entrySet()) {
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(param.getKey()).append('=').append(param.getValue());
+        }
+        return sb.toString();
+    }
+
+    static List<Row> readTsv(File file) throws IOException {
+        List<Row> rows = new ArrayList<Row>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] f = line.split("\t");
+                if (f.length != 7)
+                    throw new IOException(file + ":" + lineNumber + ": expected 7 columns, found " + f.length);
+                rows.add(new Row(f[0], f[1], f[2], Double.parseDouble(f[3]), Double.parseDouble(f[4]), f[5],
+                        Double.parseDouble(f[6])));
+            }
+        } finally {
+            reader.close();
+        }
+        return rows;
+    }
+
+    static void write(Iterable<Row> rows, File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create " + dir);
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8));
+        try {
+            out.println(HEADER);
+            for (Row row : rows) {
+                out.printf(Locale.ROOT, "%s\t%s\t%s\t%.3f\t%.3f\t%s\t%.1f%n", row.benchmark, row.params, row.mode,
+                        row.score, row.error, row.unit, row.alloc);
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError())
+            throw new IOException("Cannot write " + file);
+    }
+
+    /**
+     * Prints the change of every benchmark found in both, marking those that got slower or allocate more by more
+     * than the threshold, a fraction.
+     *
+     * @return the number of regressions
+     */
+    static int compare(Map<String, Row> before, Map<String, Row> after, double threshold, PrintWriter out) {
+        int regressions = 0;
+        out.printf(Locale.ROOT, "%-70s %12s %12s %8s %10s %10s%n", "benchmark", "before", "after", "change",
+                "B/op", "B/op");
+        for (Row row : after.values()) {
+            Row old = before.get(row.key());
+            String name = row.name();
+            if (old == null) {
+                out.printf(Locale.ROOT, "%-70s %12s %12.3f %8s %10s %10.1f  new%n", name, "", row.score, "", "",
+                        row.alloc);
+                continue;
+            }
+            double slowdown = row.slowdown(old);
+            // Allocation is deterministic enough to compare as is, bar a few bytes of profiler noise.
+            boolean allocates = row.alloc - old.alloc > Math.max(16, old.alloc * threshold);
+            boolean slower = slowdown > threshold;
+            String flag = slower && allocates ? "  SLOWER, ALLOCATES MORE" : slower ? "  SLOWER" : allocates ? "  ALLOCATES MORE" : "";
+            if (slower || allocates)
+                regressions++;
+            out.printf(Locale.ROOT, "%-70s %12.3f %12.3f %+7.1f%% %10.1f %10.1f%s%n", name, old.score, row.score,
+                    100 * slowdown, old.alloc, row.alloc, flag);
+        }
+        for (Row old : before.values()) {
+            if (!after.containsKey(old.key()))
+                out.printf(Locale.ROOT, "%-70s %12.3f %12s  removed%n", old.name(),
+                        old.score, "");
+        }
+        out.printf(Locale.ROOT, "%d regression(s) beyond %.1f%%%n", regressions, 100 * threshold);
+        return regressions;
+    }
+}
@@ -0,0 +1,248 @@
+package com.nchain.address
+
+import com.nchain.params.NetworkParameters
+import com.nchain.tools.Parallel
+import java.io.BufferedReader
+import java.io.Reader
+import java.io.Writer
+import java.nio.channels.Channels
+import java.nio.channels.ReadableByteChannel
+import java.nio.channels.WritableByteChannel
+import java.util.ArrayDeque
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * Rewrites address lists, one address per line or one column of CSV lines, into legacy or CashAddr form for one
+ * network. Each input address may be in either form. Lines are read in chunks, the chunks are converted on a pool of
+ * workers that each keep their own [CashAddressCodec] and buffers, and the converted lines are written in input
+ * order while later chunks are still being converted. Lines that don't hold a valid address of the network are left
+ * out of the output and reported to the [ErrorListener] instead.
+ */
+class AddressConverter @JvmOverloads constructor(
+        val params: NetworkParameters,
+        val target: Format,
+        /** The CSV column holding the address; 0 for line-delimited lists. */
+        val column: Int = 0,
+        val parallelism: Int = Parallel.DEFAULT_PARALLELISM,
+        /** The number of lines converted as one unit of work. */
+        val chunkLines: Int = DEFAULT_CHUNK_LINES) {
+
+    init {
+        check(column >= 0, {"column must not be negative: $column"})
+        check(parallelism > 0, {"parallelism must be positive: $parallelism"})
+        check(chunkLines > 0, {"chunkLines must be positive: $chunkLines"})
+    }
+
+    enum class Format { LEGACY, CASH_ADDRESS }
+
+    interface ErrorListener {
+        /** Called, in input order, for each line whose address couldn't be converted. Lines are numbered from 1. */
+        fun onError(lineNumber: Long, line: String, message: String)
+    }
+
+    class Summary internal constructor(val lines: Long, val converted: Long, val errors: Long) {
+        override fun toString() = "Summary(lines=$lines, converted=$converted, errors=$errors)"
+    }
+
+    // A line of a chunk that failed, by its index within the chunk.
+    private class Failure(val index: Int, val message: String)
+
+    // The converted text of a chunk and the lines that failed.
+    private class ConvertedChunk(val firstLine: Long, val lines: List<String>, val text: CharSequence,
+                                 val converted: Int, val failures: List<Failure>)
+
+    // The per-thread state of a worker.
+    private inner class Worker {
+        val codec = CashAddressCodec(params)
+        val bytes = ByteArray(Base58.maxDecodedLength(MAX_LEGACY_LENGTH))
+        val legacy = ByteArray(1 + CashAddress.LENGTH)
+        val chars = CharArray(Math.max(codec.encodedLength(CashAddressCodec.MAX_HASH_LENGTH), MAX_LEGACY_LENGTH))
+        var type = CashAddress.CashAddressType.PubKey
+        var hash = codec.hash
+        var hashOffset = 0
+        var hashLength = 0
+
+        // Parses the address in either form into type and hash; returns an error message or null.
+        fun parse(line: CharSequence, from: Int, to: Int): String? {
+            val status = codec.check(line, from, to)
+            if (status == CashAddressCodec.Status.VALID) {
+                type = codec.type
+                hash = codec.hash
+                hashOffset = 0
+                hashLength = codec.hashLength
+                return null
+            }
+            for (i in from until to) {
+                if (line[i] == ':')
+                    return status.message
+            }
+            if (to - from > MAX_LEGACY_LENGTH)
+                return "Not a ${params.id} address"
+            val length = try {
+                Base58.decodeChecked(line.subSequence(from, to), bytes, 0)
+            } catch (e: AddressFormatException) {
+                return e.message ?: "Not a ${params.id} address"
+            }
+            if (length != 1 + CashAddress.LENGTH)
+                return "Wrong legacy address length: ${length - 1}"
+            val version = bytes[0].toInt() and 0xff
+            type = when (version) {
+                params.addressHeader -> CashAddress.CashAddressType.PubKey
+                params.p2SHHeader -> CashAddress.CashAddressType.Script
+                else -> return "Version $version is not an address of ${params.id}"
+            }
+            hash = bytes
+            hashOffset = 1
+            hashLength = CashAddress.LENGTH
+            return null
+        }
+
+        // Writes the parsed address in the target form into chars; returns its length or throws.
+        fun format(): Int {
+            if (target == Format.CASH_ADDRESS)
+                return codec.encode(type, hash, hashOffset, hashLength, chars, 0)
+            if (hashLength != CashAddress.LENGTH)
+                throw AddressFormatException("A $hashLength byte hash has no legacy form")
+            legacy[0] = CashAddress.getLegacyVersion(params, type).toByte()
+            System.arraycopy(hash, hashOffset, legacy, 1, hashLength)
+            return Base58.encodeChecked(legacy, 0, legacy.size, chars, 0)
+        }
+
+        fun convert(firstLine: Long, lines: List<String>): ConvertedChunk {
+            val text = StringBuilder(lines.size * 48)
+            val failures = ArrayList<Failure>()
+            var converted = 0
+            for ((index, line) in lines.withIndex()) {
+                if (line.isEmpty()) {
+                    text.append('\n')
+                    continue
+                }
+                var from = 0
+                for (i in 0 until column) {
+                    from = line.indexOf(',', from)
+                    if (from < 0)
+                        break
+                    from++
+                }
+                if (from < 0) {
+                    failures.add(Failure(index, "No column $column"))
+                    continue
+                }
+                var to = line.indexOf(',', from)
+                if (to < 0)
+                    to = line.length
+                var message = parse(line, from, to)
+                if (message == null) {
+                    try {
+                        val length = format()
+                        text.append(line, 0, from).append(chars, 0, length).append(line, to, line.length).append('\n')
+                        converted++
+                    } catch (e: AddressFormatException) {
+                        message = e.message ?: "Cannot convert"
+                    }
+                }
+                if (message != null)
+                    failures.add(Failure(index, message))
+            }
+            return ConvertedChunk(firstLine, lines, text, converted, failures)
+        }
+    }
+
+    private val workers = object : ThreadLocal<Worker>() {
+        override fun initialValue() = Worker()
+    }
+
+    /**
+     * Converts a single address, in either form.
+     *
+     * @throws AddressFormatException if it isn't a valid address of the network
+     */
+    @Throws(AddressFormatException::class)
+    fun convert(address: String): String {
+        val worker = workers.get()
+        val message = worker.parse(address, 0, address.length)
+        if (message != null)
+            throw AddressFormatException("$address: $message")
+        return String(worker.chars, 0, worker.format())
+    }
+
+    /**
+     * Converts the lines read from the input channel, writing the converted lines to the output channel. Neither
+     * channel is closed.
+     */
+    fun convert(input: ReadableByteChannel, output: WritableByteChannel, errors: ErrorListener?): Summary {
+        val writer = Channels.newWriter(output, Charsets.UTF_8.newEncoder(), -1)
+        val summary = convert(Channels.newReader(input, Charsets.UTF_8.newDecoder(), -1), writer, errors)
+        writer.flush()
+        return summary
+    }
+
+    /** Converts the lines read from the reader, writing the converted lines to the writer. Neither is closed. */
+    fun convert(input: Reader, output: Writer, errors: ErrorListener?): Summary {
+        val reader = input as? BufferedReader ?: BufferedReader(input)
+        val executor = Executors.newFixedThreadPool(parallelism, Parallel.DaemonThreadFactory)
+        val pending = ArrayDeque<Future<ConvertedChunk>>()
+        var lines = 0L
+        var converted = 0L
+        var failed = 0L
+
+        fun writeNext() {
+            val chunk = await(pending.removeFirst())
+            output.append(chunk.text)
+            converted += chunk.converted
+            failed += chunk.failures.size
+            if (errors != null) {
+                for (failure in chunk.failures)
+                    errors.onError(chunk.firstLine + failure.index, chunk.lines[failure.index], failure.message)
+            }
+        }
+
+        try {
+            while (true) {
+                val chunk = ArrayList<String>(chunkLines)
+                while (chunk.size < chunkLines) {
+                    chunk.add(reader.readLine() ?: break)
+                }
+                if (chunk.isEmpty())
+                    break
+                val firstLine = lines + 1
+                lines += chunk.size
+                // Keep a couple of chunks per worker in flight, writing finished ones in order as we go.
+                if (pending.size >= 2 * parallelism)
+                    writeNext()
+                pending.addLast(executor.submit<ConvertedChunk> { workers.get().convert(firstLine, chunk) })
+            }
+            while (!pending.isEmpty())
+                writeNext()
+            output.flush()
+        } finally {
+            executor.shutdownNow()
+        }
+        return Summary(lines, converted, failed)
+    }
+
+    private fun <T> await(future: Future<T>): T {
+        try {
+            return future.get()
+        } catch (e: ExecutionException) {
+            val cause = e.cause
+            when (cause) {
+                is RuntimeException -> throw cause
+                is Error -> throw cause
+                else -> throw RuntimeException(cause)
+            }
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw RuntimeException(e)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_CHUNK_LINES = 4096
+
+        // A checked 21 byte payload takes at most 35 base58 characters.
+        private const val MAX_LEGACY_LENGTH = 35
+    }
+}
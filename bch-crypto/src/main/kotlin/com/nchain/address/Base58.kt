@@ -16,7 +16,7 @@
 
 package com.nchain.address
 
-import com.nchain.shared.Sha256Hash
+import org.spongycastle.crypto.digests.SHA256Digest
 import java.math.BigInteger
 import java.util.*
 
@@ -41,7 +41,10 @@ import java.util.*
  *
  *
  *
- * However, note that the encoding/decoding runs in O(n) time, so it is not useful for large data.
+ * However, note that the encoding/decoding runs in O(n²) time, so it is not useful for large data. To keep the
+ * constant small the conversion works on limbs rather than on single digits: five base-58 digits (58⁵ < 2³¹) or four
+ * bytes at a time. Scratch limbs and the checksum digest are kept per thread, and the variants taking an output
+ * array write into the caller's buffer, so bulk work doesn't allocate beyond its results.
  *
  *
  * The basic idea of the encoding is to treat the data bytes as a large number represented using
@@ -55,6 +58,11 @@ object Base58 {
     private val ENCODED_ZERO: Char = ALPHABET[0]
     private val INDEXES: IntArray = IntArray(128)
 
+    // Five base-58 digits make one limb when encoding.
+    private const val DIGITS_PER_LIMB = 5
+    private const val LIMB_BASE = 58L * 58 * 58 * 58 * 58
+    private val POWERS_OF_58 = longArrayOf(1, 58, 58L * 58, 58L * 58 * 58, 58L * 58 * 58 * 58, LIMB_BASE)
+
     init {
         Arrays.fill(INDEXES, -1)
         for (i in ALPHABET.indices) {
@@ -62,6 +70,53 @@ object Base58 {
         }
     }
 
+    private class Scratch {
+        var limbs = IntArray(32)
+        var chars = CharArray(128)
+        var bytes = ByteArray(96)
+        val digest = SHA256Digest()
+        val hash = ByteArray(32)
+
+        fun limbs(size: Int): IntArray {
+            if (limbs.size < size)
+                limbs = IntArray(size)
+            return limbs
+        }
+
+        fun chars(size: Int): CharArray {
+            if (chars.size < size)
+                chars = CharArray(size)
+            return chars
+        }
+
+        fun bytes(size: Int): ByteArray {
+            if (bytes.size < size)
+                bytes = ByteArray(size)
+            return bytes
+        }
+
+        // Writes the first four bytes of the double SHA-256 of the input into `hash`.
+        fun checksum(input: ByteArray, offset: Int, length: Int) {
+            digest.update(input, offset, length)
+            digest.doFinal(hash, 0)
+            digest.update(hash, 0, hash.size)
+            digest.doFinal(hash, 0)
+        }
+    }
+
+    private val scratch = object : ThreadLocal<Scratch>() {
+        override fun initialValue() = Scratch()
+    }
+
+    /** An upper bound of the length of the base58 encoding of `length` bytes. */
+    @JvmStatic fun maxEncodedLength(length: Int): Int = length * 138 / 100 + 1
+
+    /**
+     * An upper bound of the number of bytes `length` base58 characters decode to: each leading '1' decodes to a whole
+     * zero byte, and no other digit to more than one byte.
+     */
+    @JvmStatic fun maxDecodedLength(length: Int): Int = length
+
     /**
      * Encodes the given bytes as a base58 string (no checksum is appended).
      *
@@ -69,37 +124,108 @@ object Base58 {
      * @return the base58-encoded string
      */
     @JvmStatic fun encode(input: ByteArray): String {
-        var input = input
         if (input.size == 0) {
             return ""
         }
+        val chars = scratch.get().chars(maxEncodedLength(input.size))
+        return String(chars, 0, encode(input, 0, input.size, chars, 0))
+    }
+
+    /**
+     * Encodes `length` bytes of the input as base58 into the output array, which must have room for
+     * [maxEncodedLength] characters after `outputOffset`.
+     *
+     * @return the number of characters written
+     */
+    @JvmStatic fun encode(input: ByteArray, offset: Int, length: Int, output: CharArray, outputOffset: Int): Int {
+        check(offset >= 0 && length >= 0 && offset + length <= input.size, {"Bad range: $offset, $length"})
+        val end = offset + length
         // Count leading zeros.
         var zeros = 0
-        while (zeros < input.size && input[zeros].toInt() == 0) {
+        while (zeros < length && input[offset + zeros].toInt() == 0) {
             ++zeros
         }
-        // Convert base-256 digits to base-58 digits (plus conversion to ASCII characters)
-        input = Arrays.copyOf(input, input.size) // since we modify it in-place
-        val encoded = CharArray(input.size * 2) // upper bound
-        var outputStart = encoded.size
-        var inputStart = zeros
-        while (inputStart < input.size) {
-            encoded[--outputStart] = ALPHABET[divmod(input, inputStart, 256, 58).toInt()]
-            if (input[inputStart].toInt() == 0) {
-                ++inputStart // optimization - skip leading zeros
+        // Convert base-256 digits to base-58⁵ limbs, least significant first, consuming four bytes at a time.
+        val limbs = scratch.get().limbs((length - zeros) / 3 + 2)
+        var used = 0
+        var i = offset + zeros
+        var chunk = (end - i) and 3
+        if (chunk == 0)
+            chunk = 4
+        while (i < end) {
+            var value = 0L
+            for (k in 0 until chunk)
+                value = (value shl 8) or (input[i + k].toLong() and 0xFF)
+            i += chunk
+            var carry = value
+            val multiplier = 1L shl (8 * chunk)
+            for (j in 0 until used) {
+                val t = limbs[j] * multiplier + carry
+                limbs[j] = (t % LIMB_BASE).toInt()
+                carry = t / LIMB_BASE
+            }
+            while (carry != 0L) {
+                limbs[used++] = (carry % LIMB_BASE).toInt()
+                carry /= LIMB_BASE
             }
+            chunk = 4
         }
         // Preserve exactly as many leading encoded zeros in output as there were leading zeros in input.
-        while (outputStart < encoded.size && encoded[outputStart] == ENCODED_ZERO) {
-            ++outputStart
+        var digits = 0
+        if (used > 0) {
+            var top = limbs[used - 1]
+            while (top != 0) {
+                ++digits
+                top /= 58
+            }
+            digits += (used - 1) * DIGITS_PER_LIMB
         }
-        while (--zeros >= 0) {
-            encoded[--outputStart] = ENCODED_ZERO
+        val total = zeros + digits
+        check(outputOffset >= 0 && outputOffset + total <= output.size, {"Output buffer too small"})
+        Arrays.fill(output, outputOffset, outputOffset + zeros, ENCODED_ZERO)
+        var pos = outputOffset + total
+        for (j in 0 until used) {
+            var limb = limbs[j]
+            val count = if (j == used - 1) digits - j * DIGITS_PER_LIMB else DIGITS_PER_LIMB
+            for (k in 0 until count) {
+                output[--pos] = ALPHABET[limb % 58]
+                limb /= 58
+            }
         }
-        // Return encoded string (including encoded leading zeros).
-        return String(encoded, outputStart, encoded.size - outputStart)
+        return total
+    }
+
+    /**
+     * Appends the four byte checksum to the input and encodes the result as base58.
+     */
+    @JvmStatic fun encodeChecked(input: ByteArray): String {
+        val chars = scratch.get().chars(maxEncodedLength(input.size + 4))
+        return String(chars, 0, encodeChecked(input, 0, input.size, chars, 0))
     }
 
+    /**
+     * Appends the four byte checksum to `length` bytes of the input and encodes the result as base58 into the output
+     * array, which must have room for [maxEncodedLength] of `length + 4` characters after `outputOffset`.
+     *
+     * @return the number of characters written
+     */
+    @JvmStatic fun encodeChecked(input: ByteArray, offset: Int, length: Int, output: CharArray, outputOffset: Int): Int {
+        check(offset >= 0 && length >= 0 && offset + length <= input.size, {"Bad range: $offset, $length"})
+        val s = scratch.get()
+        val checksummed = s.bytes(length + 4)
+        System.arraycopy(input, offset, checksummed, 0, length)
+        s.checksum(input, offset, length)
+        System.arraycopy(s.hash, 0, checksummed, length, 4)
+        return encode(checksummed, 0, length + 4, output, outputOffset)
+    }
+
+    /** Encodes each of the inputs as base58, sharing one set of scratch buffers. */
+    @JvmStatic fun encodeAll(inputs: Array<ByteArray>): Array<String> = Array(inputs.size) { encode(inputs[it]) }
+
+    /** Encodes each of the inputs as base58 with a checksum appended, sharing one set of scratch buffers. */
+    @JvmStatic fun encodeCheckedAll(inputs: Array<ByteArray>): Array<String> =
+            Array(inputs.size) { encodeChecked(inputs[it]) }
+
     /**
      * Decodes the given base58 string into the original data bytes.
      *
@@ -112,37 +238,77 @@ object Base58 {
         if (input.length == 0) {
             return ByteArray(0)
         }
-        // Convert the base58-encoded ASCII chars to a base58 byte sequence (base58 digits).
-        val input58 = ByteArray(input.length)
-        for (i in 0 until input.length) {
-            val c = input[i]
-            val digit = if (c.toInt() < 128) INDEXES[c.toInt()] else -1
-            if (digit < 0) {
-                throw AddressFormatException("Illegal character $c at position $i")
-            }
-            input58[i] = digit.toByte()
-        }
+        val bytes = scratch.get().bytes(maxDecodedLength(input.length))
+        return Arrays.copyOf(bytes, decode(input, bytes, 0))
+    }
+
+    /**
+     * Decodes the base58 characters into the output array, which must have room for [maxDecodedLength] bytes after
+     * `outputOffset`.
+     *
+     * @return the number of bytes written
+     * @throws AddressFormatException if the input is not a valid base58 string
+     */
+    @Throws(AddressFormatException::class)
+    @JvmStatic fun decode(input: CharSequence, output: ByteArray, outputOffset: Int): Int {
+        val length = input.length
         // Count leading zeros.
         var zeros = 0
-        while (zeros < input58.size && input58[zeros].toInt() == 0) {
+        while (zeros < length && input[zeros] == ENCODED_ZERO) {
             ++zeros
         }
-        // Convert base-58 digits to base-256 digits.
-        val decoded = ByteArray(input.length)
-        var outputStart = decoded.size
-        var inputStart = zeros
-        while (inputStart < input58.size) {
-            decoded[--outputStart] = divmod(input58, inputStart, 58, 256)
-            if (input58[inputStart].toInt() == 0) {
-                ++inputStart // optimization - skip leading zeros
+        // Convert base-58 digits to 32 bit limbs, least significant first, consuming five digits at a time.
+        val limbs = scratch.get().limbs((length - zeros) / DIGITS_PER_LIMB + 2)
+        var used = 0
+        var i = zeros
+        var chunk = (length - i) % DIGITS_PER_LIMB
+        if (chunk == 0)
+            chunk = DIGITS_PER_LIMB
+        while (i < length) {
+            var value = 0L
+            for (k in i until i + chunk) {
+                val c = input[k]
+                val digit = if (c.toInt() < 128) INDEXES[c.toInt()] else -1
+                if (digit < 0) {
+                    throw AddressFormatException("Illegal character $c at position $k")
+                }
+                value = value * 58 + digit
             }
+            var carry = value
+            val multiplier = POWERS_OF_58[chunk]
+            for (j in 0 until used) {
+                val t = (limbs[j].toLong() and 0xFFFFFFFFL) * multiplier + carry
+                limbs[j] = t.toInt()
+                carry = t ushr 32
+            }
+            if (carry != 0L)
+                limbs[used++] = carry.toInt()
+            i += chunk
+            chunk = DIGITS_PER_LIMB
         }
-        // Ignore extra leading zeroes that were added during the calculation.
-        while (outputStart < decoded.size && decoded[outputStart].toInt() == 0) {
-            ++outputStart
+        // Restore the original number of leading zeros, ignoring the zero bytes of the top limb.
+        var bytes = 0
+        if (used > 0) {
+            var top = limbs[used - 1]
+            while (top != 0) {
+                ++bytes
+                top = top ushr 8
+            }
+            bytes += (used - 1) * 4
         }
-        // Return decoded data (including original number of leading zeros).
-        return Arrays.copyOfRange(decoded, outputStart - zeros, decoded.size)
+        val total = zeros + bytes
+        check(outputOffset >= 0 && outputOffset + total <= output.size, {"Output buffer too small"})
+        Arrays.fill(output, outputOffset, outputOffset + zeros, 0.toByte())
+        var pos = outputOffset + total
+        for (j in 0 until used) {
+            var limb = limbs[j]
+            val count = if (j == used - 1) bytes - j * 4 else 4
+            for (k in 0 until count) {
+                output[--pos] = limb.toByte()
+                limb = limb ushr 8
+            }
+        }
+        return total
     }
 
     @Throws(AddressFormatException::class)
@@ -160,39 +326,38 @@ object Base58 {
      */
     @Throws(AddressFormatException::class)
     @JvmStatic fun decodeChecked(input: String): ByteArray {
-        val decoded = decode(input)
-        if (decoded.size < 4)
-            throw AddressFormatException("Input too short")
-        val data = Arrays.copyOfRange(decoded, 0, decoded.size - 4)
-        val checksum = Arrays.copyOfRange(decoded, decoded.size - 4, decoded.size)
-        val actualChecksum = Arrays.copyOfRange(Sha256Hash.hashTwice(data), 0, 4)
-        if (!Arrays.equals(checksum, actualChecksum))
-            throw AddressFormatException("Checksum does not validate")
-        return data
+        val bytes = scratch.get().bytes(maxDecodedLength(input.length))
+        return Arrays.copyOf(bytes, decodeChecked(input, bytes, 0))
     }
 
     /**
-     * Divides a number, represented as an array of bytes each containing a single digit
-     * in the specified base, by the given divisor. The given number is modified in-place
-     * to contain the quotient, and the return value is the remainder.
+     * Decodes base58 characters that end in a checksum into the output array, as [decode] does, and verifies the
+     * checksum.
      *
-     * @param number the number to divide
-     * @param firstDigit the index within the array of the first non-zero digit
-     * (this is used for optimization by skipping the leading zeros)
-     * @param base the base in which the number's digits are represented (up to 256)
-     * @param divisor the number to divide by (up to 256)
-     * @return the remainder of the division operation
+     * @return the number of bytes written, not counting the checksum, which is written after them
+     * @throws AddressFormatException if the input is not base 58 or the checksum does not validate.
      */
-    private fun divmod(number: ByteArray, firstDigit: Int, base: Int, divisor: Int): Byte {
-        // this is just long division which accounts for the base of the input digits
-        var remainder = 0
-        for (i in firstDigit until number.size) {
-            val digit = number[i].toInt() and 0xFF
-            val temp = remainder * base + digit
-            number[i] = (temp / divisor).toByte()
-            remainder = temp % divisor
-        }
-        return remainder.toByte()
+    @Throws(AddressFormatException::class)
+    @JvmStatic fun decodeChecked(input: CharSequence, output: ByteArray, outputOffset: Int): Int {
+        val decoded = decode(input, output, outputOffset)
+        if (decoded < 4)
+            throw AddressFormatException("Input too short")
+        val length = decoded - 4
+        val s = scratch.get()
+        s.checksum(output, outputOffset, length)
+        for (k in 0 until 4) {
+            if (s.hash[k] != output[outputOffset + length + k])
+                throw AddressFormatException("Checksum does not validate")
+        }
+        return length
     }
 
+    /** Decodes each of the inputs, sharing one set of scratch buffers. */
+    @Throws(AddressFormatException::class)
+    @JvmStatic fun decodeAll(inputs: Array<String>): Array<ByteArray> = Array(inputs.size) { decode(inputs[it]) }
+
+    /** Decodes each of the inputs and verifies its checksum, sharing one set of scratch buffers. */
+    @Throws(AddressFormatException::class)
+    @JvmStatic fun decodeCheckedAll(inputs: Array<String>): Array<ByteArray> =
+            Array(inputs.size) { decodeChecked(inputs[it]) }
 }
@@ -0,0 +1,250 @@
+package com.nchain.address
+
+import com.nchain.address.CashAddressHelper.CHARSET
+import com.nchain.address.CashAddressHelper.CHARSET_REV
+import com.nchain.address.CashAddressHelper.polyModPrefix
+import com.nchain.address.CashAddressHelper.polyModStep
+import com.nchain.params.NetworkParameters
+
+/**
+ * CashAddr encoder and decoder for one network that works in a single pass: the checksum is computed incrementally
+ * over the prefix and the payload, and the 5-bit groups are converted to bytes as they are read, into buffers owned
+ * by the codec. Checking an address therefore allocates nothing, and failures are reported as a [Status] rather than
+ * by an exception, which suits screening large batches of user-supplied addresses.
+ *
+ * After [check] returns [Status.VALID], [type], [hash] and [hashLength] describe the address. A codec is not thread
+ * safe; use one per thread.
+ */
+class CashAddressCodec(val params: NetworkParameters) {
+
+    enum class Status(val message: String) {
+        VALID("Valid"),
+        BAD_CHARACTER("Unexpected character"),
+        MIXED_CASE("Cannot contain both upper and lower case letters"),
+        BAD_SEPARATOR("The separator cannot be the first character, cannot have number and there must not be 2 separators"),
+        WRONG_PREFIX("Invalid prefix for network"),
+        BAD_CHECKSUM("Invalid Checksum"),
+        BAD_PADDING("Invalid padding"),
+        BAD_VERSION("Unknown version byte"),
+        BAD_LENGTH("Data length doesn't match the version byte")
+    }
+
+    private val prefix = params.cashAddrPrefix
+    private val prefixState = polyModPrefix(1, prefix)
+    private val chars = CharArray(prefix.length + 1 + MAX_DATA_CHARS + 8)
+
+    /** The type of the address last checked successfully. */
+    var type: CashAddress.CashAddressType = CashAddress.CashAddressType.PubKey
+        private set
+
+    /** The hash of the address last checked successfully, in its first [hashLength] bytes. */
+    val hash = ByteArray(MAX_HASH_LENGTH)
+
+    // The hash being decoded; copied to hash only once the address turns out valid.
+    private val decoded = ByteArray(MAX_HASH_LENGTH)
+
+    var hashLength = 0
+        private set
+
+    /**
+     * Checks the address, with or without its prefix, decoding it into [type] and [hash] if it is valid.
+     */
+    @JvmOverloads
+    fun check(address: CharSequence, start: Int = 0, end: Int = address.length): Status {
+        // Go over the string and do some sanity checks.
+        var lower = false
+        var upper = false
+        var hasNumber = false
+        var separator = -1
+        for (i in start until end) {
+            val c = address[i]
+            when (c) {
+                in 'a'..'z' -> lower = true
+                in 'A'..'Z' -> upper = true
+                in '0'..'9' -> hasNumber = true
+                ':' -> {
+                    if (hasNumber || i == start || separator >= 0)
+                        return Status.BAD_SEPARATOR
+                    separator = i
+                }
+                else -> return Status.BAD_CHARACTER
+            }
+        }
+        if (upper && lower)
+            return Status.MIXED_CASE
+
+        var c = prefixState
+        if (separator >= 0) {
+            if (separator - start != prefix.length)
+                return Status.WRONG_PREFIX
+            for (i in 0 until prefix.length) {
+                if (CashAddressHelper.toLowerCase(address[start + i]) != prefix[i])
+                    return Status.WRONG_PREFIX
+            }
+        }
+
+        // Decode the 5-bit groups, feeding the checksum and converting all but the last 8 to bytes.
+        val payloadStart = if (separator >= 0) separator + 1 else start
+        val dataChars = end - payloadStart - 8
+        if (dataChars <= 0)
+            return Status.BAD_LENGTH
+        var acc = 0
+        var bits = 0
+        var bytes = 0
+        var versionByte = 0
+        for (i in payloadStart until end) {
+            val ch = address[i].toInt()
+            val value = if (ch < 128) CHARSET_REV[ch].toInt() else -1
+            if (value < 0)
+                return Status.BAD_CHARACTER
+            c = polyModStep(c, value)
+            if (i - payloadStart < dataChars) {
+                acc = (acc shl 5 or value) and 0xfff
+                bits += 5
+                if (bits >= 8) {
+                    bits -= 8
+                    val b = acc shr bits and 0xff
+                    if (bytes == 0)
+                        versionByte = b
+                    else if (bytes <= MAX_HASH_LENGTH)
+                        decoded[bytes - 1] = b.toByte()
+                    bytes++
+                }
+            }
+        }
+        if (c xor 1 != 0L)
+            return Status.BAD_CHECKSUM
+
+        // At most four bits of zero padding are allowed.
+        if (bits >= 5 || acc and ((1 shl bits) - 1) != 0)
+            return Status.BAD_PADDING
+        if (bytes == 0 || versionByte and 0x80 != 0)
+            return Status.BAD_VERSION
+        val hashSize = CashAddress.calculateHashSizeFromVersionByte(versionByte.toByte())
+        if (bytes != hashSize + 1)
+            return Status.BAD_LENGTH
+        type = when (versionByte shr 3 and 0x1f) {
+            0 -> CashAddress.CashAddressType.PubKey
+            1 -> CashAddress.CashAddressType.Script
+            else -> return Status.BAD_VERSION
+        }
+        System.arraycopy(decoded, 0, hash, 0, hashSize)
+        hashLength = hashSize
+        return Status.VALID
+    }
+
+    /**
+     * Decodes the address, with or without its prefix.
+     *
+     * @throws AddressFormatException if it isn't a valid address of this network
+     */
+    @Throws(AddressFormatException::class)
+    fun decode(address: CharSequence): CashAddress {
+        val status = check(address)
+        if (status != Status.VALID)
+            throw AddressFormatException("cashaddr:  $address: ${status.message}")
+        return CashAddress(params, type, hash.copyOf(hashLength))
+    }
+
+    /** Checks every address of the batch; see [check]. */
+    fun checkAll(addresses: List<CharSequence>): Array<Status> = Array(addresses.size) { check(addresses[it]) }
+
+    /**
+     * Checks every line of CSV text, such as a list of legacy and CashAddr pairs, taking the address from the given
+     * column of each line.
+     *
+     * @return the status of the address on each non-empty line
+     */
+    fun checkColumn(csv: CharSequence, column: Int): Array<Status> {
+        val statuses = ArrayList<Status>()
+        var lineStart = 0
+        while (lineStart < csv.length) {
+            var lineEnd = lineStart
+            while (lineEnd < csv.length && csv[lineEnd] != '\n')
+                lineEnd++
+            val end = if (lineEnd > lineStart && csv[lineEnd - 1] == '\r') lineEnd - 1 else lineEnd
+            if (end > lineStart) {
+                var from = lineStart
+                for (i in 0 until column) {
+                    while (from < end && csv[from] != ',')
+                        from++
+                    from = Math.min(from + 1, end)
+                }
+                var to = from
+                while (to < end && csv[to] != ',')
+                    to++
+                statuses.add(check(csv, from, to))
+            }
+            lineStart = lineEnd + 1
+        }
+        return statuses.toTypedArray()
+    }
+
+    /**
+     * Encodes the hash as a CashAddr, including the prefix, into the output array.
+     *
+     * @return the number of characters written
+     */
+    fun encode(type: CashAddress.CashAddressType, hash: ByteArray, output: CharArray, outputOffset: Int): Int =
+            encode(type, hash, 0, hash.size, output, outputOffset)
+
+    /**
+     * Encodes `hashLength` bytes of the hash array as a CashAddr, including the prefix, into the output array.
+     *
+     * @return the number of characters written
+     */
+    fun encode(type: CashAddress.CashAddressType, hash: ByteArray, hashOffset: Int, hashLength: Int,
+               output: CharArray, outputOffset: Int): Int {
+        val sizeCode = when (hashLength) {
+            20 -> 0; 24 -> 1; 28 -> 2; 32 -> 3; 40 -> 4; 48 -> 5; 56 -> 6; 64 -> 7
+            else -> throw AddressFormatException("Error packing cashaddr: invalid address length")
+        }
+        val total = encodedLength(hashLength)
+        check(outputOffset >= 0 && outputOffset + total <= output.size, {"Output buffer too small"})
+        var pos = outputOffset
+        for (ch in prefix)
+            output[pos++] = ch
+        output[pos++] = ':'
+
+        var c = prefixState
+        var acc = 0
+        var bits = 0
+        for (i in -1 until hashLength) {
+            val b = if (i < 0) type.getValue().toInt() shl 3 or sizeCode else hash[hashOffset + i].toInt() and 0xff
+            acc = acc shl 8 or b
+            bits += 8
+            while (bits >= 5) {
+                bits -= 5
+                val value = acc shr bits and 0x1f
+                c = polyModStep(c, value)
+                output[pos++] = CHARSET[value]
+            }
+            acc = acc and 0xff
+        }
+        if (bits > 0) {
+            val value = acc shl (5 - bits) and 0x1f
+            c = polyModStep(c, value)
+            output[pos++] = CHARSET[value]
+        }
+        for (i in 0..7)
+            c = polyModStep(c, 0)
+        val mod = c xor 1
+        for (i in 0..7)
+            output[pos++] = CHARSET[(mod shr 5 * (7 - i) and 0x1f).toInt()]
+        return total
+    }
+
+    /** The length of the CashAddr, including the prefix, of a hash of the given length. */
+    fun encodedLength(hashLength: Int): Int = prefix.length + 1 + ((hashLength + 1) * 8 + 4) / 5 + 8
+
+    /** Encodes the hash as a CashAddr, including the prefix. */
+    fun encode(type: CashAddress.CashAddressType, hash: ByteArray): String =
+            String(chars, 0, encode(type, hash, chars, 0))
+
+    companion object {
+        /** The longest hash a CashAddr can carry. */
+        const val MAX_HASH_LENGTH = 64
+
+        private const val MAX_DATA_CHARS = ((MAX_HASH_LENGTH + 1) * 8 + 4) / 5
+    }
+}
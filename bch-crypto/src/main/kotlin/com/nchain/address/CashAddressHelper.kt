@@ -87,65 +87,7 @@ object CashAddressHelper {
          */
         var c: Long = 1
         for (d in v) {
-            /**
-             * We want to update `c` to correspond to a polynomial with one extra
-             * term. If the initial value of `c` consists of the coefficients of
-             * c(x) = f(x) mod g(x), we modify it to correspond to
-             * c'(x) = (f(x) * x + d) mod g(x), where d is the next input to
-             * process.
-             *
-             * Simplifying:
-             * c'(x) = (f(x) * x + d) mod g(x)
-             * ((f(x) mod g(x)) * x + d) mod g(x)
-             * (c(x) * x + d) mod g(x)
-             * If c(x) = c0*x^5 + c1*x^4 + c2*x^3 + c3*x^2 + c4*x + c5, we want to
-             * compute
-             * c'(x) = (c0*x^5 + c1*x^4 + c2*x^3 + c3*x^2 + c4*x + c5) * x + d
-             * mod g(x)
-             * = c0*x^6 + c1*x^5 + c2*x^4 + c3*x^3 + c4*x^2 + c5*x + d
-             * mod g(x)
-             * = c0*(x^6 mod g(x)) + c1*x^5 + c2*x^4 + c3*x^3 + c4*x^2 +
-             * c5*x + d
-             * If we call (x^6 mod g(x)) = k(x), this can be written as
-             * c'(x) = (c1*x^5 + c2*x^4 + c3*x^3 + c4*x^2 + c5*x + d) + c0*k(x)
-             */
-
-            // First, determine the value of c0:
-            val c0:Long = c shr 35
-
-            // Then compute c1*x^5 + c2*x^4 + c3*x^3 + c4*x^2 + c5*x + d:
-            c = c and 0x07ffffffffL shl 5 xor d.toLong()
-
-            // Finally, for each set bit n in c0, conditionally add {2^n}k(x):
-            if (c0 and 0x01L != 0L) {
-                // k(x) = {19}*x^7 + {3}*x^6 + {25}*x^5 + {11}*x^4 + {25}*x^3 +
-                //        {3}*x^2 + {19}*x + {1}
-                c = c xor 0x98f2bc8e61L
-            }
-
-            if (c0 and 0x02L != 0L) {
-                // {2}k(x) = {15}*x^7 + {6}*x^6 + {27}*x^5 + {22}*x^4 + {27}*x^3 +
-                //           {6}*x^2 + {15}*x + {2}
-                c = c xor 0x79b76d99e2L
-            }
-
-            if (c0 and 0x04L != 0L) {
-                // {4}k(x) = {30}*x^7 + {12}*x^6 + {31}*x^5 + {5}*x^4 + {31}*x^3 +
-                //           {12}*x^2 + {30}*x + {4}
-                c = c xor 0xf33e5fb3c4L
-            }
-
-            if (c0 and 0x08L != 0L) {
-                // {8}k(x) = {21}*x^7 + {24}*x^6 + {23}*x^5 + {10}*x^4 + {23}*x^3 +
-                //           {24}*x^2 + {21}*x + {8}
-                c = c xor 0xae2eabe2a8L
-            }
-
-            if (c0 and 0x10L != 0L) {
-                // {16}k(x) = {3}*x^7 + {25}*x^6 + {7}*x^5 + {20}*x^4 + {7}*x^3 +
-                //            {25}*x^2 + {3}*x + {16}
-                c = c xor 0x1e4f43e470L
-            }
+            c = polyModStep(c, d.toInt())
         }
 
         /**
@@ -158,6 +100,84 @@ object CashAddressHelper {
         return c xor 1
     }
 
+    /**
+     * Extends the polymod `state` by one 5-bit value `d`, so that a checksum can be computed incrementally over
+     * the prefix and payload without concatenating them. See [computePolyMod].
+     */
+    internal fun polyModStep(state: Long, d: Int): Long {
+        /**
+         * We want to update `c` to correspond to a polynomial with one extra
+         * term. If the initial value of `c` consists of the coefficients of
+         * c(x) = f(x) mod g(x), we modify it to correspond to
+         * c'(x) = (f(x) * x + d) mod g(x), where d is the next input to
+         * process.
+         *
+         * Simplifying:
+         * c'(x) = (f(x) * x + d) mod g(x)
+         * ((f(x) mod g(x)) * x + d) mod g(x)
+         * (c(x) * x + d) mod g(x)
+         * If c(x) = c0*x^5 + c1*x^4 + c2*x^3 + c3*x^2 + c4*x + c5, we want to
+         * compute
+         * c'(x) = (c0*x^5 + c1*x^4 + c2*x^3 + c3*x^2 + c4*x + c5) * x + d
+         * mod g(x)
+         * = c0*x^6 + c1*x^5 + c2*x^4 + c3*x^3 + c4*x^2 + c5*x + d
+         * mod g(x)
+         * = c0*(x^6 mod g(x)) + c1*x^5 + c2*x^4 + c3*x^3 + c4*x^2 +
+         * c5*x + d
+         * If we call (x^6 mod g(x)) = k(x), this can be written as
+         * c'(x) = (c1*x^5 + c2*x^4 + c3*x^3 + c4*x^2 + c5*x + d) + c0*k(x)
+         */
+
+        // First, determine the value of c0:
+        val c0:Long = state shr 35
+
+        // Then compute c1*x^5 + c2*x^4 + c3*x^3 + c4*x^2 + c5*x + d:
+        var c = state and 0x07ffffffffL shl 5 xor d.toLong()
+
+        // Finally, for each set bit n in c0, conditionally add {2^n}k(x):
+        if (c0 and 0x01L != 0L) {
+            // k(x) = {19}*x^7 + {3}*x^6 + {25}*x^5 + {11}*x^4 + {25}*x^3 +
+            //        {3}*x^2 + {19}*x + {1}
+            c = c xor 0x98f2bc8e61L
+        }
+
+        if (c0 and 0x02L != 0L) {
+            // {2}k(x) = {15}*x^7 + {6}*x^6 + {27}*x^5 + {22}*x^4 + {27}*x^3 +
+            //           {6}*x^2 + {15}*x + {2}
+            c = c xor 0x79b76d99e2L
+        }
+
+        if (c0 and 0x04L != 0L) {
+            // {4}k(x) = {30}*x^7 + {12}*x^6 + {31}*x^5 + {5}*x^4 + {31}*x^3 +
+            //           {12}*x^2 + {30}*x + {4}
+            c = c xor 0xf33e5fb3c4L
+        }
+
+        if (c0 and 0x08L != 0L) {
+            // {8}k(x) = {21}*x^7 + {24}*x^6 + {23}*x^5 + {10}*x^4 + {23}*x^3 +
+            //           {24}*x^2 + {21}*x + {8}
+            c = c xor 0xae2eabe2a8L
+        }
+
+        if (c0 and 0x10L != 0L) {
+            // {16}k(x) = {3}*x^7 + {25}*x^6 + {7}*x^5 + {20}*x^4 + {7}*x^3 +
+            //            {25}*x^2 + {3}*x + {16}
+            c = c xor 0x1e4f43e470L
+        }
+
+        return c
+    }
+
+    /**
+     * Feeds the expanded prefix, the low five bits of each character followed by a zero, into the polymod `state`.
+     */
+    internal fun polyModPrefix(state: Long, prefix: CharSequence, start: Int = 0, end: Int = prefix.length): Long {
+        var c = state
+        for (i in start until end)
+            c = polyModStep(c, prefix[i].toInt() and 0x1f)
+        return polyModStep(c, 0)
+    }
+
     internal fun toLowerCase(c: Char): Char {
         // ASCII black magic.
         return (c.toInt() or 0x20).toChar()
@@ -180,16 +200,20 @@ object CashAddressHelper {
     }
 
     internal fun verifyChecksum(prefix: String, payload: ByteArray): Boolean {
-        return computePolyMod(concatenateByteArrays(expandPrefix(prefix), payload)) == 0L
+        var c = polyModPrefix(1, prefix)
+        for (d in payload)
+            c = polyModStep(c, d.toInt())
+        return c xor 1 == 0L
     }
 
     internal fun createChecksum(prefix: String, payload: ByteArray): ByteArray {
-        val enc = concatenateByteArrays(expandPrefix(prefix), payload)
-        // Append 8 zeroes.
-        val enc2 = ByteArray(enc.size + 8)
-        System.arraycopy(enc, 0, enc2, 0, enc.size)
-        // Determine what to XOR into those 8 zeroes.
-        val mod = computePolyMod(enc2)
+        var c = polyModPrefix(1, prefix)
+        for (d in payload)
+            c = polyModStep(c, d.toInt())
+        // Append 8 zeroes and determine what to XOR into them.
+        for (i in 0..7)
+            c = polyModStep(c, 0)
+        val mod = c xor 1
         val ret = ByteArray(8)
         for (i in 0..7) {
             // Convert the 5-bit groups in mod to checksum values.
@@ -17,7 +17,6 @@
 package com.nchain.address
 
 
-import com.nchain.shared.Sha256Hash
 import java.io.Serializable
 import java.util.*
 
@@ -65,12 +64,10 @@ open class VersionedChecksummedBytes : Serializable, Cloneable, Comparable<Versi
     fun toBase58(): String {
         // A stringified buffer is:
         //   1 byte version + data bytes + 4 bytes check code (a truncated hash)
-        val addressBytes = ByteArray(1 + bytes.size + 4)
-        addressBytes[0] = version.toByte()
-        System.arraycopy(bytes, 0, addressBytes, 1, bytes.size)
-        val checksum = Sha256Hash.hashTwice(addressBytes, 0, bytes.size + 1)
-        System.arraycopy(checksum, 0, addressBytes, bytes.size + 1, 4)
-        return Base58.encode(addressBytes)
+        val versionAndDataBytes = ByteArray(1 + bytes.size)
+        versionAndDataBytes[0] = version.toByte()
+        System.arraycopy(bytes, 0, versionAndDataBytes, 1, bytes.size)
+        return Base58.encodeChecked(versionAndDataBytes)
     }
 
     override fun toString(): String {
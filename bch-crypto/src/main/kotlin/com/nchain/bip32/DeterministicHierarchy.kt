@@ -17,11 +17,11 @@
 package com.nchain.bip32
 
 import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater
 
 
-// TODO: This whole API feels a bit object heavy. Do we really need ChildNumber and so many maps, etc?
-// TODO: Should we be representing this using an actual tree arrangement in memory instead of a bunch of hashmaps?
-
 /**
  *
  * A DeterministicHierarchy calculates and keeps a whole tree (hierarchy) of keys originating from a single
@@ -43,10 +43,12 @@ import java.util.Locale
  * You can construct a DeterministicHierarchy for a subtree of a larger tree that you may not own.
  */
 class DeterministicHierarchy(rootKey: DeterministicKey) {
-    private val keys = hashMapOf<List<ChildNumber>, DeterministicKey>()
+    // The keys are kept in a tree that mirrors the hierarchy, starting at the master key path "m", so a lookup walks
+    // one node per path element instead of hashing the whole path. Nodes on the way to the root key, or to keys
+    // inserted with putKey, exist without a key of their own.
+    private val tree = Node()
     private val rootPath: List<ChildNumber>
-    // Keep track of how many child keys each node has. This is kind of weak.
-    private val lastChildNumbers = hashMapOf<List<ChildNumber>, ChildNumber>()
+    private val rootNode: Node
 
     /**
      * Returns the root key that the [DeterministicHierarchy] was created with.
@@ -57,6 +59,7 @@ class DeterministicHierarchy(rootKey: DeterministicKey) {
     init {
         putKey(rootKey)
         rootPath = rootKey.path
+        rootNode = node(tree, rootPath, true)!!
     }
 
     /**
@@ -64,17 +67,16 @@ class DeterministicHierarchy(rootKey: DeterministicKey) {
      * inserted in order.
      */
     fun putKey(key: DeterministicKey) {
-        val path = key.path
         // Update our tracking of what the next child in each branch of the tree should be. Just assume that keys are
         // inserted in order here.
         val parent = key.parent
         if (parent != null)
-            lastChildNumbers[parent.path] = key.childNumber
-        keys[path] = key
+            node(tree, parent.path, true)!!.sawChild(key.childNumber.num())
+        node(tree, key.path, true)!!.key = key
     }
 
     /**
-     * Returns a key for the given path, optionally creating it.
+     * Returns a key for the given path, optionally creating it. This can be called from several threads at once.
      *
      * @param path the path to the key
      * @param relativePath whether the path is relative to the root path
@@ -83,23 +85,26 @@ class DeterministicHierarchy(rootKey: DeterministicKey) {
      * @throws IllegalArgumentException if create is false and the path was not found.
      */
     operator fun get(path: List<ChildNumber>, relativePath: Boolean, create: Boolean): DeterministicKey {
-        val list = arrayListOf<ChildNumber>()
-        if (relativePath) {
-            list.addAll(rootPath)
-        }
-        list.addAll(path)
-        val absolutePath = list.toList()
-
-        if (!keys.containsKey(absolutePath)) {
-            if (!create)
-                throw IllegalArgumentException(String.format(Locale.US, "No key found for %s path %s.",
-                        if (relativePath) "relative" else "absolute", HDUtils.formatPath(path)))
-            check(absolutePath.size > 0, {"Can't derive the master key: nothing to derive from."})
-            val subList = absolutePath.subList(0, absolutePath.size - 1)
-            val parent = get(subList, false, true)
-            putKey(HDKeyDerivation.deriveChildKey(parent, absolutePath[absolutePath.size - 1]))
+        val start = if (relativePath) rootNode else tree
+        if (!create) {
+            return node(start, path, false)?.key
+                    ?: throw IllegalArgumentException(String.format(Locale.US, "No key found for %s path %s.",
+                            if (relativePath) "relative" else "absolute", HDUtils.formatPath(path)))
         }
-        return keys[absolutePath]!!
+        // Find the deepest ancestor we already have, then derive the missing keys downwards from it.
+        val nodes = arrayOfNulls<Node>(path.size + 1)
+        nodes[0] = start
+        for (i in path.indices)
+            nodes[i + 1] = nodes[i]!!.child(path[i].i(), true)
+        var known = path.size
+        while (known >= 0 && nodes[known]!!.key == null)
+            known--
+        // Only possible for absolute paths: the start is the master key path, which has no key of its own.
+        check(known >= 0, {"Can't derive the master key: nothing to derive from."})
+        var key = nodes[known]!!.key!!
+        for (i in known until path.size)
+            key = nodes[i + 1]!!.keyOrDerive(nodes[i]!!, key, path[i])
+        return key
     }
 
     /**
@@ -128,18 +133,14 @@ class DeterministicHierarchy(rootKey: DeterministicKey) {
     }
 
     private fun getNextChildNumberToDerive(path: List<ChildNumber>, privateDerivation: Boolean): ChildNumber {
-        val lastChildNumber = lastChildNumbers[path]
-        val nextChildNumber = ChildNumber(if (lastChildNumber != null) lastChildNumber.num() + 1 else 0, privateDerivation)
-        lastChildNumbers[path] = nextChildNumber
-        return nextChildNumber
+        // Atomic, so concurrent callers never hand out the same child number twice.
+        val next = LAST_CHILD.incrementAndGet(node(tree, path, true)!!)
+        return ChildNumber(next, privateDerivation)
     }
 
     fun getNumChildren(path: List<ChildNumber>): Int {
-        val cn = lastChildNumbers[path]
-        return if (cn == null)
-            0
-        else
-            cn.num() + 1   // children start with zero based childnumbers
+        // children start with zero based childnumbers
+        return (node(tree, path, false)?.lastChild ?: NO_CHILD) + 1
     }
 
     /**
@@ -162,8 +163,70 @@ class DeterministicHierarchy(rootKey: DeterministicKey) {
         return childKey
     }
 
+    // Returns the node at the given path below start, optionally creating the missing nodes.
+    private fun node(start: Node, path: List<ChildNumber>, create: Boolean): Node? {
+        var node = start
+        for (childNumber in path)
+            node = node.child(childNumber.i(), create) ?: return null
+        return node
+    }
+
+    /**
+     * A node of the tree: the key at this position, if known, and the children keyed by their raw child number.
+     * Nodes are only ever added, never removed, and each field is updated atomically, so lookups need no locking.
+     */
+    private class Node {
+        @Volatile @JvmField var key: DeterministicKey? = null
+        @Volatile @JvmField var lastChild: Int = NO_CHILD
+        @Volatile private var children: ConcurrentHashMap<Int, Node>? = null
+
+        fun child(i: Int, create: Boolean): Node? {
+            var map = children
+            if (map == null) {
+                if (!create)
+                    return null
+                synchronized(this) {
+                    map = children
+                    if (map == null) {
+                        map = ConcurrentHashMap(4)
+                        children = map
+                    }
+                }
+            }
+            val existing = map!![i]
+            if (existing != null || !create)
+                return existing
+            return map!!.putIfAbsent(i, Node()) ?: map!![i]
+        }
+
+        // Derives the key of this node from its parent's key unless it's already there. Two threads may race to
+        // derive the same key; both get the same instance, the one that was stored first.
+        fun keyOrDerive(parentNode: Node, parent: DeterministicKey, childNumber: ChildNumber): DeterministicKey {
+            key?.let { return it }
+            val derived = HDKeyDerivation.deriveChildKey(parent, childNumber)
+            if (!KEY.compareAndSet(this, null, derived))
+                return key!!
+            parentNode.sawChild(childNumber.num())
+            return derived
+        }
+
+        // Concurrent derivations may finish out of order, so only ever move the last child number forwards.
+        fun sawChild(num: Int) {
+            while (true) {
+                val last = lastChild
+                if (num <= last || LAST_CHILD.compareAndSet(this, last, num))
+                    return
+            }
+        }
+    }
+
     companion object {
 
         val BIP32_STANDARDISATION_TIME_SECS = 1369267200
+
+        private const val NO_CHILD = -1
+
+        private val KEY = AtomicReferenceFieldUpdater.newUpdater(Node::class.java, DeterministicKey::class.java, "key")
+        private val LAST_CHILD = AtomicIntegerFieldUpdater.newUpdater(Node::class.java, "lastChild")
     }
 }
@@ -61,6 +61,8 @@ class DeterministicKey {
     var parentFingerprint: Int = 0
         private set // 0 if this key is root node of key hierarchy
 
+    @Volatile private var derivedPrivKeys: PrivateKeyCache? = null
+
     /** 32 bytes  */
     /**
      * Returns the chain code associated with this key. See the specification to learn more about chain codes.
@@ -400,24 +402,59 @@ class DeterministicKey {
     private fun findOrDerivePrivateKey(): BigInteger? {
         val cursor = findParentWithPrivKey()
         if (cursor == null) return null
-        return derivePrivateKeyDownwards(cursor, cursor.key.priv!!.toByteArray())
+        if (cursor === this) return key.priv
+        return derivePrivateKeyDownwards(cursor, cursor.key.priv!!, cursor.derivedPrivKeyCache())
     }
 
-    private fun derivePrivateKeyDownwards(cursor: DeterministicKey, parentalPrivateKeyBytes: ByteArray): BigInteger {
-        var downCursor = DeterministicKey(cursor.path, cursor.chainCode,
-                cursor.key.pub, BigInteger(1, parentalPrivateKeyBytes), cursor.parent)
-        // Now we have to rederive the keys along the path back to ourselves. That path can be found by just truncating
-        // our path with the length of the parents path.
-        val path = this.path.subList(cursor.path.size, this.path.size)
-        for (num in path) {
-            downCursor = HDKeyDerivation.deriveChildKey(downCursor, num)
+    private fun derivePrivateKeyDownwards(cursor: DeterministicKey, parentalPrivateKey: BigInteger, cache: PrivateKeyCache): BigInteger {
+        cache[path, key.pubKey]?.let { return it }
+        // Walk up the parents towards the cursor, stopping early at the deepest one whose private key is cached.
+        val chain = ArrayList<DeterministicKey>()
+        var upCursor: DeterministicKey = this
+        var privKey = parentalPrivateKey
+        while (upCursor !== cursor) {
+            chain.add(upCursor)
+            upCursor = upCursor.parent!!
+            val cached = if (upCursor !== cursor) cache[upCursor.path, upCursor.key.pubKey] else null
+            if (cached != null) {
+                privKey = cached
+                break
+            }
         }
-        // downCursor is now the same key as us, but with private key bytes.
-        // If it's not, it means we tried decrypting with an invalid password and earlier checks e.g. for padding didn't
-        // catch it.
-        if (downCursor.key.pub != key.pub)
+        // Now we have to rederive the private keys along the chain back to ourselves. The public keys and chain codes
+        // of the keys in between are known already, so each level is just an HMAC and a scalar addition.
+        val derived = arrayOfNulls<BigInteger>(chain.size)
+        for (k in chain.indices.reversed()) {
+            val child = chain[k]
+            privKey = HDKeyDerivation.deriveChildPrivKey(upCursor.key.pubKey, privKey, upCursor.chainCode, child.childNumber)
+            derived[k] = privKey
+            upCursor = child
+        }
+        // privKey is now our private key. If it's not, it means we tried decrypting with an invalid password and
+        // earlier checks e.g. for padding didn't catch it.
+        if (!Arrays.equals(ECKey.publicPointFromPrivate(privKey).getEncoded(true), key.pubKey))
             throw KeyCrypterException("Could not decrypt bytes")
-        return checkNotNull<BigInteger>(downCursor.key.priv)
+        for (k in chain.indices)
+            cache.put(chain[k].path, chain[k].key.pubKey, derived[k]!!)
+        return privKey
+    }
+
+    // Private keys of descendants are cached on the key they are rederived from.
+    private fun derivedPrivKeyCache(): PrivateKeyCache {
+        derivedPrivKeys?.let { return it }
+        synchronized(this) {
+            return derivedPrivKeys ?: PrivateKeyCache(PRIVATE_KEY_CACHE_SIZE).also { derivedPrivKeys = it }
+        }
+    }
+
+    /**
+     * Rederiving the private key of a key that doesn't store it, see [privKey], is done once: the result and the
+     * private keys of the levels in between are cached, in a bounded cache, on the ancestor holding the private key.
+     * This wipes that cache, overwriting the cached private keys with zeros. It can be called on the ancestor or on
+     * any key that rederives its private key from it. Private keys asked for later are simply rederived again.
+     */
+    fun clearDerivedPrivateKeys() {
+        findParentWithPrivKey()?.derivedPrivKeys?.clear()
     }
 
     /**
@@ -499,6 +536,9 @@ class DeterministicKey {
 
     companion object {
 
+        /** The maximum number of rederived private keys cached below a key holding a private key.  */
+        const val PRIVATE_KEY_CACHE_SIZE = 512
+
         /** Sorts deterministic keys in the order of their child number. That's *usually* the order used to derive them.  */
         val CHILDNUM_ORDER: Comparator<ECKey> = Comparator { k1, k2 ->
             val cn1 = (k1 as DeterministicKey).childNumber
@@ -506,17 +546,8 @@ class DeterministicKey {
             cn1.compareTo(cn2)
         }
 
-        internal fun addChecksum(input: ByteArray): ByteArray {
-            val inputLength = input.size
-            val checksummed = ByteArray(inputLength + 4)
-            System.arraycopy(input, 0, checksummed, 0, inputLength)
-            val checksum = Sha256Hash.hashTwice(input)
-            System.arraycopy(checksum, 0, checksummed, inputLength, 4)
-            return checksummed
-        }
-
         internal fun toBase58(ser: ByteArray): String {
-            return Base58.encode(addChecksum(ser))
+            return Base58.encodeChecked(ser)
         }
 
         /** Deserialize a base-58-encoded HD Key with no parent  */
@@ -25,6 +25,10 @@ import java.util.*
 
 import com.nchain.key.ECKey
 import com.nchain.key.LazyECPoint
+import com.nchain.tools.ByteUtils
+import com.nchain.tools.Parallel
+import org.spongycastle.crypto.digests.RIPEMD160Digest
+import org.spongycastle.crypto.digests.SHA256Digest
 
 /**
  * Implementation of the [BIP 32](https://github.com/bitcoin/bips/blob/master/bip-0032.mediawiki)
@@ -171,6 +175,33 @@ object HDKeyDerivation {
         return RawKeyBytes(ki.toByteArray(), chainCode)
     }
 
+    /**
+     * Derives only the private key of a child, from the parent's compressed public key, private key and chain code.
+     * Unlike [deriveChildKeyBytesFromPrivate] no point multiplication is needed, so this is cheap enough to walk
+     * several levels of a hierarchy when rederiving the private key of a key that doesn't store it.
+     */
+    @Throws(HDDerivationException::class)
+    internal fun deriveChildPrivKey(parentPubKey: ByteArray, parentPrivKey: BigInteger, chainCode: ByteArray,
+                                    childNumber: ChildNumber): BigInteger {
+        val data = ByteBuffer.allocate(37)
+        if (childNumber.isHardened) {
+            val privKeyBytes = ByteUtils.bigIntegerToBytes(parentPrivKey, 32)
+            data.put(0.toByte()).put(privKeyBytes)
+            Arrays.fill(privKeyBytes, 0.toByte())
+        } else {
+            data.put(parentPubKey)
+        }
+        data.putInt(childNumber.i())
+        val i = HDUtils.hmacSha512(chainCode, data.array())
+        Arrays.fill(data.array(), 0.toByte())
+        val ilInt = BigInteger(1, Arrays.copyOfRange(i, 0, 32))
+        Arrays.fill(i, 0.toByte())
+        assertLessThanN(ilInt, "Illegal derived key: I_L >= n")
+        val ki = parentPrivKey.add(ilInt).mod(ECKey.CURVE.n)
+        assertNonZero(ki, "Illegal derived key: derived private key equals 0.")
+        return ki
+    }
+
     enum class PublicDeriveMode {
         NORMAL,
         WITH_INVERSION
@@ -211,6 +242,138 @@ object HDKeyDerivation {
         return RawKeyBytes(Ki.getEncoded(true), chainCode)
     }
 
+    /**
+     * Derives the non-hardened children `fromIndex` to `fromIndex + count - 1` of `parent` in bulk, which is much faster
+     * than calling [deriveChildKey] for each of them:
+     *
+     *  * the HMAC-SHA512 keyed with the parent chain code is set up once per worker and reused for every child,
+     *  * I_L·G uses the precomputed fixed-base table of the generator, and
+     *  * the public points of a whole chunk are converted to affine co-ordinates with a single field inversion.
+     *
+     * The children are returned packed in flat arrays instead of [DeterministicKey] objects; see [DerivedChildren].
+     * If `parent` has a private key, private keys are derived as well. The work can be spread over several threads.
+     *
+     * @throws IllegalStateException if the range is negative or reaches into the hardened indexes.
+     */
+    fun deriveChildren(parent: DeterministicKey, fromIndex: Int, count: Int,
+                       parallelism: Int = Parallel.DEFAULT_PARALLELISM): DerivedChildren {
+        check(fromIndex >= 0 && count >= 0 && fromIndex.toLong() + count <= 1L shl 31,
+                {"Not a range of non-hardened children: $fromIndex + $count"})
+        val parentPoint = parent.key.pubKeyPoint.normalize()
+        val parentPub = parentPoint.getEncoded(true)
+        val parentPriv = if (parent.hasPrivKey()) parent.privKey else null
+        val children = DerivedChildren(parent, fromIndex, count, parentPriv != null)
+        Parallel.mapChunks(count, parallelism) { from, to ->
+            deriveChildrenRange(parent.chainCode, parentPub, parentPoint, parentPriv, children, from, to)
+        }
+        return children
+    }
+
+    private fun deriveChildrenRange(chainCode: ByteArray, parentPub: ByteArray, parentPoint: ECPoint,
+                                    parentPriv: BigInteger?, out: DerivedChildren, from: Int, to: Int) {
+        val n = ECKey.CURVE.n
+        val hmac = HDUtils.createHmacSha512Digest(chainCode)
+        val i = ByteArray(64)
+        val index = ByteArray(4)
+        val points = arrayOfNulls<ECPoint>(to - from)
+        for (c in from until to) {
+            val childNumber = out.fromIndex + c
+            index[0] = (childNumber ushr 24).toByte()
+            index[1] = (childNumber ushr 16).toByte()
+            index[2] = (childNumber ushr 8).toByte()
+            index[3] = childNumber.toByte()
+            // doFinal leaves the HMAC reset to the state keyed with the chain code, ready for the next child.
+            hmac.update(parentPub, 0, parentPub.size)
+            hmac.update(index, 0, index.size)
+            hmac.doFinal(i, 0)
+            val ilInt = BigInteger(1, Arrays.copyOfRange(i, 0, 32))
+            // BIP 32: if I_L >= n or the resulting key is invalid, the child doesn't exist and its slots stay zeroed.
+            if (ilInt >= n)
+                continue
+            var ki: BigInteger? = null
+            if (parentPriv != null) {
+                ki = parentPriv.add(ilInt).mod(n)
+                if (ki.signum() == 0)
+                    continue
+            }
+            val point = ECKey.publicPointFromPrivate(ilInt).add(parentPoint)
+            if (point.isInfinity)
+                continue
+            points[c - from] = point
+            System.arraycopy(i, 32, out.chainCodes, c * 32, 32)
+            if (ki != null)
+                System.arraycopy(ByteUtils.bigIntegerToBytes(ki, 32), 0, out.privKeys!!, c * 32, 32)
+        }
+        Arrays.fill(i, 0.toByte())
+        ECKey.CURVE.curve.normalizeAll(points)
+
+        val sha256 = SHA256Digest()
+        val ripemd160 = RIPEMD160Digest()
+        val sha = ByteArray(32)
+        for (c in from until to) {
+            val point = points[c - from] ?: continue
+            val pub = point.getEncoded(true)
+            System.arraycopy(pub, 0, out.pubKeys, c * 33, 33)
+            sha256.update(pub, 0, pub.size)
+            sha256.doFinal(sha, 0)
+            ripemd160.update(sha, 0, sha.size)
+            ripemd160.doFinal(out.hash160s, c * 20)
+            out.valid[c] = true
+        }
+    }
+
+    /**
+     * A range of consecutive non-hardened children of one parent key, as produced by [deriveChildren]. Child `c` of
+     * the range has child number `fromIndex + c`; its compressed public key is at `pubKeys[33 * c]`, the hash160 of
+     * that key at `hash160s[20 * c]` and its chain code at `chainCodes[32 * c]`. When the parent had a private key,
+     * the 32 byte private key of the child is at `privKeys[32 * c]`.
+     *
+     * BIP 32 derivation may fail for an index with negligible probability; such children are reported by [isValid]
+     * and their slots are left zeroed.
+     */
+    class DerivedChildren internal constructor(val parent: DeterministicKey, val fromIndex: Int, val count: Int,
+                                               hasPrivKeys: Boolean) {
+        val pubKeys = ByteArray(count * 33)
+        val hash160s = ByteArray(count * 20)
+        val chainCodes = ByteArray(count * 32)
+        val privKeys: ByteArray? = if (hasPrivKeys) ByteArray(count * 32) else null
+        internal val valid = BooleanArray(count)
+
+        fun isValid(c: Int): Boolean = valid[c]
+
+        fun childNumber(c: Int): ChildNumber = ChildNumber(fromIndex + c, false)
+
+        fun pubKey(c: Int): ByteArray = Arrays.copyOfRange(pubKeys, c * 33, c * 33 + 33)
+
+        fun hash160(c: Int): ByteArray = Arrays.copyOfRange(hash160s, c * 20, c * 20 + 20)
+
+        /** Returns the position in the range of the child whose public key hashes to `hash160`, or -1. */
+        fun indexOfHash160(hash160: ByteArray): Int {
+            if (hash160.size != 20)
+                return -1
+            outer@ for (c in 0 until count) {
+                if (!valid[c])
+                    continue
+                for (b in 0 until 20)
+                    if (hash160s[c * 20 + b] != hash160[b])
+                        continue@outer
+                return c
+            }
+            return -1
+        }
+
+        /** Builds the full [DeterministicKey] of child `c` of the range. */
+        @Throws(HDDerivationException::class)
+        fun key(c: Int): DeterministicKey {
+            if (!valid[c])
+                throw HDDerivationException("Illegal derived key at child " + (fromIndex + c))
+            val priv = if (privKeys != null) BigInteger(1, Arrays.copyOfRange(privKeys, c * 32, c * 32 + 32)) else null
+            return DeterministicKey(HDUtils.append(parent.path, childNumber(c)),
+                    Arrays.copyOfRange(chainCodes, c * 32, c * 32 + 32),
+                    LazyECPoint(ECKey.CURVE.curve, pubKey(c)), priv, parent)
+        }
+    }
+
     private fun assertNonZero(integer: BigInteger, errorMessage: String) {
         if (integer == BigInteger.ZERO)
             throw HDDerivationException(errorMessage)
@@ -0,0 +1,51 @@
+package com.nchain.bip32
+
+import com.nchain.tools.ByteUtils
+import java.math.BigInteger
+import java.util.Arrays
+
+/**
+ * Bounded cache of private keys rederived below a [DeterministicKey] that holds a private key, keyed by absolute path
+ * and public key, so that another key at the same path never gets this one's secret. The private keys are kept as
+ * 32 byte arrays rather than [BigInteger]s so they can be overwritten with zeros when they are evicted or when the
+ * cache is cleared. The least recently used entry is evicted first.
+ */
+internal class PrivateKeyCache(private val capacity: Int) {
+
+    // A path and the public key expected there.
+    private class Key(val path: List<ChildNumber>, val pubKey: ByteArray) {
+        override fun equals(other: Any?) = other is Key && path == other.path && Arrays.equals(pubKey, other.pubKey)
+        override fun hashCode() = 31 * path.hashCode() + Arrays.hashCode(pubKey)
+    }
+
+    private val entries = object : LinkedHashMap<Key, ByteArray>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, ByteArray>): Boolean {
+            if (size <= capacity)
+                return false
+            Arrays.fill(eldest.value, 0.toByte())
+            return true
+        }
+    }
+
+    @Synchronized
+    operator fun get(path: List<ChildNumber>, pubKey: ByteArray): BigInteger? {
+        val bytes = entries[Key(path, pubKey)] ?: return null
+        return BigInteger(1, bytes)
+    }
+
+    @Synchronized
+    fun put(path: List<ChildNumber>, pubKey: ByteArray, privKey: BigInteger) {
+        entries.put(Key(path, pubKey), ByteUtils.bigIntegerToBytes(privKey, 32))?.let { Arrays.fill(it, 0.toByte()) }
+    }
+
+    @Synchronized
+    fun size(): Int = entries.size
+
+    /** Overwrites every cached private key with zeros and empties the cache. */
+    @Synchronized
+    fun clear() {
+        for (bytes in entries.values)
+            Arrays.fill(bytes, 0.toByte())
+        entries.clear()
+    }
+}
@@ -0,0 +1,228 @@
+package com.nchain.bip32
+
+import com.nchain.tools.Parallel
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * Reverse index from the hash160 of a receiving key to the account and child it belongs to, used to spot incoming
+ * payments. An account is given by the key of its chain, e.g. m/44'/145'/0'/0, usually without private bytes. For
+ * each account the index holds the children from 0 up to `gapLimit` children past the last one used, the lookahead
+ * window of BIP 44. When a payment to one of them is seen, [markUsed] slides the window of that account forward,
+ * deriving only the children that come into view.
+ *
+ * The hash160s of all accounts live in a single open addressing table made of two primitive arrays, so the index for
+ * tens of thousands of accounts is a handful of objects. Lookups can run concurrently; updates are serialized, and
+ * the keys they need are derived before the table is locked.
+ */
+class WatchIndex @JvmOverloads constructor(val gapLimit: Int = DEFAULT_GAP_LIMIT) {
+
+    private class Account(val chain: DeterministicKey) {
+        // Children [0, end) of the chain are in the table.
+        var end = 0
+        var lastUsed = -1
+    }
+
+    /** A key found in the index: child `childNumber` of the chain of account number `account`. */
+    class Match internal constructor(val account: Int, val chain: DeterministicKey, val childNumber: ChildNumber) {
+
+        /** The path of the key through the hierarchy of the chain. */
+        val path: List<ChildNumber>
+            get() = HDUtils.append(chain.path, childNumber)
+
+        /** Derives the key itself, for signing if the chain key can rederive private keys. */
+        fun key(): DeterministicKey = HDKeyDerivation.deriveChildKey(chain, childNumber)
+    }
+
+    private val lock = ReentrantReadWriteLock()
+    private val accounts = ArrayList<Account>()
+
+    // Open addressing with linear probing. Slot s holds a hash160 at hashes[20 * s] and, in entries[s], the account
+    // number in the high and the child number in the low 32 bits, or EMPTY for a free slot. The table is kept at
+    // most half full.
+    private var hashes = ByteArray(0)
+    private var entries = LongArray(0)
+    private var entryCount = 0
+
+    init {
+        check(gapLimit > 0, {"The gap limit must be positive: $gapLimit"})
+    }
+
+    /** The number of accounts in the index. */
+    val accountCount: Int
+        get() = lock.read { accounts.size }
+
+    /** The number of keys watched, over all accounts. */
+    val size: Int
+        get() = lock.read { entryCount }
+
+    /**
+     * Adds an account and indexes its first `gapLimit` children.
+     *
+     * @return the account number, used by the other methods and reported in each [Match].
+     */
+    fun addAccount(chain: DeterministicKey): Int = addAccounts(listOf(chain), 1)
+
+    /**
+     * Adds several accounts at once, as when the index is built on startup, spreading the derivation of their windows
+     * over several threads. The accounts are numbered consecutively in the order given.
+     *
+     * @return the account number of the first one.
+     */
+    @JvmOverloads
+    fun addAccounts(chains: List<DeterministicKey>, parallelism: Int = Parallel.DEFAULT_PARALLELISM): Int {
+        val windows = arrayOfNulls<HDKeyDerivation.DerivedChildren>(chains.size)
+        Parallel.mapChunks(chains.size, parallelism) { from, to ->
+            for (a in from until to)
+                windows[a] = HDKeyDerivation.deriveChildren(chains[a], 0, gapLimit, 1)
+        }
+        lock.write {
+            val first = accounts.size
+            ensureCapacity(entryCount + chains.size * gapLimit)
+            for (a in chains.indices) {
+                val account = Account(chains[a])
+                accounts.add(account)
+                insert(first + a, windows[a]!!, 0)
+                account.end = gapLimit
+            }
+            return first
+        }
+    }
+
+    /** Returns the account and child whose key hashes to `hash160`, or null if it isn't watched. */
+    fun find(hash160: ByteArray): Match? {
+        lock.read {
+            val slot = slotOf(hash160)
+            if (slot < 0)
+                return null
+            val entry = entries[slot]
+            val account = (entry ushr 32).toInt()
+            return Match(account, accounts[account].chain, ChildNumber(entry.toInt(), false))
+        }
+    }
+
+    /** Returns true if the key hashing to `hash160` is watched. */
+    fun contains(hash160: ByteArray): Boolean = lock.read { slotOf(hash160) >= 0 }
+
+    /** Returns the chain key of the given account. */
+    fun chain(account: Int): DeterministicKey = lock.read { accounts[account].chain }
+
+    /** Returns the highest child number of the account that was marked used, or -1 if none was. */
+    fun lastUsed(account: Int): Int = lock.read { accounts[account].lastUsed }
+
+    /**
+     * Records that the key hashing to `hash160` received a payment and extends the window of its account, see
+     * [markUsed].
+     *
+     * @return the match, or null if the key isn't watched.
+     */
+    fun markUsed(hash160: ByteArray): Match? {
+        val match = find(hash160) ?: return null
+        markUsed(match.account, match.childNumber.num())
+        return match
+    }
+
+    /**
+     * Records that child `childNumber` of the account received a payment and extends the window of the account so
+     * that the `gapLimit` children after it are watched too.
+     *
+     * @return the number of children added to the index.
+     */
+    fun markUsed(account: Int, childNumber: Int): Int {
+        check(childNumber >= 0, {"Not a non-hardened child number: $childNumber"})
+        val newEnd = Math.min(childNumber.toLong() + 1 + gapLimit, 1L shl 31).toInt()
+        val (chain, end) = lock.write {
+            val state = accounts[account]
+            state.lastUsed = Math.max(state.lastUsed, childNumber)
+            if (newEnd <= state.end)
+                return 0
+            Pair(state.chain, state.end)
+        }
+        val window = HDKeyDerivation.deriveChildren(chain, end, newEnd - end, 1)
+        lock.write {
+            val state = accounts[account]
+            // Another thread may have extended the window meanwhile: only add what is still missing.
+            if (newEnd <= state.end)
+                return 0
+            val added = newEnd - state.end
+            ensureCapacity(entryCount + added)
+            insert(account, window, state.end - end)
+            state.end = newEnd
+            return added
+        }
+    }
+
+    private fun insert(account: Int, window: HDKeyDerivation.DerivedChildren, from: Int) {
+        val mask = entries.size - 1
+        for (c in from until window.count) {
+            // Children that can't be derived (negligibly unlikely) are part of the window but can't receive anything.
+            if (!window.isValid(c))
+                continue
+            var slot = hashOf(window.hash160s, c * 20) and mask
+            while (entries[slot] != EMPTY)
+                slot = (slot + 1) and mask
+            System.arraycopy(window.hash160s, c * 20, hashes, slot * 20, 20)
+            entries[slot] = (account.toLong() shl 32) or (window.fromIndex + c).toLong()
+            entryCount++
+        }
+    }
+
+    private fun slotOf(hash160: ByteArray): Int {
+        if (hash160.size != 20 || entries.isEmpty())
+            return -1
+        val mask = entries.size - 1
+        var slot = hashOf(hash160, 0) and mask
+        while (entries[slot] != EMPTY) {
+            if (matches(slot, hash160))
+                return slot
+            slot = (slot + 1) and mask
+        }
+        return -1
+    }
+
+    private fun matches(slot: Int, hash160: ByteArray): Boolean {
+        val offset = slot * 20
+        for (b in 0 until 20)
+            if (hashes[offset + b] != hash160[b])
+                return false
+        return true
+    }
+
+    private fun ensureCapacity(count: Int) {
+        if (count * 2L <= entries.size)
+            return
+        var capacity = Math.max(16, entries.size)
+        while (capacity < count * 2L)
+            capacity = capacity shl 1
+        val oldHashes = hashes
+        val oldEntries = entries
+        hashes = ByteArray(capacity * 20)
+        entries = LongArray(capacity)
+        entries.fill(EMPTY)
+        val mask = capacity - 1
+        for (s in oldEntries.indices) {
+            if (oldEntries[s] == EMPTY)
+                continue
+            var slot = hashOf(oldHashes, s * 20) and mask
+            while (entries[slot] != EMPTY)
+                slot = (slot + 1) and mask
+            System.arraycopy(oldHashes, s * 20, hashes, slot * 20, 20)
+            entries[slot] = oldEntries[s]
+        }
+    }
+
+    companion object {
+
+        /** The gap limit of BIP 44. */
+        const val DEFAULT_GAP_LIMIT = 20
+
+        private const val EMPTY = -1L
+
+        // Hash160s are uniformly distributed already, so their first four bytes make a good enough hash.
+        private fun hashOf(bytes: ByteArray, offset: Int): Int {
+            return (bytes[offset].toInt() shl 24) or ((bytes[offset + 1].toInt() and 0xff) shl 16) or
+                    ((bytes[offset + 2].toInt() and 0xff) shl 8) or (bytes[offset + 3].toInt() and 0xff)
+        }
+    }
+}
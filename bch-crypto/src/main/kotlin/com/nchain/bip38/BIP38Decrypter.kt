@@ -0,0 +1,98 @@
+package com.nchain.bip38
+
+import com.nchain.key.ECKey
+import com.nchain.tools.Parallel
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Decrypts [BIP38PrivateKey]s in bulk: a batch of keys with one passphrase, as when importing paper wallets, or one
+ * key with a list of candidate passphrases. Each decryption is dominated by an scrypt run with N = 16384 and r = 8,
+ * which needs [SCRYPT_MEMORY] bytes of working memory, so the number of keys decrypted at the same time is bounded by
+ * a memory budget as well as by the parallelism.
+ *
+ * A wrong passphrase is told apart by the address hash stored in the key, which is checked before the [ECKey] is
+ * handed out; wrong passphrases are reported as null rather than by a [BIP38PrivateKey.BadPassphraseException].
+ */
+class BIP38Decrypter @JvmOverloads constructor(
+        /** The memory, in bytes, that the concurrent scrypt runs may use together. */
+        val memoryBudget: Long = DEFAULT_MEMORY_BUDGET,
+        parallelism: Int = Parallel.DEFAULT_PARALLELISM) {
+
+    /** The number of keys decrypted at the same time: as many as the memory budget allows, up to the parallelism. */
+    val workers: Int
+
+    init {
+        check(memoryBudget > 0, {"The memory budget must be positive: $memoryBudget"})
+        check(parallelism > 0, {"parallelism must be positive: $parallelism"})
+        workers = Math.max(1, Math.min(parallelism.toLong(), memoryBudget / SCRYPT_MEMORY).toInt())
+    }
+
+    /** A passphrase that opened the key: the position of the passphrase in the list, and the decrypted key. */
+    class Match internal constructor(val index: Int, val passphrase: String, val key: ECKey)
+
+    /**
+     * Decrypts every key with the passphrase.
+     *
+     * @return the decrypted keys, in the same order, with null for each key the passphrase doesn't open.
+     */
+    fun decryptAll(keys: List<BIP38PrivateKey>, passphrase: String): List<ECKey?> {
+        val normalizedPassphrase = BIP38PrivateKey.normalize(passphrase)
+        val decrypted = arrayOfNulls<ECKey>(keys.size)
+        run(keys.size) { i ->
+            decrypted[i] = keys[i].decryptOrNull(normalizedPassphrase)
+            false
+        }
+        return decrypted.asList()
+    }
+
+    /**
+     * Tries the passphrases on the key, stopping as soon as one opens it.
+     *
+     * @return the first passphrase found to open the key, or null if none does. When several do, which one is
+     * found first is up to the scheduling of the threads.
+     */
+    fun findPassphrase(key: BIP38PrivateKey, passphrases: List<String>): Match? {
+        var match: Match? = null
+        run(passphrases.size) { i ->
+            val decrypted = key.decryptOrNull(BIP38PrivateKey.normalize(passphrases[i]))
+            if (decrypted != null) {
+                synchronized(this) {
+                    if (match == null)
+                        match = Match(i, passphrases[i], decrypted)
+                }
+            }
+            decrypted != null
+        }
+        return match
+    }
+
+    // Runs task(i) for i in [0, count) on the workers, each taking the next index as it becomes free, until a task
+    // returns true.
+    private fun run(count: Int, task: (Int) -> Boolean) {
+        val next = AtomicInteger()
+        val workers = Math.min(this.workers, Math.max(count, 1))
+        Parallel.mapChunks(workers, workers) { _, _ ->
+            while (true) {
+                val i = next.getAndIncrement()
+                if (i >= count)
+                    break
+                if (task(i)) {
+                    next.set(count)
+                    break
+                }
+            }
+        }
+    }
+
+    companion object {
+
+        /**
+         * The working memory of one BIP 38 scrypt run, N = 16384, r = 8, p = 8: the 128·r·N byte table plus the
+         * per-block buffers.
+         */
+        const val SCRYPT_MEMORY = 128L * 8 * 16384 + 256L * 8 + 128L * 8 * 8
+
+        /** By default a quarter of the maximum heap is given to scrypt. */
+        @JvmStatic val DEFAULT_MEMORY_BUDGET: Long = Runtime.getRuntime().maxMemory() / 4
+    }
+}
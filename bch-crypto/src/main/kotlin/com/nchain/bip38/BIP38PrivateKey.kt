@@ -95,12 +95,19 @@ constructor(params: NetworkParameters, encoded: String) : VersionedChecksummedBy
 
     @Throws(BadPassphraseException::class)
     fun decrypt(passphrase: String): ECKey {
-        val normalizedPassphrase = Normalizer.normalize(passphrase, Normalizer.Form.NFC)
+        return decryptOrNull(normalize(passphrase)) ?: throw BadPassphraseException()
+    }
+
+    /**
+     * Decrypts with a passphrase already normalized by [normalize], returning null instead of throwing when the
+     * address hash shows it is the wrong one.
+     */
+    internal fun decryptOrNull(normalizedPassphrase: String): ECKey? {
         val key = if (ecMultiply) decryptEC(normalizedPassphrase) else decryptNoEC(normalizedPassphrase)
         val hash = Sha256Hash.twiceOf(key.toCashAddress(params).toBase58().toByteArray(Charsets.US_ASCII))
-        val actualAddressHash = Arrays.copyOfRange(hash.bytes, 0, 4)
-        if (!Arrays.equals(actualAddressHash, addressHash))
-            throw BadPassphraseException()
+        for (i in 0..3)
+            if (hash.bytes[i] != addressHash[i])
+                return null
         return key
     }
 
@@ -191,6 +198,8 @@ constructor(params: NetworkParameters, encoded: String) : VersionedChecksummedBy
 
     companion object {
 
+        internal fun normalize(passphrase: String): String = Normalizer.normalize(passphrase, Normalizer.Form.NFC)
+
         /**
          * Construct a password-protected private key from its Base58 representation.
          * @param params
@@ -152,7 +152,7 @@ private constructor(val wordList:List<String>) {
         /** UNIX time for when the BIP39 standard was finalised. This can be used as a default seed birthday.  */
         var BIP39_STANDARDISATION_TIME_SECS: Long = 1381276800
 
-        private val PBKDF2_ROUNDS = 2048
+        internal const val PBKDF2_ROUNDS = 2048
 
         var ENGLISH: MnemonicCode = MnemonicCode(openDefaultWords(BIP39_ENGLISH_RESOURCE_NAME, BIP39_ENGLISH_SHA256))
 
@@ -182,11 +182,12 @@ private constructor(val wordList:List<String>) {
             // used as a pseudo-random function. Desired length of the
             // derived key is 512 bits (= 64 bytes).
             //
-            val pass = words.joinToString(" ")
-            val salt = "mnemonic$passphrase"
+            val pass = words.joinToString(" ").toByteArray(Charsets.UTF_8)
+            val salt = "mnemonic$passphrase".toByteArray(Charsets.UTF_8)
 
             val watch = Stopwatch().start()
             val seed = PBKDF2SHA512.derive(pass, salt, PBKDF2_ROUNDS, 64)
+            Arrays.fill(pass, 0.toByte())
             watch.stop()
             log.info("PBKDF2 took ${watch.elapsed}ms")
             return seed
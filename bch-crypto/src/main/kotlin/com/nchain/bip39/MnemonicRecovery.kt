@@ -0,0 +1,374 @@
+package com.nchain.bip39
+
+import com.nchain.bip32.ChildNumber
+import com.nchain.bip32.DeterministicKey
+import com.nchain.bip32.HDDerivationException
+import com.nchain.bip32.HDKeyDerivation
+import com.nchain.tools.Parallel
+import org.spongycastle.crypto.digests.SHA256Digest
+import java.util.Arrays
+import java.util.Collections
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Recovers a mnemonic phrase that was only partly remembered, by searching for the phrase whose wallet contains a
+ * known address. The phrase is given as remembered; the search covers:
+ *
+ *  * words that are lost, given as `null`,
+ *  * words that are lost and whose position isn't known either, when fewer words than [Builder.phraseLength] are given,
+ *  * misspelt words, which are replaced by the words of the list within [Builder.maxEditDistance] of them,
+ *  * up to [Builder.maxSubstitutedWords] words that are valid but wrong, replaced in the same way, and
+ *  * two words written down in each other's place, with [Builder.trySwaps].
+ *
+ * Each candidate phrase is first checked against the BIP 39 checksum, which costs a single SHA-256 and rules out all
+ * but 1 in 16 (12 words) to 1 in 256 (24 words) of them. Only the phrases passing it go through the expensive seed
+ * derivation, 2048 rounds of PBKDF2, and the derivation of the first [Builder.gapLimit] addresses of the chain at
+ * `chainPath`. The work is spread over several threads.
+ *
+ * The candidates are numbered from 0 to [total] and searched in units of consecutive candidates. [Progress] reports
+ * a checkpoint: all candidates below it have been searched, so an interrupted search can be resumed from there.
+ */
+class MnemonicRecovery private constructor(builder: Builder) {
+
+    /**
+     * Describes the search.
+     *
+     * @param words the phrase as remembered, with `null` for each word that is lost
+     * @param targetHash160 the hash160 of an address of the wallet
+     * @param chainPath the path of the chain the address is on, e.g. m/44'/145'/0'/0
+     */
+    class Builder(internal val words: List<String?>, internal val targetHash160: ByteArray,
+                  internal val chainPath: List<ChildNumber>) {
+        internal var code = MnemonicCode.ENGLISH
+        internal var passphrase = ""
+        internal var phraseLength = words.size + (3 - words.size % 3) % 3
+        internal var gapLimit = 20
+        internal var maxEditDistance = 1
+        internal var maxSubstitutedWords = 0
+        internal var trySwaps = false
+
+        fun code(code: MnemonicCode): Builder { this.code = code; return this }
+
+        fun passphrase(passphrase: String): Builder { this.passphrase = passphrase; return this }
+
+        /** The number of words of the phrase, by default the given words rounded up to a multiple of three. */
+        fun phraseLength(length: Int): Builder { this.phraseLength = length; return this }
+
+        /** The number of addresses of the chain to check for the target, 20 by default. */
+        fun gapLimit(gapLimit: Int): Builder { this.gapLimit = gapLimit; return this }
+
+        /** How far, in single letter edits, a misspelt or substituted word may be from the right one; 1 by default. */
+        fun maxEditDistance(distance: Int): Builder { this.maxEditDistance = distance; return this }
+
+        /** How many valid words may be wrong, none by default. Each one multiplies the search considerably. */
+        fun maxSubstitutedWords(count: Int): Builder { this.maxSubstitutedWords = count; return this }
+
+        /** Whether to also try every phrase with two of the words swapped. */
+        fun trySwaps(trySwaps: Boolean): Builder { this.trySwaps = trySwaps; return this }
+
+        fun build(): MnemonicRecovery = MnemonicRecovery(this)
+    }
+
+    /** The phrase found: [index] is its candidate number and [childNumber] the child of the chain that matched. */
+    class Result internal constructor(val words: List<String>, val index: Long, val childNumber: ChildNumber)
+
+    /**
+     * A snapshot of the progress of a search: [checked] of the [total] candidates were searched, of which
+     * [checksumValid] passed the checksum. All candidates below [checkpoint] have been searched.
+     */
+    class Progress internal constructor(val total: Long, val checked: Long, val checksumValid: Long, val checkpoint: Long)
+
+    /** Receives the progress of a search, one call at a time, after each unit of candidates. */
+    interface ProgressListener {
+        fun onProgress(progress: Progress)
+    }
+
+    private val code = builder.code
+    private val targetHash160 = builder.targetHash160.copyOf()
+    private val chainPath = builder.chainPath.toList()
+    private val gapLimit = builder.gapLimit
+    private val phraseLength = builder.phraseLength
+    private val salt = ("mnemonic" + builder.passphrase).toByteArray(Charsets.UTF_8)
+    private val wordBytes = code.wordList.map { it.toByteArray(Charsets.UTF_8) }
+
+    // Every candidate phrase is one choice of word per position in one of these templates, each listing the word
+    // indexes to try at each position. Candidates are numbered template by template, the last position varying fastest.
+    private val templates: List<Array<IntArray>>
+    private val templateStarts: LongArray
+
+    /** The number of candidate phrases. */
+    val total: Long
+
+    init {
+        check(phraseLength > 0 && phraseLength % 3 == 0 && phraseLength <= 24, {"Not a BIP 39 phrase length: $phraseLength"})
+        check(builder.words.size <= phraseLength, {"More words than the phrase length: ${builder.words.size}"})
+        check(phraseLength - builder.words.size <= 2, {"Too many words lost at unknown positions"})
+        check(targetHash160.size == 20, {"Not a 20 byte hash: ${targetHash160.size}"})
+        check(gapLimit > 0, {"The gap limit must be positive: $gapLimit"})
+
+        val all = IntArray(code.wordList.size) { it }
+        val remembered = builder.words.map { word ->
+            if (word == null) {
+                all
+            } else {
+                val index = Collections.binarySearch(code.wordList, word)
+                if (index >= 0)
+                    intArrayOf(index)
+                else
+                    neighbours(word, builder.maxEditDistance, -1).let { if (it.isEmpty()) all else it }
+            }
+        }
+        val result = ArrayList<Array<IntArray>>()
+        for (phrase in insertLostWords(remembered, phraseLength - remembered.size, all)) {
+            result.add(phrase)
+            if (builder.trySwaps) {
+                for (i in phrase.indices) {
+                    for (j in i + 1 until phrase.size) {
+                        if (phrase[i].size == 1 && phrase[j].size == 1 && phrase[i][0] == phrase[j][0])
+                            continue
+                        val swapped = phrase.copyOf()
+                        swapped[i] = phrase[j]
+                        swapped[j] = phrase[i]
+                        result.add(swapped)
+                    }
+                }
+            }
+            substitute(phrase, 0, builder.maxSubstitutedWords, builder.maxEditDistance, result)
+        }
+        templates = result
+        templateStarts = LongArray(templates.size + 1)
+        for (t in templates.indices) {
+            var count = 1L
+            for (position in templates[t])
+                count = Math.multiplyExact(count, position.size.toLong())
+            templateStarts[t + 1] = Math.addExact(templateStarts[t], count)
+        }
+        total = templateStarts[templates.size]
+    }
+
+    /**
+     * Runs the search, from candidate `startFrom` on, until the phrase is found or the candidates run out.
+     *
+     * @param startFrom a [Progress.checkpoint] of an earlier search to resume it, or 0
+     * @return the phrase found, or null.
+     */
+    @JvmOverloads
+    fun search(parallelism: Int = Parallel.DEFAULT_PARALLELISM, startFrom: Long = 0,
+               listener: ProgressListener? = null): Result? {
+        check(startFrom in 0..total, {"Not a candidate number: $startFrom"})
+        // Small searches still get spread over all the threads.
+        val unitSize = Math.max(1L, Math.min(UNIT_SIZE, (total - startFrom) / (parallelism * 4L)))
+        val units = (total - startFrom + unitSize - 1) / unitSize
+        val nextUnit = AtomicLong()
+        val found = AtomicReference<Result>()
+        val tracker = ProgressTracker(startFrom, unitSize, listener)
+        Parallel.mapChunks(parallelism, parallelism) { _, _ ->
+            val worker = Worker()
+            while (found.get() == null) {
+                val unit = nextUnit.getAndIncrement()
+                if (unit >= units)
+                    break
+                val from = startFrom + unit * unitSize
+                val to = Math.min(from + unitSize, total)
+                val valid = worker.scan(from, to, found)
+                tracker.done(unit, to - from, valid)
+            }
+        }
+        return found.get()
+    }
+
+    private inner class ProgressTracker(private val startFrom: Long, private val unitSize: Long,
+                                        private val listener: ProgressListener?) {
+        private var checked = 0L
+        private var checksumValid = 0L
+        // Units below this one are all done; the ones above it that are done too.
+        private var lowestPending = 0L
+        private val doneAbove = HashSet<Long>()
+
+        @Synchronized
+        fun done(unit: Long, count: Long, valid: Long) {
+            checked += count
+            checksumValid += valid
+            doneAbove.add(unit)
+            while (doneAbove.remove(lowestPending))
+                lowestPending++
+            val checkpoint = Math.min(startFrom + lowestPending * unitSize, total)
+            listener?.onProgress(Progress(total, checked, checksumValid, checkpoint))
+        }
+    }
+
+    // Scratch state of one searching thread.
+    private inner class Worker {
+        private val digest = SHA256Digest()
+        private val hash = ByteArray(32)
+        private val packed = ByteArray(33)
+        private val digits = IntArray(phraseLength)
+        private val indexes = IntArray(phraseLength)
+        private val entropyBytes = phraseLength * 4 / 3
+        private val checksumBits = phraseLength / 3
+
+        // Searches candidates [from, to) and returns how many of them passed the checksum.
+        fun scan(from: Long, to: Long, found: AtomicReference<Result>): Long {
+            var t = Arrays.binarySearch(templateStarts, from).let { if (it >= 0) it else -it - 2 }
+            while (templateStarts[t + 1] == templateStarts[t])
+                t++
+            var template = templates[t]
+            // Mixed radix digits of the offset of the first candidate in its template.
+            var rest = from - templateStarts[t]
+            for (p in phraseLength - 1 downTo 0) {
+                digits[p] = (rest % template[p].size).toInt()
+                rest /= template[p].size
+            }
+            var valid = 0L
+            var candidate = from
+            while (candidate < to) {
+                for (p in 0 until phraseLength)
+                    indexes[p] = template[p][digits[p]]
+                if (checksumMatches()) {
+                    if (found.get() != null)
+                        return valid
+                    valid++
+                    val childNumber = matchAddress()
+                    if (childNumber != null) {
+                        found.compareAndSet(null, Result(indexes.map { code.wordList[it] }, candidate, childNumber))
+                        return valid
+                    }
+                }
+                candidate++
+                // Next candidate: increment the digits, moving on to the next template when they wrap around.
+                var p = phraseLength - 1
+                while (p >= 0) {
+                    if (++digits[p] < template[p].size)
+                        break
+                    digits[p] = 0
+                    p--
+                }
+                if (p < 0 && candidate < to) {
+                    do t++ while (templateStarts[t + 1] == templateStarts[t])
+                    template = templates[t]
+                }
+            }
+            return valid
+        }
+
+        private fun checksumMatches(): Boolean {
+            Arrays.fill(packed, 0.toByte())
+            var bit = 0
+            for (index in indexes) {
+                for (b in 10 downTo 0) {
+                    if (index and (1 shl b) != 0)
+                        packed[bit ushr 3] = (packed[bit ushr 3].toInt() or (0x80 ushr (bit and 7))).toByte()
+                    bit++
+                }
+            }
+            digest.update(packed, 0, entropyBytes)
+            digest.doFinal(hash, 0)
+            // The checksum is the low bits of the last word.
+            val checksum = indexes[phraseLength - 1] and ((1 shl checksumBits) - 1)
+            return (hash[0].toInt() and 0xff) ushr (8 - checksumBits) == checksum
+        }
+
+        private fun matchAddress(): ChildNumber? {
+            var length = phraseLength - 1
+            for (index in indexes)
+                length += wordBytes[index].size
+            val phrase = ByteArray(length)
+            var offset = 0
+            for (p in 0 until phraseLength) {
+                if (p > 0)
+                    phrase[offset++] = ' '.toByte()
+                val word = wordBytes[indexes[p]]
+                System.arraycopy(word, 0, phrase, offset, word.size)
+                offset += word.size
+            }
+            val seed = PBKDF2SHA512.derive(phrase, salt, MnemonicCode.PBKDF2_ROUNDS, 64)
+            Arrays.fill(phrase, 0.toByte())
+            try {
+                var key: DeterministicKey = HDKeyDerivation.createMasterPrivateKey(seed)
+                for (childNumber in chainPath)
+                    key = HDKeyDerivation.deriveChildKey(key, childNumber)
+                val children = HDKeyDerivation.deriveChildren(key.dropPrivateBytes().dropParent(), 0, gapLimit, 1)
+                val c = children.indexOfHash160(targetHash160)
+                return if (c >= 0) children.childNumber(c) else null
+            } catch (e: HDDerivationException) {
+                // This seed can't be the wallet's.
+                return null
+            } finally {
+                Arrays.fill(seed, 0.toByte())
+            }
+        }
+    }
+
+    // Returns the phrases with `count` lost words inserted at every possible combination of positions.
+    private fun insertLostWords(words: List<IntArray>, count: Int, all: IntArray): List<Array<IntArray>> {
+        if (count == 0)
+            return listOf(words.toTypedArray())
+        val phrases = ArrayList<Array<IntArray>>()
+        for (position in 0..words.size) {
+            val inserted = ArrayList(words)
+            inserted.add(position, all)
+            // Inserting just before or just after a lost word gives the same template: keep only one of them.
+            for (phrase in insertLostWords(inserted, count - 1, all))
+                if (phrases.none { Arrays.deepEquals(it, phrase) })
+                    phrases.add(phrase)
+        }
+        return phrases
+    }
+
+    // Adds the phrases with up to `count` more of the known words, at positions from `from` on, replaced by their
+    // neighbours.
+    private fun substitute(phrase: Array<IntArray>, from: Int, count: Int, distance: Int, out: MutableList<Array<IntArray>>) {
+        if (count == 0)
+            return
+        for (p in from until phrase.size) {
+            if (phrase[p].size != 1)
+                continue
+            val replacements = neighbours(code.wordList[phrase[p][0]], distance, phrase[p][0])
+            if (replacements.isEmpty())
+                continue
+            val substituted = phrase.copyOf()
+            substituted[p] = replacements
+            out.add(substituted)
+            substitute(substituted, p + 1, count - 1, distance, out)
+        }
+    }
+
+    // Indexes of the words of the list within `distance` edits of `word`, except `exclude`.
+    private fun neighbours(word: String, distance: Int, exclude: Int): IntArray {
+        val result = ArrayList<Int>()
+        for (i in code.wordList.indices)
+            if (i != exclude && editDistance(word, code.wordList[i], distance) <= distance)
+                result.add(i)
+        return result.toIntArray()
+    }
+
+    companion object {
+
+        /** The most consecutive candidates a thread takes at a time, and between progress reports. */
+        const val UNIT_SIZE = 1L shl 14
+
+        // Levenshtein distance, or anything above `max` once it is known to be more than that.
+        private fun editDistance(a: String, b: String, max: Int): Int {
+            if (Math.abs(a.length - b.length) > max)
+                return max + 1
+            var previous = IntArray(b.length + 1) { it }
+            var current = IntArray(b.length + 1)
+            for (i in 1..a.length) {
+                current[0] = i
+                var rowMin = i
+                for (j in 1..b.length) {
+                    val cost = if (a[i - 1] == b[j - 1]) 0 else 1
+                    current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost)
+                    rowMin = Math.min(rowMin, current[j])
+                }
+                if (rowMin > max)
+                    return max + 1
+                val swap = previous
+                previous = current
+                current = swap
+            }
+            return previous[b.length]
+        }
+    }
+}
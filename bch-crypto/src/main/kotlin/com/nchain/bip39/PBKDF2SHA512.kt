@@ -23,12 +23,8 @@
 
 package com.nchain.bip39
 
-import java.io.ByteArrayOutputStream
-import java.nio.ByteBuffer
-import java.nio.ByteOrder
-import javax.crypto.Mac
-import javax.crypto.spec.SecretKeySpec
-import kotlin.experimental.xor
+import org.spongycastle.crypto.digests.SHA512Digest
+import java.util.Arrays
 
 /**
  *
@@ -43,76 +39,82 @@ import kotlin.experimental.xor
  *
  * http://cryptofreek.org/2012/11/29/pbkdf2-pure-java-implementation/<br></br>
  * Modified to use SHA-512 - Ken Sedgwick ken@bonsai.com
+ *
+ * The HMAC is computed directly on two SHA-512 digests: the states after absorbing the inner and the outer padded
+ * key are computed once per derivation and restored for every iteration, so an iteration costs just the two
+ * compression calls over the previous block, on buffers that are reused throughout.
  */
 object PBKDF2SHA512 {
-    fun derive(P: String, S: String, c: Int, dkLen: Int): ByteArray {
-        val baos = ByteArrayOutputStream()
-
-        try {
-            val hLen = 20
-
-            if (dkLen > (Math.pow(2.0, 32.0) - 1) * hLen) {
-                throw IllegalArgumentException("derived key too long")
-            } else {
-                val l = Math.ceil(dkLen.toDouble() / hLen.toDouble()).toInt()
-                // int r = dkLen - (l-1)*hLen;
-
-                for (i in 1..l) {
-                    val T = F(P, S, c, i)
-                    baos.write(T!!)
-                }
-            }
-        } catch (e: Exception) {
-            throw RuntimeException(e)
-        }
 
-        val baDerived = ByteArray(dkLen)
-        System.arraycopy(baos.toByteArray(), 0, baDerived, 0, baDerived.size)
+    /** The output size of HMAC-SHA512, hLen in RFC 2898. */
+    private const val H_LEN = 64
+    /** The block size of SHA-512, the size of the HMAC pads. */
+    private const val BLOCK_LEN = 128
 
-        return baDerived
+    fun derive(P: String, S: String, c: Int, dkLen: Int): ByteArray {
+        return derive(P.toByteArray(Charsets.UTF_8), S.toByteArray(Charsets.UTF_8), c, dkLen)
     }
 
-    @Throws(Exception::class)
-    private fun F(P: String, S: String, c: Int, i: Int): ByteArray? {
-        var U_LAST: ByteArray? = null
-        var U_XOR: ByteArray? = null
-
-        val key = SecretKeySpec(P.toByteArray(charset("UTF-8")), "HmacSHA512")
-        val mac = Mac.getInstance(key.algorithm)
-        mac.init(key)
-
-        for (j in 0 until c) {
-            if (j == 0) {
-                val baS = S.toByteArray(charset("UTF-8"))
-                val baI = INT(i)
-                val baU = ByteArray(baS.size + baI.size)
-
-                System.arraycopy(baS, 0, baU, 0, baS.size)
-                System.arraycopy(baI, 0, baU, baS.size, baI.size)
-
-                U_XOR = mac.doFinal(baU)
-                U_LAST = U_XOR
-                mac.reset()
-            } else {
-                val baU = mac.doFinal(U_LAST)
-                mac.reset()
-
-                for (k in U_XOR!!.indices) {
-                    U_XOR[k] = U_XOR[k] xor baU[k]
-                }
-
-                U_LAST = baU
+    fun derive(password: ByteArray, salt: ByteArray, c: Int, dkLen: Int): ByteArray {
+        if (dkLen > (Math.pow(2.0, 32.0) - 1) * H_LEN)
+            throw IllegalArgumentException("derived key too long")
+        check(c > 0, {"Iteration count must be positive: $c"})
+
+        // HMAC keys longer than the block size are hashed first.
+        val key = ByteArray(BLOCK_LEN)
+        if (password.size > BLOCK_LEN) {
+            val digest = SHA512Digest()
+            digest.update(password, 0, password.size)
+            digest.doFinal(key, 0)
+        } else {
+            System.arraycopy(password, 0, key, 0, password.size)
+        }
+        val inner = SHA512Digest()
+        val outer = SHA512Digest()
+        for (b in 0 until BLOCK_LEN)
+            key[b] = (key[b].toInt() xor 0x36).toByte()
+        inner.update(key, 0, BLOCK_LEN)
+        for (b in 0 until BLOCK_LEN)
+            key[b] = (key[b].toInt() xor (0x36 xor 0x5c)).toByte()
+        outer.update(key, 0, BLOCK_LEN)
+        Arrays.fill(key, 0.toByte())
+        val innerState = inner.copy()
+        val outerState = outer.copy()
+
+        val derived = ByteArray(dkLen)
+        val u = ByteArray(H_LEN)
+        val t = ByteArray(H_LEN)
+        val index = ByteArray(4)
+        val l = (dkLen + H_LEN - 1) / H_LEN
+        for (i in 1..l) {
+            // U_1 = PRF(P, S || INT(i))
+            index[0] = (i ushr 24).toByte()
+            index[1] = (i ushr 16).toByte()
+            index[2] = (i ushr 8).toByte()
+            index[3] = i.toByte()
+            inner.update(salt, 0, salt.size)
+            inner.update(index, 0, 4)
+            inner.doFinal(u, 0)
+            outer.update(u, 0, H_LEN)
+            outer.doFinal(u, 0)
+            System.arraycopy(u, 0, t, 0, H_LEN)
+            // U_j = PRF(P, U_{j-1}), T_i = U_1 ^ U_2 ^ ... ^ U_c
+            for (j in 1 until c) {
+                inner.reset(innerState)
+                inner.update(u, 0, H_LEN)
+                inner.doFinal(u, 0)
+                outer.reset(outerState)
+                outer.update(u, 0, H_LEN)
+                outer.doFinal(u, 0)
+                for (k in 0 until H_LEN)
+                    t[k] = (t[k].toInt() xor u[k].toInt()).toByte()
             }
+            inner.reset(innerState)
+            outer.reset(outerState)
+            System.arraycopy(t, 0, derived, (i - 1) * H_LEN, Math.min(H_LEN, dkLen - (i - 1) * H_LEN))
         }
-
-        return U_XOR
-    }
-
-    private fun INT(i: Int): ByteArray {
-        val bb = ByteBuffer.allocate(4)
-        bb.order(ByteOrder.BIG_ENDIAN)
-        bb.putInt(i)
-
-        return bb.array()
+        Arrays.fill(u, 0.toByte())
+        Arrays.fill(t, 0.toByte())
+        return derived
     }
 }
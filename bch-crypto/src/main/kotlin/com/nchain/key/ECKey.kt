@@ -248,6 +248,35 @@ class ECKey constructor(val priv: BigInteger?, val pub: LazyECPoint) {
         }
     }
 
+    /**
+     * The two components of a Bitcoin Cash Schnorr signature: `r` is the x co-ordinate of the nonce point R and `s`
+     * the scalar. Unlike ECDSA signatures these are not DER encoded; they are serialized as two fixed 32 byte
+     * big-endian integers, 64 bytes in total.
+     */
+    data class SchnorrSignature(val r: BigInteger, val s: BigInteger) {
+
+        /** Returns the 64 byte serialization of this signature, r followed by s. */
+        fun encode(): ByteArray {
+            val bytes = ByteArray(SIZE)
+            System.arraycopy(ByteUtils.bigIntegerToBytes(r, 32), 0, bytes, 0, 32)
+            System.arraycopy(ByteUtils.bigIntegerToBytes(s, 32), 0, bytes, 32, 32)
+            return bytes
+        }
+
+        companion object {
+            /** The serialized size of a Schnorr signature, without any sighash byte. */
+            const val SIZE = 64
+
+            /** Reads a signature from the 64 bytes starting at `offset`. Trailing bytes (e.g. a sighash byte) are ignored. */
+            @JvmStatic @JvmOverloads fun decode(bytes: ByteArray, offset: Int = 0): SchnorrSignature {
+                check(bytes.size - offset >= SIZE, { "Schnorr signature must be $SIZE bytes" })
+                val r = BigInteger(1, Arrays.copyOfRange(bytes, offset, offset + 32))
+                val s = BigInteger(1, Arrays.copyOfRange(bytes, offset + 32, offset + SIZE))
+                return SchnorrSignature(r, s)
+            }
+        }
+    }
+
     /**
      * Signs the given hash and returns the R and S components as BigIntegers. In the Bitcoin protocol, they are
      * usually encoded using ASN.1 format, so you want [org.bitcoinj.core.ECKey.ECDSASignature.toASN1]
@@ -277,6 +306,22 @@ class ECKey constructor(val priv: BigInteger?, val pub: LazyECPoint) {
         return ECKeySigner.verify(sigHash.bytes, signature, pubKey)
     }
 
+    /**
+     * Signs the given hash using the Bitcoin Cash Schnorr scheme. See [ECKeySigner.signSchnorr].
+     * @throws KeyCrypterException if this ECKey doesn't have a private part.
+     */
+    @Throws(KeyCrypterException::class)
+    fun signSchnorr(input: Sha256Hash): SchnorrSignature {
+        return ECKeySigner.signSchnorr(input, priv!!)
+    }
+
+    /**
+     * Verifies the given Schnorr signature against a hash using the public key.
+     */
+    fun verifySchnorr(sigHash: Sha256Hash, signature: SchnorrSignature): Boolean {
+        return ECKeySigner.verifySchnorr(sigHash.bytes, signature, pubKey)
+    }
+
     /**
      * Verifies the given ASN.1 encoded ECDSA signature against a hash using the public key, and throws an exception
      * if the signature doesn't match
@@ -440,6 +485,7 @@ class ECKey constructor(val priv: BigInteger?, val pub: LazyECPoint) {
         /**
          * Generates an entirely new keypair with the given [SecureRandom] object. Point compression is used so the
          * resulting public key will be 33 bytes (32 for the co-ordinate and 1 byte to represent the y bit).
+         * When many keys are needed at once, [ECKeyGenerator] is considerably faster.
          */
         @JvmStatic @JvmOverloads fun create(secureRandom: SecureRandom = Randomizer.random): ECKey {
             val generator = ECKeyPairGenerator()
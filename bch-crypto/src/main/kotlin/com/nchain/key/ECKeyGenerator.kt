@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nchain.key
+
+import com.nchain.tools.Parallel
+import org.spongycastle.math.ec.ECPoint
+import org.spongycastle.math.ec.FixedPointCombMultiplier
+import org.spongycastle.math.ec.WNafUtil
+import java.math.BigInteger
+import java.security.SecureRandom
+
+/**
+ * Generates keys in bulk. [ECKey.create] pays for one field inversion per key when the public point is converted
+ * to affine co-ordinates for encoding; here the points of a whole chunk are left in projective form and normalized
+ * together with Montgomery's simultaneous inversion trick, so a chunk of N keys costs a single inversion.
+ *
+ * Work can be spread over several threads. Each worker draws its private keys from its own [SecureRandom] rather
+ * than the shared [com.nchain.shared.Randomizer], so workers don't contend on a single generator.
+ */
+object ECKeyGenerator {
+
+    /**
+     * Generates `count` fresh random keypairs.
+     *
+     * @param count how many keys to create.
+     * @param compressed whether the public keys should use the compressed encoding.
+     * @param parallelism the number of worker threads to spread the work across.
+     */
+    @JvmStatic @JvmOverloads fun create(count: Int, compressed: Boolean = true,
+                                        parallelism: Int = Parallel.DEFAULT_PARALLELISM): List<ECKey> {
+        return Parallel.mapChunks(count, parallelism) { from, to ->
+            create(to - from, SecureRandom(), compressed)
+        }.flatten()
+    }
+
+    /**
+     * Generates `count` fresh random keypairs on the calling thread using the given source of randomness.
+     */
+    @JvmStatic fun create(count: Int, secureRandom: SecureRandom, compressed: Boolean): List<ECKey> {
+        check(count >= 0, { "count must not be negative: $count" })
+        val privs = Array(count) { randomPrivateKey(secureRandom) }
+        val multiplier = FixedPointCombMultiplier()
+        val points = Array<ECPoint>(count) { multiplier.multiply(ECKey.CURVE.g, privs[it]) }
+        ECKey.CURVE.curve.normalizeAll(points)
+        return List(count) { toKey(privs[it], points[it], compressed) }
+    }
+
+    /**
+     * Returns the `count` keys that follow `base`, that is the keys whose private part is `base + 1`, `base + 2`, ...
+     * The public points are obtained by repeatedly adding the generator point, which is far cheaper than a scalar
+     * multiplication per key. If `base` has no private key, public-only keys are returned, which is useful to
+     * enumerate addresses of a sequence without access to its secret. The compression of `base` is preserved.
+     */
+    @JvmStatic @JvmOverloads fun sequential(base: ECKey, count: Int,
+                                            parallelism: Int = Parallel.DEFAULT_PARALLELISM): List<ECKey> {
+        check(count >= 0, { "count must not be negative: $count" })
+        val n = ECKey.CURVE.n
+        val g = ECKey.CURVE.g
+        val basePoint = base.pubKeyPoint
+        val compressed = base.isCompressed
+        return Parallel.mapChunks(count, parallelism) { from, to ->
+            val size = to - from
+            // Each chunk jumps straight to its first point, then walks the rest by point addition.
+            var point = if (from == 0) basePoint.add(g) else basePoint.add(ECKey.publicPointFromPrivate(BigInteger.valueOf(from + 1L)))
+            val points = Array<ECPoint>(size) {
+                if (it > 0)
+                    point = point.add(g)
+                point
+            }
+            ECKey.CURVE.curve.normalizeAll(points)
+            List(size) {
+                val priv = base.priv?.add(BigInteger.valueOf(from + it + 1L))?.mod(n)
+                toKey(priv, points[it], compressed)
+            }
+        }.flatten()
+    }
+
+    private fun toKey(priv: BigInteger?, normalized: ECPoint, compressed: Boolean): ECKey {
+        check(!normalized.isInfinity, { "Derived public key is the point at infinity" })
+        return ECKey(priv, LazyECPoint(ECKey.CURVE.curve, normalized.getEncoded(compressed)))
+    }
+
+    // Same acceptance rule as Bouncy Castle's ECKeyPairGenerator: uniform in [2, n) with a minimum NAF weight.
+    private fun randomPrivateKey(random: SecureRandom): BigInteger {
+        val n = ECKey.CURVE.n
+        val minWeight = n.bitLength().ushr(2)
+        while (true) {
+            val d = BigInteger(n.bitLength(), random)
+            if (d.compareTo(BigInteger.ONE) <= 0 || d.compareTo(n) >= 0)
+                continue
+            if (WNafUtil.getNafWeight(d) < minWeight)
+                continue
+            return d
+        }
+    }
+}
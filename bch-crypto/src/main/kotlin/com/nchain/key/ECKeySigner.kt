@@ -1,24 +1,32 @@
 package com.nchain.key
 
 import com.nchain.keycrypter.KeyCrypterException
+import com.nchain.metrics.Metrics
+import com.nchain.shared.Randomizer
 import com.nchain.tools.ByteUtils
 import com.nchain.shared.Sha256Hash
 import com.nchain.shared.VarInt
 import com.nchain.shared.VerificationException
 import com.nchain.tools.DER
+import com.nchain.tools.Parallel
 import com.nchain.tools.loggerFor
 import org.spongycastle.crypto.digests.SHA256Digest
+import org.spongycastle.crypto.macs.HMac
+import org.spongycastle.crypto.params.KeyParameter
 import org.spongycastle.crypto.params.ECPrivateKeyParameters
 import org.spongycastle.crypto.params.ECPublicKeyParameters
 import org.spongycastle.crypto.signers.ECDSASigner
 import org.spongycastle.crypto.signers.HMacDSAKCalculator
 import org.spongycastle.math.ec.ECAlgorithms
+import org.spongycastle.math.ec.ECFieldElement
+import org.spongycastle.math.ec.ECPoint
 import org.spongycastle.math.ec.custom.sec.SecP256K1Curve
 import org.spongycastle.util.encoders.Base64
 import java.io.ByteArrayOutputStream
 import java.io.IOException
 import java.math.BigInteger
 import java.nio.charset.Charset
+import java.security.SecureRandom
 import java.security.SignatureException
 import java.util.*
 
@@ -30,6 +38,11 @@ import java.util.*
 object ECKeySigner {
         private val log = loggerFor(ECKeySigner::class.java)
 
+        private val SIGN = Metrics.stage("ecdsa.sign")
+        private val VERIFY = Metrics.stage("ecdsa.verify")
+        private val SIGN_SCHNORR = Metrics.stage("schnorr.sign")
+        private val VERIFY_SCHNORR = Metrics.stage("schnorr.verify")
+
 
         /** The string that prefixes all text messages signed using Bitcoin keys.  */
         const val BITCOIN_SIGNED_MESSAGE_HEADER = "Bitcoin Signed Message:\n"
@@ -37,7 +50,10 @@ object ECKeySigner {
 
 
         @Throws(KeyCrypterException::class)
-        @JvmStatic fun sign(input: Sha256Hash, priv: BigInteger): ECKey.ECDSASignature {
+        @JvmStatic fun sign(input: Sha256Hash, priv: BigInteger): ECKey.ECDSASignature =
+                SIGN.time { ecdsaSign(input, priv) }
+
+        private fun ecdsaSign(input: Sha256Hash, priv: BigInteger): ECKey.ECDSASignature {
             val signer = ECDSASigner(HMacDSAKCalculator(SHA256Digest()))
             val privKey = ECPrivateKeyParameters(priv, ECKey.CURVE)
             signer.init(true, privKey)
@@ -57,7 +73,10 @@ object ECKeySigner {
          * @param signature ASN.1 encoded signature.
          * @param pub       The public key bytes to use.
          */
-        @JvmStatic fun verify(data: ByteArray, signature: ECKey.ECDSASignature, pub: ByteArray): Boolean {
+        @JvmStatic fun verify(data: ByteArray, signature: ECKey.ECDSASignature, pub: ByteArray): Boolean =
+                VERIFY.timeCheck { ecdsaVerify(data, signature, pub) }
+
+        private fun ecdsaVerify(data: ByteArray, signature: ECKey.ECDSASignature, pub: ByteArray): Boolean {
             val signer = ECDSASigner()
             try {
                 val params = ECPublicKeyParameters(ECKey.CURVE.curve.decodePoint(pub), ECKey.CURVE)
@@ -86,6 +105,240 @@ object ECKeySigner {
             return verify(data, DER.decodeSignature(signature), pub)
         }
 
+        /**
+         * Returns every public key for which the given ECDSA signature over `data` is valid: a signature verifies
+         * against a key exactly when that key is in the returned list. There are at most four such keys, and almost
+         * always exactly two.
+         *
+         * Recovering the candidates costs about as much as a single [verify], so this is the cheap way to find which
+         * of several keys made a signature, e.g. when matching the signatures of a multisig script to its keys. Use
+         * [isSignedBy] to test a key against the result.
+         *
+         * @param data      Hash of the data that was signed.
+         * @param signature The signature.
+         */
+        @JvmStatic fun recoverPublicKeys(data: ByteArray, signature: ECKey.ECDSASignature): List<ECPoint> {
+            val n = ECKey.CURVE.n
+            val r = signature.r
+            val s = signature.s
+            // Same range checks as ECDSASigner.verifySignature.
+            if (r.signum() <= 0 || r >= n || s.signum() <= 0 || s >= n)
+                return emptyList()
+            // Same truncation of the hash to the bit length of n as ECDSASigner.calculateE.
+            var e = BigInteger(1, data)
+            if (data.size * 8 > n.bitLength())
+                e = e.shiftRight(data.size * 8 - n.bitLength())
+            // Q = r^-1 (sR - eG) for each point R whose x co-ordinate is r, or r + n when that is still a field
+            // element. The two points sharing an x co-ordinate are negations of each other, so each x costs one
+            // variable base multiplication: Q = -e r^-1 G +/- (s r^-1) R.
+            val rInv = r.modInverse(n)
+            val eG = ECKey.publicPointFromPrivate(n.subtract(e.mod(n)).multiply(rInv).mod(n))
+            val u2 = s.multiply(rInv).mod(n)
+            val candidates = ArrayList<ECPoint>(4)
+            for (x in arrayOf(r, r.add(n))) {
+                if (x >= SecP256K1Curve.q)
+                    continue
+                try {
+                    val sR = ECKey.decompressKey(x, false).multiply(u2)
+                    candidates.add(eG.add(sR))
+                    candidates.add(eG.subtract(sR))
+                } catch (ex: IllegalArgumentException) {
+                    // x is not the x co-ordinate of any point on the curve.
+                }
+            }
+            val points = candidates.filter { !it.isInfinity }.toTypedArray()
+            ECKey.CURVE.curve.normalizeAll(points)
+            return points.asList()
+        }
+
+        /**
+         * Returns true if the given encoded public key is one of the keys returned by [recoverPublicKeys], that is if
+         * the signature those keys were recovered from verifies against it.
+         *
+         * @throws VerificationException.SignatureFormatError if the public key can't be decoded, as [verify] does.
+         */
+        @JvmStatic fun isSignedBy(recoveredKeys: List<ECPoint>, pub: ByteArray): Boolean {
+            if (recoveredKeys.isEmpty())
+                return false
+            val point = decodePublicPoint(pub).normalize()
+            if (point.isInfinity)
+                return false
+            return recoveredKeys.any { it.affineXCoord == point.affineXCoord && it.affineYCoord == point.affineYCoord }
+        }
+
+        /**
+         * Signs the given hash with the Bitcoin Cash Schnorr scheme and returns the (r, s) pair. The nonce is derived
+         * deterministically as in RFC 6979, with the extra "Schnorr+SHA256  " tag mixed in so that it never collides
+         * with the nonce ECDSA would use for the same key and message. This matches the nonces produced by
+         * libsecp256k1 as used by Bitcoin ABC.
+         *
+         * @param input Hash of the data to sign.
+         * @param priv  The private key.
+         */
+        @JvmStatic fun signSchnorr(input: Sha256Hash, priv: BigInteger): ECKey.SchnorrSignature =
+                SIGN_SCHNORR.time { schnorrSign(input, priv) }
+
+        private fun schnorrSign(input: Sha256Hash, priv: BigInteger): ECKey.SchnorrSignature {
+            val n = ECKey.CURVE.n
+            check(priv.signum() > 0 && priv < n, { "private key out of range" })
+            val message = input.bytes
+            val pubPoint = ECKey.publicPointFromPrivate(priv)
+            var k = schnorrNonce(priv, message)
+            val r = ECKey.publicPointFromPrivate(k).normalize()
+            // R must have a y co-ordinate that is a quadratic residue; otherwise use -k, whose point is -R.
+            if (!isQuadraticResidue(r.affineYCoord))
+                k = n.subtract(k)
+            val rx = r.affineXCoord.toBigInteger()
+            val e = schnorrChallenge(rx, pubPoint.getEncoded(true), message)
+            val s = k.add(e.multiply(priv)).mod(n)
+            return ECKey.SchnorrSignature(rx, s)
+        }
+
+        /**
+         * Verifies the given Bitcoin Cash Schnorr signature against the message hash using the public key bytes.
+         *
+         * @param data      Hash of the data to verify, 32 bytes.
+         * @param signature The signature components.
+         * @param pub       The public key bytes to use.
+         */
+        @JvmStatic fun verifySchnorr(data: ByteArray, signature: ECKey.SchnorrSignature, pub: ByteArray): Boolean =
+                VERIFY_SCHNORR.timeCheck { schnorrVerify(data, signature, pub) }
+
+        private fun schnorrVerify(data: ByteArray, signature: ECKey.SchnorrSignature, pub: ByteArray): Boolean {
+            check(data.size == 32, { "Schnorr signatures are over 32 byte hashes" })
+            val curve = ECKey.CURVE
+            if (signature.r >= SecP256K1Curve.q || signature.s >= curve.n)
+                return false
+            val pubPoint = decodePublicPoint(pub)
+            val e = schnorrChallenge(signature.r, pubPoint.getEncoded(true), data)
+            // R = sG - eP
+            val r = ECAlgorithms.sumOfTwoMultiplies(curve.g, signature.s, pubPoint, curve.n.subtract(e).mod(curve.n)).normalize()
+            if (r.isInfinity || !isQuadraticResidue(r.affineYCoord))
+                return false
+            return r.affineXCoord.toBigInteger() == signature.r
+        }
+
+        /**
+         * Verifies the given 64 byte Schnorr signature against the message hash using the public key bytes.
+         */
+        @JvmStatic fun verifySchnorr(data: ByteArray, signature: ByteArray, pub: ByteArray): Boolean {
+            if (signature.size != ECKey.SchnorrSignature.SIZE)
+                throw VerificationException.SignatureFormatError("Schnorr signature must be 64 bytes, got " + signature.size)
+            return verifySchnorr(data, ECKey.SchnorrSignature.decode(signature), pub)
+        }
+
+        /** One (hash, signature, public key) triple submitted to [verifySchnorrBatch]. */
+        class SchnorrBatchEntry(val data: ByteArray, val signature: ECKey.SchnorrSignature, val pub: ByteArray)
+
+        /**
+         * Checks many Schnorr signatures at once. Instead of one double multiplication per signature, the equations
+         * `s_i*G = R_i + e_i*P_i` are combined with random weights `a_i` into a single multi-scalar multiplication
+         * `(sum a_i*s_i)*G = sum a_i*R_i + sum (a_i*e_i)*P_i`, which is considerably cheaper for large batches.
+         *
+         * Returns true only if every signature is valid. A false result doesn't say which one failed; verify the
+         * entries individually with [verifySchnorr] to find out. An empty batch is valid.
+         *
+         * @param random source of the weights. Must not be predictable to whoever supplied the signatures.
+         */
+        @JvmStatic @JvmOverloads fun verifySchnorrBatch(entries: List<SchnorrBatchEntry>, random: SecureRandom = Randomizer.random): Boolean {
+            if (entries.isEmpty())
+                return true
+            val curve = ECKey.CURVE
+            val n = curve.n
+            val points = arrayOfNulls<ECPoint>(2 * entries.size + 1)
+            val scalars = arrayOfNulls<BigInteger>(2 * entries.size + 1)
+            var sSum = BigInteger.ZERO
+            for ((i, entry) in entries.withIndex()) {
+                check(entry.data.size == 32, { "Schnorr signatures are over 32 byte hashes" })
+                val sig = entry.signature
+                if (sig.r >= SecP256K1Curve.q || sig.s >= n)
+                    return false
+                val r = liftX(sig.r) ?: return false
+                val pubPoint = decodePublicPoint(entry.pub)
+                val e = schnorrChallenge(sig.r, pubPoint.getEncoded(true), entry.data)
+                // The first weight can be one without weakening the check.
+                val a = if (i == 0) BigInteger.ONE else BigInteger(128, random)
+                points[2 * i] = r
+                scalars[2 * i] = a
+                points[2 * i + 1] = pubPoint
+                scalars[2 * i + 1] = a.multiply(e).mod(n)
+                sSum = sSum.add(a.multiply(sig.s)).mod(n)
+            }
+            points[2 * entries.size] = curve.g
+            scalars[2 * entries.size] = n.subtract(sSum).mod(n)
+            return ECAlgorithms.sumOfMultiplies(points, scalars).isInfinity
+        }
+
+        private fun decodePublicPoint(pub: ByteArray): ECPoint {
+            try {
+                return ECKey.CURVE.curve.decodePoint(pub)
+            } catch (e: IllegalArgumentException) {
+                throw VerificationException.SignatureFormatError(e)
+            } catch (e: ArrayIndexOutOfBoundsException) {
+                throw VerificationException.SignatureFormatError(e)
+            }
+        }
+
+        // e = H(R.x || compressed(P) || m) mod n
+        private fun schnorrChallenge(rx: BigInteger, compressedPub: ByteArray, message: ByteArray): BigInteger {
+            val digest = SHA256Digest()
+            val rBytes = ByteUtils.bigIntegerToBytes(rx, 32)
+            digest.update(rBytes, 0, rBytes.size)
+            digest.update(compressedPub, 0, compressedPub.size)
+            digest.update(message, 0, message.size)
+            val out = ByteArray(32)
+            digest.doFinal(out, 0)
+            return BigInteger(1, out).mod(ECKey.CURVE.n)
+        }
+
+        // The point with the given x co-ordinate whose y co-ordinate is a quadratic residue, or null if there's none.
+        private fun liftX(x: BigInteger): ECPoint? {
+            val curve = ECKey.CURVE.curve
+            val fx = curve.fromBigInteger(x)
+            // Because p = 3 (mod 4) the square root computed here is itself a quadratic residue.
+            val y = fx.square().multiply(fx).add(curve.b).sqrt() ?: return null
+            return curve.validatePoint(x, y.toBigInteger())
+        }
+
+        private fun isQuadraticResidue(y: ECFieldElement): Boolean {
+            return y.sqrt() != null
+        }
+
+        // RFC 6979 HMAC-DRBG keyed with (private key || message || "Schnorr+SHA256  "), as libsecp256k1 does it.
+        private fun schnorrNonce(priv: BigInteger, message: ByteArray): BigInteger {
+            val keyData = ByteArray(32 + 32 + SCHNORR_NONCE_TAG.size)
+            System.arraycopy(ByteUtils.bigIntegerToBytes(priv, 32), 0, keyData, 0, 32)
+            System.arraycopy(message, 0, keyData, 32, 32)
+            System.arraycopy(SCHNORR_NONCE_TAG, 0, keyData, 64, SCHNORR_NONCE_TAG.size)
+            val hmac = HMac(SHA256Digest())
+            var k = ByteArray(32)
+            var v = ByteArray(32) { 1 }
+            k = hmacSha256(hmac, k, v, byteArrayOf(0), keyData)
+            v = hmacSha256(hmac, k, v)
+            k = hmacSha256(hmac, k, v, byteArrayOf(1), keyData)
+            v = hmacSha256(hmac, k, v)
+            Arrays.fill(keyData, 0.toByte())
+            while (true) {
+                v = hmacSha256(hmac, k, v)
+                val candidate = BigInteger(1, v)
+                if (candidate.signum() > 0 && candidate < ECKey.CURVE.n)
+                    return candidate
+                k = hmacSha256(hmac, k, v, byteArrayOf(0))
+                v = hmacSha256(hmac, k, v)
+            }
+        }
+
+        private fun hmacSha256(hmac: HMac, key: ByteArray, vararg parts: ByteArray): ByteArray {
+            hmac.init(KeyParameter(key))
+            for (part in parts)
+                hmac.update(part, 0, part.size)
+            val out = ByteArray(32)
+            hmac.doFinal(out, 0)
+            return out
+        }
+
+        private val SCHNORR_NONCE_TAG = "Schnorr+SHA256  ".toByteArray(Charsets.US_ASCII)
+
         /**
          *
          * Given a textual message, returns a byte buffer formatted as follows:
@@ -136,12 +389,21 @@ object ECKeySigner {
          * @return An ECKey containing only the public part, or null if recovery wasn't possible.
          */
         @JvmStatic fun recoverFromSignature(recId: Int, sig: ECKey.ECDSASignature, message: Sha256Hash, compressed: Boolean): ECKey? {
+            val q = recoverPublicPoint(recId, sig, message) ?: return null
+            return ECKey.fromPublicOnly(q.getEncoded(compressed))
+        }
+
+        // The recovered point is left in projective co-ordinates so batches can be normalized together.
+        private fun recoverPublicPoint(recId: Int, sig: ECKey.ECDSASignature, message: Sha256Hash): ECPoint? {
             check(recId >= 0) {"recId must be positive"}
             check(sig.r.signum() >= 0) {"r must be positive"}
             check(sig.s.signum() >= 0) {"s must be positive"}
             // 1.0 For j from 0 to h   (h == recId here and the loop is outside this function)
             //   1.1 Let x = r + jn
             val n = ECKey.CURVE.n  // Curve order.
+            // Same range checks as ECDSASigner.verifySignature; r must also be invertible below.
+            if (sig.r.signum() == 0 || sig.r >= n || sig.s.signum() == 0 || sig.s >= n)
+                return null
             val i = BigInteger.valueOf(recId.toLong() / 2)
             val x = sig.r.add(i.multiply(n))
             //   1.2. Convert the integer x to an octet string X of length mlen using the conversion routine
@@ -160,8 +422,8 @@ object ECKeySigner {
             // So it's encoded in the recId.
             val R = ECKey.decompressKey(x, recId and 1 == 1)
             //   1.4. If nR != point at infinity, then do another iteration of Step 1 (callers responsibility).
-            if (!R.multiply(n).isInfinity)
-                return null
+            //        secp256k1 has a cofactor of 1, so every point on the curve has order n and this always holds.
+            //        Checking it explicitly would cost a full scalar multiplication, so we skip it.
             //   1.5. Compute e from M using Steps 2 and 3 of ECDSA signature verification.
             val e = message.toBigInteger()
             //   1.6. For k from 1 to 2 do the following.   (loop is outside this function via iterating recId)
@@ -179,8 +441,7 @@ object ECKeySigner {
             val rInv = sig.r.modInverse(n)
             val srInv = rInv.multiply(sig.s).mod(n)
             val eInvrInv = rInv.multiply(eInv).mod(n)
-            val q = ECAlgorithms.sumOfTwoMultiplies(ECKey.CURVE.g, eInvrInv, R, srInv)
-            return ECKey.fromPublicOnly(q.getEncoded(compressed))
+            return ECAlgorithms.sumOfTwoMultiplies(ECKey.CURVE.g, eInvrInv, R, srInv)
         }
 
         /**
@@ -197,6 +458,61 @@ object ECKeySigner {
 
         @Throws(SignatureException::class)
         @JvmStatic fun signedMessageToKey(message: String, signatureBase64: String): ECKey {
+            val signature = decodeMessageSignature(signatureBase64)
+            // Note that the C++ code doesn't actually seem to specify any character encoding. Presumably it's whatever
+            // JSON-SPIRIT hands back. Assume UTF-8 for now.
+            val messageHash = messageHash(message, SHA256Digest())
+            return recoverFromSignature(signature.recId, signature.signature, messageHash, signature.compressed)
+                    ?: throw SignatureException("Could not recover public key from signature")
+        }
+
+        /**
+         * A text message, its Bitcoin-format signature in base64 and the hash160 of the public key that is expected to
+         * have signed it (for instance [com.nchain.address.CashAddress.hash160] of a P2PKH address).
+         */
+        class SignedMessage(val pubKeyHash: ByteArray, val message: String, val signatureBase64: String)
+
+        /**
+         * Verifies many signed messages at once, spreading the work over several threads. Compared to calling
+         * [signedMessageToKey] for each message, the recovered public keys of a whole chunk are converted to affine
+         * co-ordinates together, and they are compared against the expected key hash without building [ECKey]s.
+         *
+         * @return for each message, in order, whether its signature is valid and was made by the expected key.
+         * Malformed signatures are reported as invalid rather than thrown.
+         */
+        @JvmStatic @JvmOverloads fun verifyMessages(messages: List<SignedMessage>,
+                                                    parallelism: Int = Parallel.DEFAULT_PARALLELISM): BooleanArray {
+            val results = BooleanArray(messages.size)
+            Parallel.mapChunks(messages.size, parallelism) { from, to ->
+                val digest = SHA256Digest()
+                val points = arrayOfNulls<ECPoint>(to - from)
+                val compressed = BooleanArray(to - from)
+                for (i in from until to) {
+                    val message = messages[i]
+                    try {
+                        val signature = decodeMessageSignature(message.signatureBase64)
+                        compressed[i - from] = signature.compressed
+                        points[i - from] = recoverPublicPoint(signature.recId, signature.signature, messageHash(message.message, digest))
+                    } catch (e: SignatureException) {
+                        // Not a well-formed message signature; its result stays false.
+                    } catch (e: IllegalArgumentException) {
+                        // The r value of the signature isn't the x co-ordinate of any point.
+                    }
+                }
+                ECKey.CURVE.curve.normalizeAll(points)
+                for (i in from until to) {
+                    val point = points[i - from]
+                    if (point != null && !point.isInfinity)
+                        results[i] = Arrays.equals(messages[i].pubKeyHash, ByteUtils.sha256hash160(point.getEncoded(compressed[i - from])))
+                }
+            }
+            return results
+        }
+
+        private class MessageSignature(val recId: Int, val compressed: Boolean, val signature: ECKey.ECDSASignature)
+
+        @Throws(SignatureException::class)
+        private fun decodeMessageSignature(signatureBase64: String): MessageSignature {
             val signatureEncoded: ByteArray
             try {
                 signatureEncoded = Base64.decode(signatureBase64)
@@ -215,18 +531,32 @@ object ECKeySigner {
                 throw SignatureException("Header byte out of range: " + header)
             val r = BigInteger(1, Arrays.copyOfRange(signatureEncoded, 1, 33))
             val s = BigInteger(1, Arrays.copyOfRange(signatureEncoded, 33, 65))
-            val sig = ECKey.ECDSASignature(r, s)
-            val messageBytes = formatMessageForSigning(message)
-            // Note that the C++ code doesn't actually seem to specify any character encoding. Presumably it's whatever
-            // JSON-SPIRIT hands back. Assume UTF-8 for now.
-            val messageHash = Sha256Hash.twiceOf(messageBytes)
             var compressed = false
             if (header >= 31) {
                 compressed = true
                 header = (header - 4)
             }
-            val recId = header - 27
-            return recoverFromSignature(recId, sig, messageHash, compressed) ?: throw SignatureException("Could not recover public key from signature")
+            return MessageSignature(header - 27, compressed, ECKey.ECDSASignature(r, s))
+        }
+
+        // Double SHA-256 of formatMessageForSigning(message), reusing the given digest and starting from a copy of the
+        // digest state that has already absorbed the constant header.
+        private fun messageHash(message: String, digest: SHA256Digest): Sha256Hash {
+            digest.reset(SIGNED_MESSAGE_DIGEST)
+            val messageBytes = message.toByteArray(Charsets.UTF_8)
+            val size = VarInt(messageBytes.size.toLong()).encode()
+            digest.update(size, 0, size.size)
+            digest.update(messageBytes, 0, messageBytes.size)
+            val hash = ByteArray(32)
+            digest.doFinal(hash, 0)
+            digest.update(hash, 0, hash.size)
+            digest.doFinal(hash, 0)
+            return Sha256Hash.wrap(hash)
+        }
+
+        private val SIGNED_MESSAGE_DIGEST = SHA256Digest().apply {
+            update(BITCOIN_SIGNED_MESSAGE_HEADER_BYTES.size.toByte())
+            update(BITCOIN_SIGNED_MESSAGE_HEADER_BYTES, 0, BITCOIN_SIGNED_MESSAGE_HEADER_BYTES.size)
         }
 
         /**
@@ -0,0 +1,126 @@
+package com.nchain.keycrypter
+
+import com.nchain.shared.Randomizer
+import org.spongycastle.crypto.digests.SHA256Digest
+import org.spongycastle.crypto.macs.HMac
+import org.spongycastle.crypto.params.KeyParameter
+import java.nio.ByteBuffer
+import java.util.Arrays
+import java.util.concurrent.TimeUnit
+
+/**
+ * Cache of AES keys derived by [KeyCrypterScrypt], so that unlocking the same encrypted wallet again doesn't pay for
+ * another scrypt run. Entries expire [ttlMillis] after they were derived, and once there are more than [maxEntries]
+ * the least recently used one is evicted.
+ *
+ * Passwords are not kept: an entry is looked up by an HMAC-SHA256 of the password and the [ScryptConfig] under a
+ * secret drawn at random for each cache, so the keys of the map reveal nothing outside this process. The derived keys
+ * are overwritten with zeros when they expire, are evicted or invalidated, and callers only ever get copies of them.
+ */
+class DerivedKeyCache internal constructor(
+        val maxEntries: Int,
+        val ttlMillis: Long,
+        private val ticker: () -> Long) {
+
+    @JvmOverloads constructor(maxEntries: Int = DEFAULT_MAX_ENTRIES, ttlMillis: Long = DEFAULT_TTL_MILLIS) :
+            this(maxEntries, ttlMillis, System::nanoTime)
+
+    init {
+        check(maxEntries > 0, {"maxEntries must be positive: $maxEntries"})
+        check(ttlMillis > 0, {"ttlMillis must be positive: $ttlMillis"})
+    }
+
+    private class Cached(val key: KeyParameter, val expires: Long)
+
+    private val secret = ByteArray(32).also { Randomizer.nextBytes(it) }
+    private val ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis)
+
+    private val entries = object : LinkedHashMap<ByteBuffer, Cached>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<ByteBuffer, Cached>): Boolean {
+            if (size <= maxEntries)
+                return false
+            wipe(eldest.value)
+            return true
+        }
+    }
+
+    /** Returns a copy of the key cached for the password bytes and config, or null if there is none or it expired. */
+    @Synchronized
+    internal fun get(passwordBytes: ByteArray, config: ScryptConfig): KeyParameter? {
+        val id = id(passwordBytes, config)
+        val entry = entries[id] ?: return null
+        if (ticker() - entry.expires >= 0) {
+            entries.remove(id)
+            wipe(entry)
+            return null
+        }
+        return KeyParameter(entry.key.key)
+    }
+
+    /** Caches a copy of the key derived from the password bytes and config. */
+    @Synchronized
+    internal fun put(passwordBytes: ByteArray, config: ScryptConfig, key: KeyParameter) {
+        entries.put(id(passwordBytes, config), Cached(KeyParameter(key.key), ticker() + ttlNanos))?.let { wipe(it) }
+    }
+
+    /** Drops the key derived from the password with the config, if it is cached. */
+    fun invalidate(password: CharSequence, config: ScryptConfig) {
+        val passwordBytes = KeyCrypterScrypt.convertToByteArray(password)
+        try {
+            synchronized(this) {
+                entries.remove(id(passwordBytes, config))?.let { wipe(it) }
+            }
+        } finally {
+            Arrays.fill(passwordBytes, 0.toByte())
+        }
+    }
+
+    /** Overwrites every cached key with zeros and empties the cache. */
+    @Synchronized
+    fun invalidateAll() {
+        for (entry in entries.values)
+            wipe(entry)
+        entries.clear()
+    }
+
+    /** Drops the expired entries. They are otherwise dropped only when looked up or evicted. */
+    @Synchronized
+    fun purgeExpired() {
+        val now = ticker()
+        val i = entries.values.iterator()
+        while (i.hasNext()) {
+            val entry = i.next()
+            if (now - entry.expires >= 0) {
+                wipe(entry)
+                i.remove()
+            }
+        }
+    }
+
+    /** The number of cached keys, including expired ones not yet dropped. */
+    @Synchronized
+    fun size(): Int = entries.size
+
+    private fun id(passwordBytes: ByteArray, config: ScryptConfig): ByteBuffer {
+        val mac = HMac(SHA256Digest())
+        mac.init(KeyParameter(secret))
+        mac.update(passwordBytes, 0, passwordBytes.size)
+        // The password length keeps bytes from moving between the password and the salt.
+        val params = ByteBuffer.allocate(16).putInt(passwordBytes.size).putInt(config.n).putInt(config.r).putInt(config.p)
+        mac.update(params.array(), 0, 16)
+        mac.update(config.salt, 0, config.salt.size)
+        val id = ByteArray(mac.macSize)
+        mac.doFinal(id, 0)
+        return ByteBuffer.wrap(id)
+    }
+
+    private fun wipe(entry: Cached) {
+        // KeyParameter hands out its own array, so this clears the key it holds.
+        Arrays.fill(entry.key.key, 0.toByte())
+    }
+
+    companion object {
+        const val DEFAULT_MAX_ENTRIES = 16
+        @JvmField val DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(15)
+    }
+}
@@ -55,12 +55,22 @@ data class ScryptConfig(
 )
 
 
-class KeyCrypterScrypt(val config: ScryptConfig) : KeyCrypter {
+class KeyCrypterScrypt @JvmOverloads constructor(
+        val config: ScryptConfig,
+        /** Where derived keys are kept for reuse, if anywhere. It may be shared by several crypters. */
+        @Transient val cache: DerivedKeyCache? = null,
+        /** The most scrypt lanes computed at the same time, see [Scrypt]; it doesn't change the derived key. */
+        val parallelism: Int = 1) : KeyCrypter {
+
+    init {
+        check(parallelism > 0, {"parallelism must be positive: $parallelism"})
+    }
 
     /**
      * Generate AES key.
      *
-     * This is a very slow operation compared to encrypt/ decrypt so it is normally worth caching the result.
+     * This is a very slow operation compared to encrypt/ decrypt so it is normally worth caching the result: when
+     * this crypter has a [cache], a key derived before from the same password and config is taken from there.
      *
      * @param password    The password to use in key generation
      * @return            The KeyParameter containing the created AES key
@@ -71,12 +81,18 @@ class KeyCrypterScrypt(val config: ScryptConfig) : KeyCrypter {
         var passwordBytes: ByteArray? = null
         try {
             passwordBytes = convertToByteArray(password)
+            cache?.get(passwordBytes, config)?.let { return it }
 
             val watch = Stopwatch().start()
-            val keyBytes = SCrypt.scrypt(passwordBytes, config.salt, config.n, config.r, config.p, KEY_LENGTH)
+            val keyBytes = if (parallelism > 1 && config.p > 1)
+                Scrypt.scrypt(passwordBytes, config.salt, config.n, config.r, config.p, KEY_LENGTH, parallelism)
+            else
+                SCrypt.scrypt(passwordBytes, config.salt, config.n, config.r, config.p, KEY_LENGTH)
             watch.stop()
             log.info("Deriving key took ${watch.elapsed}ms for ${config.n} scrypt iterations.")
-            return KeyParameter(keyBytes)
+            val key = KeyParameter(keyBytes)
+            cache?.put(passwordBytes, config, key)
+            return key
         } catch (e: Exception) {
             throw KeyCrypterException("Could not generate key from password and salt.", e)
         } finally {
@@ -150,15 +166,16 @@ class KeyCrypterScrypt(val config: ScryptConfig) : KeyCrypter {
 
         private val log = loggerFor(KeyCrypterScrypt::class.java)
 
-        fun create(config: ScryptConfig): KeyCrypterScrypt {
-            return KeyCrypterScrypt(config)
+        fun create(config: ScryptConfig, cache: DerivedKeyCache? = null, parallelism: Int = 1): KeyCrypterScrypt {
+            return KeyCrypterScrypt(config, cache, parallelism)
         }
 
         fun create(salt: ByteArray = randomSalt(),
                    n: Int = 16384,         // CPU/ memory cost parameter
                    r: Int = 8,             // Block size parameter
-                   p: Int = 1): KeyCrypter {
-            return create(ScryptConfig(salt, n, r, p))
+                   p: Int = 1,             // Parallelisation parameter
+                   parallelism: Int = 1): KeyCrypter {
+            return create(ScryptConfig(salt, n, r, p), null, parallelism)
         }
 
 
@@ -192,7 +209,7 @@ class KeyCrypterScrypt(val config: ScryptConfig) : KeyCrypter {
          *
          * Note: a String.getBytes() is not used to avoid creating a String of the password in the JVM.
          */
-        private fun convertToByteArray(charSequence: CharSequence): ByteArray {
+        internal fun convertToByteArray(charSequence: CharSequence): ByteArray {
             val byteArray = ByteArray(charSequence.length shl 1)
             for (i in 0 until charSequence.length) {
                 val bytePosition = i shl 1
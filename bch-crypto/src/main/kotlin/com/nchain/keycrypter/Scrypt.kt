@@ -0,0 +1,134 @@
+package com.nchain.keycrypter
+
+import com.nchain.tools.Parallel
+import org.spongycastle.crypto.digests.SHA256Digest
+import org.spongycastle.crypto.generators.PKCS5S2ParametersGenerator
+import org.spongycastle.crypto.params.KeyParameter
+import java.util.Arrays
+
+/**
+ * scrypt (RFC 7914) with its p independent ROMix lanes spread over several threads, so that with enough cores the
+ * wall-clock cost grows with N·r rather than N·r·p. Each worker allocates its lane state once, as int arrays, and
+ * runs Salsa20/8 on them in place; the result is the same as that of any other scrypt implementation.
+ */
+object Scrypt {
+
+    /**
+     * Derives `dkLen` bytes from the password and salt.
+     *
+     * @param n           CPU/memory cost, a power of two greater than one
+     * @param r           block size
+     * @param p           number of lanes
+     * @param parallelism the most lanes to run at the same time; each one needs 128·r·N bytes
+     */
+    @JvmStatic @JvmOverloads
+    fun scrypt(passwd: ByteArray, salt: ByteArray, n: Int, r: Int, p: Int, dkLen: Int,
+               parallelism: Int = Parallel.DEFAULT_PARALLELISM): ByteArray {
+        check(n > 1 && n and (n - 1) == 0, {"N must be a power of 2 greater than 1: $n"})
+        check(r > 0 && p > 0, {"r and p must be positive: r = $r, p = $p"})
+        check(n <= Int.MAX_VALUE / 128 / r, {"Parameter N is too large: $n"})
+        check(r <= Int.MAX_VALUE / 128 / p, {"Parameter r is too large: $r"})
+
+        val laneLen = 128 * r
+        val b = pbkdf2(passwd, salt, p * laneLen)
+        Parallel.mapChunks(p, parallelism) { from, to ->
+            val lane = Lane(n, r)
+            for (i in from until to)
+                lane.romix(b, i * laneLen)
+        }
+        val dk = pbkdf2(passwd, b, dkLen)
+        Arrays.fill(b, 0.toByte())
+        return dk
+    }
+
+    private fun pbkdf2(passwd: ByteArray, salt: ByteArray, dkLen: Int): ByteArray {
+        val generator = PKCS5S2ParametersGenerator(SHA256Digest())
+        generator.init(passwd, salt, 1)
+        return (generator.generateDerivedParameters(dkLen * 8) as KeyParameter).key
+    }
+
+    // The scratch state of one worker, reused for every lane it computes.
+    private class Lane(private val n: Int, private val r: Int) {
+        private val blockInts = 32 * r
+        private val x = IntArray(blockInts)
+        private val y = IntArray(blockInts)
+        private val v = IntArray(blockInts * n)
+        private val t = IntArray(16)
+
+        fun romix(b: ByteArray, off: Int) {
+            for (i in 0 until blockInts)
+                x[i] = intLE(b, off + 4 * i)
+            for (i in 0 until n) {
+                System.arraycopy(x, 0, v, i * blockInts, blockInts)
+                blockMix()
+            }
+            for (i in 0 until n) {
+                val j = x[(2 * r - 1) * 16] and (n - 1)
+                val vj = j * blockInts
+                for (k in 0 until blockInts)
+                    x[k] = x[k] xor v[vj + k]
+                blockMix()
+            }
+            for (i in 0 until blockInts)
+                putIntLE(b, off + 4 * i, x[i])
+            Arrays.fill(v, 0)
+            Arrays.fill(x, 0)
+            Arrays.fill(y, 0)
+        }
+
+        // BlockMix with Salsa20/8 on x, using y for the interleaved output.
+        private fun blockMix() {
+            System.arraycopy(x, (2 * r - 1) * 16, t, 0, 16)
+            for (i in 0 until 2 * r) {
+                val bi = i * 16
+                for (k in 0 until 16)
+                    t[k] = t[k] xor x[bi + k]
+                salsa208(t)
+                // Even blocks go to the first half, odd blocks to the second.
+                System.arraycopy(t, 0, y, ((i shr 1) + (i and 1) * r) * 16, 16)
+            }
+            System.arraycopy(y, 0, x, 0, blockInts)
+        }
+    }
+
+    private fun salsa208(b: IntArray) {
+        var x0 = b[0]; var x1 = b[1]; var x2 = b[2]; var x3 = b[3]
+        var x4 = b[4]; var x5 = b[5]; var x6 = b[6]; var x7 = b[7]
+        var x8 = b[8]; var x9 = b[9]; var x10 = b[10]; var x11 = b[11]
+        var x12 = b[12]; var x13 = b[13]; var x14 = b[14]; var x15 = b[15]
+        for (round in 0 until 4) {
+            x4 = x4 xor Integer.rotateLeft(x0 + x12, 7); x8 = x8 xor Integer.rotateLeft(x4 + x0, 9)
+            x12 = x12 xor Integer.rotateLeft(x8 + x4, 13); x0 = x0 xor Integer.rotateLeft(x12 + x8, 18)
+            x9 = x9 xor Integer.rotateLeft(x5 + x1, 7); x13 = x13 xor Integer.rotateLeft(x9 + x5, 9)
+            x1 = x1 xor Integer.rotateLeft(x13 + x9, 13); x5 = x5 xor Integer.rotateLeft(x1 + x13, 18)
+            x14 = x14 xor Integer.rotateLeft(x10 + x6, 7); x2 = x2 xor Integer.rotateLeft(x14 + x10, 9)
+            x6 = x6 xor Integer.rotateLeft(x2 + x14, 13); x10 = x10 xor Integer.rotateLeft(x6 + x2, 18)
+            x3 = x3 xor Integer.rotateLeft(x15 + x11, 7); x7 = x7 xor Integer.rotateLeft(x3 + x15, 9)
+            x11 = x11 xor Integer.rotateLeft(x7 + x3, 13); x15 = x15 xor Integer.rotateLeft(x11 + x7, 18)
+
+            x1 = x1 xor Integer.rotateLeft(x0 + x3, 7); x2 = x2 xor Integer.rotateLeft(x1 + x0, 9)
+            x3 = x3 xor Integer.rotateLeft(x2 + x1, 13); x0 = x0 xor Integer.rotateLeft(x3 + x2, 18)
+            x6 = x6 xor Integer.rotateLeft(x5 + x4, 7); x7 = x7 xor Integer.rotateLeft(x6 + x5, 9)
+            x4 = x4 xor Integer.rotateLeft(x7 + x6, 13); x5 = x5 xor Integer.rotateLeft(x4 + x7, 18)
+            x11 = x11 xor Integer.rotateLeft(x10 + x9, 7); x8 = x8 xor Integer.rotateLeft(x11 + x10, 9)
+            x9 = x9 xor Integer.rotateLeft(x8 + x11, 13); x10 = x10 xor Integer.rotateLeft(x9 + x8, 18)
+            x12 = x12 xor Integer.rotateLeft(x15 + x14, 7); x13 = x13 xor Integer.rotateLeft(x12 + x15, 9)
+            x14 = x14 xor Integer.rotateLeft(x13 + x12, 13); x15 = x15 xor Integer.rotateLeft(x14 + x13, 18)
+        }
+        b[0] += x0; b[1] += x1; b[2] += x2; b[3] += x3
+        b[4] += x4; b[5] += x5; b[6] += x6; b[7] += x7
+        b[8] += x8; b[9] += x9; b[10] += x10; b[11] += x11
+        b[12] += x12; b[13] += x13; b[14] += x14; b[15] += x15
+    }
+
+    private fun intLE(b: ByteArray, off: Int): Int =
+            (b[off].toInt() and 0xff) or ((b[off + 1].toInt() and 0xff) shl 8) or
+                    ((b[off + 2].toInt() and 0xff) shl 16) or (b[off + 3].toInt() shl 24)
+
+    private fun putIntLE(b: ByteArray, off: Int, value: Int) {
+        b[off] = value.toByte()
+        b[off + 1] = (value ushr 8).toByte()
+        b[off + 2] = (value ushr 16).toByte()
+        b[off + 3] = (value ushr 24).toByte()
+    }
+}
@@ -0,0 +1,103 @@
+package com.nchain.metrics
+
+/**
+ * Metrics of the validation and crypto hot paths. Each instrumented path is a [Stage], which reports its latency and
+ * its failures to the [MetricsRegistry] installed here. Nothing is installed by default, and then a stage costs a
+ * single volatile read: the clock isn't even read.
+ *
+ * ```
+ * val registry = SimpleMetricsRegistry()
+ * Metrics.install(registry)
+ * ...
+ * println(registry.report())
+ * ```
+ *
+ * The stages of this library are `ecdsa.sign`, `ecdsa.verify`, `schnorr.sign`, `schnorr.verify`, `sighash.legacy`,
+ * `sighash.forkid`, `script.verify` (a whole `correctlySpends`), `script.checksig` and `tx.parse`.
+ */
+object Metrics {
+    private val stages = LinkedHashMap<String, Stage>()
+
+    /** The installed registry, or null when metrics are disabled. */
+    @Volatile @JvmStatic var registry: MetricsRegistry? = null
+        private set
+
+    /** Reports every stage to the registry from now on; null disables metrics. */
+    @JvmStatic @Synchronized fun install(registry: MetricsRegistry?) {
+        this.registry = registry
+        for (stage in stages.values)
+            stage.bind(registry)
+    }
+
+    /** Returns the stage of the given name, creating it on first use. */
+    @JvmStatic @Synchronized fun stage(name: String): Stage =
+            stages.getOrPut(name) { Stage(name).also { it.bind(registry) } }
+
+    /**
+     * An instrumented code path. The latency of each run goes to the recorder named after the stage, and the runs
+     * that failed are counted as `<name>.failures`.
+     *
+     * ```
+     * val start = STAGE.start()
+     * ... // the work
+     * STAGE.stop(start, succeeded)
+     * ```
+     */
+    class Stage internal constructor(val name: String) {
+        // Bound together, so that a run sees both or neither.
+        private class Binding(val latency: LatencyRecorder, val failures: Counter)
+
+        @Volatile private var binding: Binding? = null
+
+        internal fun bind(registry: MetricsRegistry?) {
+            binding = if (registry == null) null else Binding(registry.latency(name), registry.counter("$name.failures"))
+        }
+
+        val isEnabled: Boolean
+            get() = binding != null
+
+        /** Starts timing a run; returns a token for [stop]. */
+        fun start(): Long = if (binding == null) DISABLED else System.nanoTime()
+
+        /** Ends the run started with the token. */
+        @JvmOverloads
+        fun stop(start: Long, succeeded: Boolean = true) {
+            if (start == DISABLED)
+                return
+            val binding = binding ?: return
+            binding.latency.record(System.nanoTime() - start)
+            if (!succeeded)
+                binding.failures.add(1)
+        }
+
+        /** Times the block, counting a failure if it throws. */
+        inline fun <T> time(block: () -> T): T {
+            val start = start()
+            var succeeded = false
+            try {
+                val result = block()
+                succeeded = true
+                return result
+            } finally {
+                stop(start, succeeded)
+            }
+        }
+
+        /** Times a check, counting a failure if it returns false or throws. */
+        inline fun timeCheck(block: () -> Boolean): Boolean {
+            val start = start()
+            var passed = false
+            try {
+                passed = block()
+                return passed
+            } finally {
+                stop(start, passed)
+            }
+        }
+
+        override fun toString() = "Stage($name)"
+    }
+
+    /** The [Stage.start] token of a run while metrics are disabled. */
+    const val DISABLED = Long.MIN_VALUE
+}
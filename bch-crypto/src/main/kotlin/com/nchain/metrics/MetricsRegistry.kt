@@ -0,0 +1,23 @@
+package com.nchain.metrics
+
+/**
+ * Where the library reports its metrics. Install an implementation with [Metrics.install]; it is asked once for the
+ * counter and the latency recorder of each [Metrics.Stage], and those are then called from the hot paths, from any
+ * thread, so they must be thread safe and cheap. [SimpleMetricsRegistry] keeps them in memory; an adapter to another
+ * metrics library only needs these three methods.
+ */
+interface MetricsRegistry {
+    fun counter(name: String): Counter
+
+    fun latency(name: String): LatencyRecorder
+}
+
+/** A count of events. */
+interface Counter {
+    fun add(delta: Long)
+}
+
+/** A distribution of durations. */
+interface LatencyRecorder {
+    fun record(nanos: Long)
+}
@@ -0,0 +1,76 @@
+package com.nchain.metrics
+
+import java.util.Locale
+import java.util.TreeMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * A [MetricsRegistry] that keeps its counters and [LatencyHistogram]s in memory, to be read by the application, for
+ * instance to publish them periodically or to log a [report].
+ */
+class SimpleMetricsRegistry : MetricsRegistry {
+
+    class SimpleCounter internal constructor() : Counter {
+        private val adder = LongAdder()
+
+        override fun add(delta: Long) = adder.add(delta)
+
+        val count: Long
+            get() = adder.sum()
+
+        fun reset() = adder.reset()
+
+        override fun toString() = count.toString()
+    }
+
+    private val counters = ConcurrentHashMap<String, SimpleCounter>()
+    private val histograms = ConcurrentHashMap<String, LatencyHistogram>()
+
+    override fun counter(name: String): SimpleCounter = counters.computeIfAbsent(name) { SimpleCounter() }
+
+    override fun latency(name: String): LatencyHistogram = histograms.computeIfAbsent(name) { LatencyHistogram() }
+
+    /** The counters by name, sorted. */
+    fun counters(): Map<String, SimpleCounter> = TreeMap(counters)
+
+    /** The latency histograms by name, sorted. */
+    fun histograms(): Map<String, LatencyHistogram> = TreeMap(histograms)
+
+    fun reset() {
+        for (counter in counters.values)
+            counter.reset()
+        for (histogram in histograms.values)
+            histogram.reset()
+    }
+
+    /**
+     * A table of every histogram that recorded something, with its count, failures, mean and percentiles in
+     * microseconds, followed by the other counters.
+     */
+    fun report(): String {
+        val sb = StringBuilder()
+        sb.append(String.format(Locale.ROOT, "%-20s %10s %8s %10s %10s %10s %10s %10s %10s%n",
+                "stage", "count", "failed", "mean us", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"))
+        val reported = HashSet<String>()
+        for ((name, histogram) in histograms()) {
+            if (histogram.count == 0L)
+                continue
+            val failures = counters["$name.failures"]
+            if (failures != null)
+                reported.add("$name.failures")
+            sb.append(String.format(Locale.ROOT, "%-20s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    name, histogram.count, failures?.count ?: 0L, histogram.mean / 1000,
+                    micros(histogram.valueAtPercentile(50.0)), micros(histogram.valueAtPercentile(90.0)),
+                    micros(histogram.valueAtPercentile(99.0)), micros(histogram.valueAtPercentile(99.9)),
+                    micros(histogram.max)))
+        }
+        for ((name, counter) in counters()) {
+            if (name !in reported && counter.count != 0L)
+                sb.append(String.format(Locale.ROOT, "%-20s %10d%n", name, counter.count))
+        }
+        return sb.toString()
+    }
+
+    private fun micros(nanos: Long) = nanos / 1000.0
+}
@@ -2,67 +2,177 @@ package com.nchain.tools
 
 import com.nchain.key.ECKey
 import com.nchain.shared.VerificationException
-import org.spongycastle.asn1.ASN1InputStream
-import org.spongycastle.asn1.ASN1Integer
-import org.spongycastle.asn1.DERSequenceGenerator
-import org.spongycastle.asn1.DLSequence
-import org.spongycastle.util.Properties
 import java.io.ByteArrayOutputStream
 import java.io.IOException
+import java.math.BigInteger
 
 /*
  * @author Alberto Vilches
  * @date 23/07/2018
  */
 
+/**
+ * Encoding and decoding of ECDSA signatures as the DER `SEQUENCE { INTEGER r, INTEGER s }` structure. Signatures are
+ * parsed directly from the byte array, without building intermediate ASN.1 objects.
+ *
+ * Two decoders are offered. [decodeStrict] accepts only the strict encoding required by BIP 66 and enforced by the
+ * script interpreter, and [decodeSignature] accepts the same loose encodings that Bitcoin Core accepts for signatures
+ * that pre-date BIP 66. Both ignore whatever follows the DER structure, so a signature can be passed with its trailing
+ * sighash byte still attached.
+ */
 object DER {
+
+    private const val SEQUENCE = 0x30
+    private const val INTEGER = 0x02
+
     @Throws(IOException::class)
     @JvmStatic
     fun encode(signature: ECKey.ECDSASignature): ByteArray {
-        return createByteStream(signature).toByteArray()
+        // toByteArray() returns the minimal two's complement form, which is exactly the content of a DER INTEGER.
+        val r = signature.r.toByteArray()
+        val s = signature.s.toByteArray()
+        val contentLength = 4 + r.size + s.size
+        check(contentLength < 0x80, { "Signature components too large to encode: $contentLength bytes" })
+        val bytes = ByteArray(2 + contentLength)
+        bytes[0] = SEQUENCE.toByte()
+        bytes[1] = contentLength.toByte()
+        bytes[2] = INTEGER.toByte()
+        bytes[3] = r.size.toByte()
+        System.arraycopy(r, 0, bytes, 4, r.size)
+        bytes[4 + r.size] = INTEGER.toByte()
+        bytes[5 + r.size] = s.size.toByte()
+        System.arraycopy(s, 0, bytes, 6 + r.size, s.size)
+        return bytes
     }
 
     @Throws(IOException::class)
     @JvmStatic
     fun createByteStream(signature: ECKey.ECDSASignature): ByteArrayOutputStream {
-        // Usually 70-72 bytes.
-        val bos = ByteArrayOutputStream(72)
-        val seq = DERSequenceGenerator(bos)
-        seq.addObject(ASN1Integer(signature.r))
-        seq.addObject(ASN1Integer(signature.s))
-        seq.close()
+        // Usually 70-72 bytes, plus room for a sighash byte.
+        val bos = ByteArrayOutputStream(73)
+        bos.write(encode(signature))
         return bos
     }
 
+    /**
+     * Returns true if the given signature, followed by its one byte sighash type, is strictly DER encoded as defined
+     * by BIP 66: `0x30 <total len> 0x02 <len R> <R> 0x02 <len S> <S> <hashtype>`, where R and S are not negative
+     * and not padded with unnecessary zero bytes. The value of the sighash byte itself is not checked.
+     */
+    @JvmStatic
+    fun isStrictlyEncoded(signature: ByteArray): Boolean {
+        return strictLengthOfR(signature) >= 0
+    }
+
+    /**
+     * Decodes a signature followed by its one byte sighash type, as found in a scriptSig, in a single pass over the
+     * bytes. Returns null if the encoding is not strict in the sense of [isStrictlyEncoded].
+     */
+    @JvmStatic
+    fun decodeStrict(signature: ByteArray): ECKey.ECDSASignature? {
+        val lenR = strictLengthOfR(signature)
+        if (lenR < 0)
+            return null
+        val lenS = signature[5 + lenR].toInt() and 0xff
+        return ECKey.ECDSASignature(unsigned(signature, 4, lenR), unsigned(signature, 6 + lenR, lenS))
+    }
+
+    /**
+     * Decodes a DER signature, tolerating the encoding violations that Bitcoin Core's lax parser tolerates: long form
+     * and inconsistent lengths, negative and zero padded integers. Anything following the structure is ignored.
+     *
+     * @throws VerificationException.SignatureFormatError if the bytes can't be parsed even loosely.
+     */
     @JvmStatic
     fun decodeSignature(bytes: ByteArray): ECKey.ECDSASignature {
-        var decoder = ASN1InputStream(bytes)
-        try {
-            // BouncyCastle by default is strict about parsing ASN.1 integers. We relax this check, because some
-            // Bitcoin signatures would not parse.
-            Properties.setThreadOverride("org.spongycastle.asn1.allow_unsafe_integer", true)
-            val seq = decoder.readObject() as DLSequence
-                    ?: throw VerificationException.SignatureFormatError("Reached past end of ASN.1 stream.")
-            val r: ASN1Integer
-            val s: ASN1Integer
-            try {
-                r = seq.getObjectAt(0) as ASN1Integer
-                s = seq.getObjectAt(1) as ASN1Integer
-            } catch (e: ClassCastException) {
-                throw IllegalArgumentException(e)
-            }
+        var pos = 0
+        // Sequence tag and length. The sequence length is skipped, as Bitcoin Core does.
+        if (pos == bytes.size || bytes[pos++].toInt() and 0xff != SEQUENCE)
+            throw VerificationException.SignatureFormatError("Signature does not start with a DER sequence")
+        if (pos == bytes.size)
+            throw VerificationException.SignatureFormatError("Truncated DER sequence")
+        var lenByte = bytes[pos++].toInt() and 0xff
+        if (lenByte and 0x80 != 0) {
+            lenByte -= 0x80
+            if (lenByte > bytes.size - pos)
+                throw VerificationException.SignatureFormatError("Truncated DER sequence length")
+            pos += lenByte
+        }
+        val rPos = IntArray(2)
+        pos = readLaxInteger(bytes, pos, rPos)
+        val sPos = IntArray(2)
+        readLaxInteger(bytes, pos, sPos)
+        // OpenSSL deviates from the DER spec by interpreting these values as unsigned, though they should not be
+        // Thus, we always use the positive versions. See: http://r6.ca/blog/20111119T211504Z.html
+        return ECKey.ECDSASignature(unsigned(bytes, rPos[0], rPos[1]), unsigned(bytes, sPos[0], sPos[1]))
+    }
+
+    // Returns the length of R if the signature is strictly encoded, -1 otherwise. Mirrors IsValidSignatureEncoding.
+    private fun strictLengthOfR(sig: ByteArray): Int {
+        if (sig.size < 9 || sig.size > 73)
+            return -1
+        //             "wrong type"                       "wrong length marker"
+        if (sig[0].toInt() and 0xff != SEQUENCE || sig[1].toInt() and 0xff != sig.size - 3)
+            return -1
+        val lenR = sig[3].toInt() and 0xff
+        if (5 + lenR >= sig.size || lenR == 0)
+            return -1
+        val lenS = sig[5 + lenR].toInt() and 0xff
+        if (lenR + lenS + 7 != sig.size || lenS == 0)
+            return -1
+        //      R value type mismatch                 R value negative
+        if (sig[2].toInt() != INTEGER || sig[4].toInt() and 0x80 != 0)
+            return -1
+        if (lenR > 1 && sig[4].toInt() == 0x00 && sig[5].toInt() and 0x80 == 0)
+            return -1 // R value excessively padded
+        //           S value type mismatch                        S value negative
+        if (sig[4 + lenR].toInt() != INTEGER || sig[6 + lenR].toInt() and 0x80 != 0)
+            return -1
+        if (lenS > 1 && sig[6 + lenR].toInt() == 0x00 && sig[7 + lenR].toInt() and 0x80 == 0)
+            return -1 // S value excessively padded
+        return lenR
+    }
 
-            // OpenSSL deviates from the DER spec by interpreting these values as unsigned, though they should not be
-            // Thus, we always use the positive versions. See: http://r6.ca/blog/20111119T211504Z.html
-            return ECKey.ECDSASignature(r.positiveValue, s.positiveValue)
-        } catch (e: Exception) {
-            throw VerificationException.SignatureFormatError(e)
-        } finally {
-            Properties.removeThreadOverride("org.spongycastle.asn1.allow_unsafe_integer")
-            try {
-                decoder.close()
-            } catch (x: IOException) {
+    // Reads an INTEGER header at pos, stores the offset and length of its content in out and returns the position
+    // just past the content.
+    private fun readLaxInteger(bytes: ByteArray, start: Int, out: IntArray): Int {
+        var pos = start
+        if (pos == bytes.size || bytes[pos++].toInt() != INTEGER)
+            throw VerificationException.SignatureFormatError("Expected a DER integer")
+        if (pos == bytes.size)
+            throw VerificationException.SignatureFormatError("Truncated DER integer")
+        var lenByte = bytes[pos++].toInt() and 0xff
+        var length: Int
+        if (lenByte and 0x80 != 0) {
+            lenByte -= 0x80
+            if (lenByte > bytes.size - pos)
+                throw VerificationException.SignatureFormatError("Truncated DER integer length")
+            while (lenByte > 0 && bytes[pos].toInt() == 0) {
+                pos++
+                lenByte--
+            }
+            if (lenByte >= 4)
+                throw VerificationException.SignatureFormatError("DER integer length out of range")
+            length = 0
+            while (lenByte > 0) {
+                length = (length shl 8) + (bytes[pos++].toInt() and 0xff)
+                lenByte--
             }
+        } else {
+            length = lenByte
         }
+        if (length > bytes.size - pos)
+            throw VerificationException.SignatureFormatError("Truncated DER integer")
+        out[0] = pos
+        out[1] = length
+        return pos + length
+    }
+
+    private fun unsigned(bytes: ByteArray, offset: Int, length: Int): BigInteger {
+        if (length == 0)
+            return BigInteger.ZERO
+        val magnitude = ByteArray(length)
+        System.arraycopy(bytes, offset, magnitude, 0, length)
+        return BigInteger(1, magnitude)
     }
-}
\ No newline at end of file
+}
@@ -1,41 +1,231 @@
 package com.nchain.tools
 
+import java.io.InputStream
+import java.io.OutputStream
+import java.io.Reader
+import java.io.Writer
+import java.nio.ByteBuffer
+import java.nio.CharBuffer
+
 /*
  * @author Alberto Vilches
  * @date 16/07/2018
  */
 
-//private val HEX_CHARS = "0123456789ABCDEF".toCharArray()
-private val HEX_CHARS = "00112233445566778899aAbBcCdDeEfF".toCharArray()
+private val HEX_DIGITS = "0123456789abcdef".toCharArray()
 
-fun ByteArray.toHex(): String {
-    val result = StringBuffer()
-    forEach {
-        val octet = it.toInt()
-        val firstIndex = (octet and 0xF0).ushr(4)
-        val secondIndex = octet and 0x0F
-        result.append(HEX_CHARS[firstIndex*2])
-        result.append(HEX_CHARS[secondIndex*2])
+// The value of each ASCII hex digit, either case, or -1.
+private val HEX_VALUES = IntArray(128) { -1 }.also {
+    for (i in 0..15) {
+        it[HEX_DIGITS[i].toInt()] = i
+        it[Character.toUpperCase(HEX_DIGITS[i]).toInt()] = i
     }
+}
+
+private fun hexValue(c: Int, position: Long): Int {
+    val value = if (c < 128) HEX_VALUES[c] else -1
+    if (value < 0)
+        throw IllegalArgumentException("Invalid hex character '${c.toChar()}' at position $position")
+    return value
+}
 
-    return result.toString()
+fun ByteArray.toHex(): String {
+    val chars = CharArray(size * 2)
+    HEX.encode(this, 0, size, chars, 0)
+    return String(chars)
 }
 
 fun String.hexStringToByteArray(): ByteArray {
+    if (length and 1 != 0)
+        throw IllegalArgumentException("Hex string has an odd length: $length")
     val result = ByteArray(length / 2)
-    for (i in 0 until length step 2) {
-        val firstIndex = HEX_CHARS.indexOf(this[i]) / 2
-        val secondIndex = HEX_CHARS.indexOf(this[i + 1]) / 2
-
-        val octet = firstIndex.shl(4).or(secondIndex)
-        result.set(i.shr(1), octet.toByte())
-    }
+    HEX.decode(this, 0, length, result, 0)
     return result
 }
 
+/**
+ * Lower case hex encoding, decoding either case. Besides the String conversions there are variants that read and
+ * write caller-provided arrays, buffers and streams, so that large inputs such as raw blocks can be converted without
+ * intermediate copies. Invalid input is rejected with an [IllegalArgumentException].
+ */
 object HEX {
     @JvmStatic fun decode(hex: String): ByteArray = hex.hexStringToByteArray()
     @JvmStatic fun hexToBytes(hex: String): ByteArray = hex.hexStringToByteArray()
     @JvmStatic fun bytesToHex(bytes: ByteArray): String = bytes.toHex()
     @JvmStatic fun encode(bytes: ByteArray): String = bytes.toHex()
-}
\ No newline at end of file
+
+    /**
+     * Encodes `length` bytes into `2 * length` characters of the output array.
+     *
+     * @return the number of characters written
+     */
+    @JvmStatic fun encode(bytes: ByteArray, offset: Int, length: Int, output: CharArray, outputOffset: Int): Int {
+        check(offset >= 0 && length >= 0 && offset + length <= bytes.size, {"Bad range: $offset, $length"})
+        check(outputOffset >= 0 && outputOffset + 2 * length <= output.size, {"Output buffer too small"})
+        var pos = outputOffset
+        for (i in offset until offset + length) {
+            val octet = bytes[i].toInt()
+            output[pos++] = HEX_DIGITS[octet shr 4 and 0x0F]
+            output[pos++] = HEX_DIGITS[octet and 0x0F]
+        }
+        return 2 * length
+    }
+
+    /** Encodes `length` bytes onto the output. */
+    @JvmStatic fun encode(bytes: ByteArray, offset: Int, length: Int, output: Appendable) {
+        val chars = CharArray(2 * Math.min(length, STREAM_CHUNK))
+        var done = 0
+        while (done < length) {
+            val n = Math.min(length - done, STREAM_CHUNK)
+            encode(bytes, offset + done, n, chars, 0)
+            output.append(CharBuffer.wrap(chars, 0, 2 * n))
+            done += n
+        }
+    }
+
+    /**
+     * Decodes `length` characters, which must be even, into `length / 2` bytes of the output array.
+     *
+     * @return the number of bytes written
+     */
+    @JvmStatic fun decode(hex: CharSequence, offset: Int, length: Int, output: ByteArray, outputOffset: Int): Int {
+        check(offset >= 0 && length >= 0 && offset + length <= hex.length, {"Bad range: $offset, $length"})
+        if (length and 1 != 0)
+            throw IllegalArgumentException("Hex string has an odd length: $length")
+        check(outputOffset >= 0 && outputOffset + length / 2 <= output.size, {"Output buffer too small"})
+        var pos = outputOffset
+        var i = offset
+        while (i < offset + length) {
+            val high = hexValue(hex[i].toInt(), i.toLong())
+            val low = hexValue(hex[i + 1].toInt(), i + 1L)
+            output[pos++] = (high shl 4 or low).toByte()
+            i += 2
+        }
+        return length / 2
+    }
+
+    /**
+     * Decodes `length` ASCII hex digits, which must be even, into `length / 2` bytes of the output array, as when
+     * hex arrives in a network buffer. The output may be the input array itself, at an offset not after the input's.
+     *
+     * @return the number of bytes written
+     */
+    @JvmStatic fun decode(hex: ByteArray, offset: Int, length: Int, output: ByteArray, outputOffset: Int): Int {
+        check(offset >= 0 && length >= 0 && offset + length <= hex.size, {"Bad range: $offset, $length"})
+        if (length and 1 != 0)
+            throw IllegalArgumentException("Hex string has an odd length: $length")
+        check(outputOffset >= 0 && outputOffset + length / 2 <= output.size, {"Output buffer too small"})
+        var pos = outputOffset
+        var i = offset
+        while (i < offset + length) {
+            val high = hexValue(hex[i].toInt() and 0xFF, i.toLong())
+            val low = hexValue(hex[i + 1].toInt() and 0xFF, i + 1L)
+            output[pos++] = (high shl 4 or low).toByte()
+            i += 2
+        }
+        return length / 2
+    }
+
+    /**
+     * Decodes ASCII hex digits from the input buffer into the output buffer, as many whole bytes as both have room
+     * for. A trailing odd digit is left in the input for the next call.
+     *
+     * @return the number of bytes written
+     */
+    @JvmStatic fun decode(hex: ByteBuffer, output: ByteBuffer): Int {
+        val count = Math.min(hex.remaining() / 2, output.remaining())
+        for (i in 0 until count) {
+            val high = hexValue(hex.get().toInt() and 0xFF, hex.position() - 1L)
+            val low = hexValue(hex.get().toInt() and 0xFF, hex.position() - 1L)
+            output.put((high shl 4 or low).toByte())
+        }
+        return count
+    }
+
+    /**
+     * Decodes a hex stream of any length onto the output stream, chunk by chunk.
+     *
+     * @return the number of bytes written
+     */
+    @JvmStatic fun decode(input: Reader, output: OutputStream): Long {
+        val decoder = Decoder()
+        val chars = CharArray(2 * STREAM_CHUNK)
+        val bytes = ByteArray(STREAM_CHUNK + 1)
+        var total = 0L
+        while (true) {
+            val n = input.read(chars)
+            if (n < 0)
+                break
+            val written = decoder.update(chars, 0, n, bytes, 0)
+            output.write(bytes, 0, written)
+            total += written
+        }
+        decoder.finish()
+        return total
+    }
+
+    /**
+     * Encodes a byte stream of any length onto the writer, chunk by chunk.
+     *
+     * @return the number of bytes encoded
+     */
+    @JvmStatic fun encode(input: InputStream, output: Writer): Long {
+        val bytes = ByteArray(STREAM_CHUNK)
+        val chars = CharArray(2 * STREAM_CHUNK)
+        var total = 0L
+        while (true) {
+            val n = input.read(bytes)
+            if (n < 0)
+                break
+            output.write(chars, 0, encode(bytes, 0, n, chars, 0))
+            total += n
+        }
+        return total
+    }
+
+    /**
+     * Incremental decoder for hex that arrives in chunks which may split a byte's two digits.
+     */
+    class Decoder {
+        private var pending = -1
+        private var position = 0L
+
+        /**
+         * Decodes the characters, continuing from the previous chunk, into the output array, which must have room
+         * for `(length + 1) / 2` bytes.
+         *
+         * @return the number of bytes written
+         */
+        fun update(hex: CharArray, offset: Int, length: Int, output: ByteArray, outputOffset: Int): Int {
+            check(offset >= 0 && length >= 0 && offset + length <= hex.size, {"Bad range: $offset, $length"})
+            var pos = outputOffset
+            var i = offset
+            val end = offset + length
+            if (pending >= 0 && i < end) {
+                output[pos++] = (pending shl 4 or hexValue(hex[i++].toInt(), position++)).toByte()
+                pending = -1
+            }
+            while (i + 1 < end) {
+                val high = hexValue(hex[i].toInt(), position)
+                val low = hexValue(hex[i + 1].toInt(), position + 1)
+                output[pos++] = (high shl 4 or low).toByte()
+                position += 2
+                i += 2
+            }
+            if (i < end)
+                pending = hexValue(hex[i].toInt(), position++)
+            return pos - outputOffset
+        }
+
+        /** Checks that the input ended on a whole byte, and resets the decoder. */
+        fun finish() {
+            val odd = pending >= 0
+            pending = -1
+            position = 0
+            if (odd)
+                throw IllegalArgumentException("Hex input has an odd length")
+        }
+    }
+
+    private const val STREAM_CHUNK = 8192
+}
@@ -0,0 +1,70 @@
+package com.nchain.tools
+
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Small helper used by the bulk APIs to fan a range of work out over a bounded number of threads. The range
+ * [0, count) is cut into contiguous chunks, one per worker, so each worker can keep its own scratch state (digests,
+ * random generators, buffers) for the whole chunk. Results are returned in range order.
+ */
+object Parallel {
+
+    /** The number of workers used when the caller doesn't say otherwise. */
+    @JvmStatic val DEFAULT_PARALLELISM: Int = Runtime.getRuntime().availableProcessors()
+
+    /**
+     * Splits [0, count) into at most `parallelism` contiguous chunks and runs `block(from, to)` for each one. With a
+     * parallelism of one, or a single chunk, the block runs on the calling thread.
+     *
+     * @throws RuntimeException the first failure thrown by any chunk, unwrapped.
+     */
+    @JvmStatic fun <T> mapChunks(count: Int, parallelism: Int, block: (from: Int, to: Int) -> T): List<T> {
+        check(count >= 0, { "count must not be negative: $count" })
+        check(parallelism > 0, { "parallelism must be positive: $parallelism" })
+        val workers = Math.max(1, Math.min(parallelism, count))
+        if (workers == 1)
+            return listOf(block(0, count))
+        val executor = Executors.newFixedThreadPool(workers, DaemonThreadFactory)
+        try {
+            val futures = ArrayList<Future<T>>(workers)
+            for (w in 0 until workers) {
+                val from = (count.toLong() * w / workers).toInt()
+                val to = (count.toLong() * (w + 1) / workers).toInt()
+                futures.add(executor.submit<T> { block(from, to) })
+            }
+            return futures.map { await(it) }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private fun <T> await(future: Future<T>): T {
+        try {
+            return future.get()
+        } catch (e: ExecutionException) {
+            val cause = e.cause
+            when (cause) {
+                is RuntimeException -> throw cause
+                is Error -> throw cause
+                else -> throw RuntimeException(cause)
+            }
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw RuntimeException(e)
+        }
+    }
+
+    internal object DaemonThreadFactory : ThreadFactory {
+        private val counter = AtomicInteger()
+
+        override fun newThread(r: Runnable): Thread {
+            val thread = Thread(r, "bch-worker-" + counter.incrementAndGet())
+            thread.isDaemon = true
+            return thread
+        }
+    }
+}
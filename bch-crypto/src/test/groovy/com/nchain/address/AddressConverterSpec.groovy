@@ -0,0 +1,79 @@
+package com.nchain.address
+
+import com.nchain.params.MainNetParams
+import spock.lang.Specification
+
+import java.nio.channels.Channels
+
+import static com.nchain.address.AddressConverter.Format
+
+class AddressConverterSpec extends Specification {
+
+    List<String[]> pairs = AddressConverterSpec.class.getResource("/bch_addresses_main.csv").getText()
+            .readLines().findAll { it }.collect { it.split(",") }
+
+    def 'converts a CSV column in order with errors reported separately'() {
+        given:
+        def lines = pairs.collect { it.join(",") }
+        lines.add(10, "1AwiwNHazH6a9vcR5pmSFQ8P3RGK7g96VD,broken")
+        lines.add(500, "bchtest:qpk4hk3wuxe2uqtqc97n8atzrrr6r5mleczf9sur4h,wrong network")
+        def errors = []
+        def converter = new AddressConverter(MainNetParams.INSTANCE, Format.CASH_ADDRESS, 0, 3, 7)
+        def output = new ByteArrayOutputStream()
+        when:
+        def summary = converter.convert(Channels.newChannel(new ByteArrayInputStream(lines.join("\n").bytes)),
+                Channels.newChannel(output), { lineNumber, line, message -> errors << [lineNumber, line] }
+                as AddressConverter.ErrorListener)
+        then:
+        summary.lines == pairs.size() + 2
+        summary.converted == pairs.size()
+        summary.errors == 2
+        errors == [[11L, lines[10]], [501L, lines[500]]]
+        output.toString("UTF-8").readLines() == pairs.collect { it[1] + "," + it[1] }
+    }
+
+    def 'reports malformed lines without aborting the run'() {
+        given:
+        def valid = pairs[0][0]
+        def malformed = ["1" * 30, "1" * 35, "1" * 36, "1" * 200 + "2", "bitcoincash:" + "q" * 200, "\u00e9" * 40]
+        def input = new StringReader(([valid] + malformed + [valid]).join("\n"))
+        def output = new StringWriter()
+        def errors = []
+        def converter = new AddressConverter(MainNetParams.INSTANCE, Format.CASH_ADDRESS, 0, 2, 3)
+        when:
+        def summary = converter.convert(input, output, { lineNumber, line, message -> errors << lineNumber }
+                as AddressConverter.ErrorListener)
+        then:
+        summary.converted == 2
+        summary.errors == malformed.size()
+        errors == (2L..(1L + malformed.size())).toList()
+        output.toString().readLines() == [pairs[0][1], pairs[0][1]]
+    }
+
+    def 'converts a line-delimited list to legacy form'() {
+        given:
+        def input = new StringReader(pairs.collect { it[1] }.join("\n"))
+        def output = new StringWriter()
+        def converter = new AddressConverter(MainNetParams.INSTANCE, Format.LEGACY, 0, 4, 100)
+        when:
+        def summary = converter.convert(input, output, null)
+        then:
+        summary.converted == pairs.size()
+        output.toString().readLines() == pairs.collect { it[0] }
+    }
+
+    def 'converts single addresses in either form'() {
+        given:
+        def toCash = new AddressConverter(MainNetParams.INSTANCE, Format.CASH_ADDRESS)
+        def toLegacy = new AddressConverter(MainNetParams.INSTANCE, Format.LEGACY)
+        expect:
+        pairs.every { pair ->
+            toCash.convert(pair[0]) == pair[1] && toCash.convert(pair[1].toUpperCase()) == pair[1] &&
+                    toLegacy.convert(pair[1]) == pair[0] && toLegacy.convert(pair[0]) == pair[0]
+        }
+        when:
+        toCash.convert("mqc1tmwY2368LLGktnePzEyPAsgADxbksi")
+        then:
+        thrown(AddressFormatException)
+    }
+}
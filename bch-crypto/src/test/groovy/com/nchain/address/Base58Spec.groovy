@@ -49,4 +49,83 @@ class Base58Spec extends Specification {
         then:
         thrown(AddressFormatException)
     }
-}
\ No newline at end of file
+
+    def 'random round trips match the BigInteger conversion'() {
+        given:
+        def random = new Random(58)
+        expect:
+        for (int i = 0; i < 500; i++) {
+            byte[] bytes = new byte[random.nextInt(100)]
+            random.nextBytes(bytes)
+            int zeros = random.nextInt(4)
+            for (int z = 0; z < zeros && z < bytes.length; z++)
+                bytes[z] = 0
+            String encoded = Base58.encode(bytes)
+            assert encoded == reference(bytes)
+            assert encoded.length() <= Base58.maxEncodedLength(bytes.length)
+            assert Base58.decode(encoded) == bytes
+        }
+    }
+
+    def 'leading zeros decode to whole bytes'() {
+        given:
+        byte[] zeros = new byte[100]
+        byte[] prefixed = new byte[60]
+        prefixed[59] = 1
+        byte[] buffer = new byte[Base58.maxDecodedLength(4)]
+        expect:
+        Base58.decode("1" * 100) == zeros
+        Base58.encode(Base58.decode("1" * 59 + "2")) == "1" * 59 + "2"
+        Base58.decode("1" * 59 + "2") == prefixed
+        Base58.decode("1111", buffer, 0) == 4
+        buffer == new byte[4]
+    }
+
+    def 'encode and decode into caller buffers'() {
+        given:
+        byte[] bytes = "Hello World".getBytes()
+        char[] chars = new char[Base58.maxEncodedLength(bytes.length) + 3]
+        byte[] decoded = new byte[Base58.maxDecodedLength(15) + 2]
+        when:
+        int written = Base58.encode(bytes, 0, bytes.length, chars, 3)
+        int read = Base58.decode(new String(chars, 3, written), decoded, 2)
+        then:
+        new String(chars, 3, written) == "JxF12TrwUP45BMd"
+        read == bytes.length
+        Arrays.copyOfRange(decoded, 2, 2 + read) == bytes
+    }
+
+    def 'checked round trip and batches'() {
+        given:
+        byte[][] payloads = [[0, 1, 2] as byte[], "payload".getBytes(), [] as byte[]]
+        when:
+        String[] encoded = Base58.encodeCheckedAll(payloads)
+        then:
+        encoded[0] == reference(withChecksum(payloads[0]))
+        Base58.decodeCheckedAll(encoded) == payloads
+        Base58.decodeAll(Base58.encodeAll(payloads)) == payloads
+        Base58.encodeChecked([0x80] as byte[]) == Base58.encode(withChecksum([0x80] as byte[]))
+    }
+
+    private static byte[] withChecksum(byte[] bytes) {
+        byte[] checksum = com.nchain.shared.Sha256Hash.hashTwice(bytes)
+        byte[] result = Arrays.copyOf(bytes, bytes.length + 4)
+        System.arraycopy(checksum, 0, result, bytes.length, 4)
+        return result
+    }
+
+    // The textbook conversion, one digit at a time through BigInteger.
+    private static String reference(byte[] bytes) {
+        def sb = new StringBuilder()
+        def n = new BigInteger(1, bytes)
+        def base = BigInteger.valueOf(58)
+        while (n.signum() > 0) {
+            def qr = n.divideAndRemainder(base)
+            sb.append(Base58.ALPHABET[qr[1].intValue()])
+            n = qr[0]
+        }
+        for (int i = 0; i < bytes.length && bytes[i] == 0; i++)
+            sb.append('1')
+        return sb.reverse().toString()
+    }
+}
@@ -0,0 +1,98 @@
+package com.nchain.address
+
+import com.nchain.params.MainNetParams
+import com.nchain.params.TestNet3Params
+import spock.lang.Specification
+
+import static com.nchain.address.CashAddressCodec.Status
+
+class CashAddressCodecSpec extends Specification {
+
+    def codec = new CashAddressCodec(MainNetParams.INSTANCE)
+
+    def 'agrees with CashAddress on the whole main net list'() {
+        given:
+        String csv = CashAddressCodecSpec.class.getResource("/bch_addresses_main.csv").getText()
+        List<String[]> lines = csv.readLines().findAll { it }.collect { it.split(",") }
+        when:
+        Status[] statuses = codec.checkColumn(csv, 1)
+        then:
+        statuses.length == lines.size()
+        statuses.every { it == Status.VALID }
+        lines.every { line ->
+            def expected = CashAddress.fromBase58(MainNetParams.INSTANCE, line[0])
+            def decoded = codec.decode(line[1])
+            decoded == expected && decoded.addressType == expected.addressType &&
+                    codec.encode(expected.addressType, expected.hash160) == line[1] &&
+                    codec.check(line[1].substring(line[1].indexOf(':') + 1)) == Status.VALID &&
+                    codec.check(line[1].toUpperCase()) == Status.VALID
+        }
+    }
+
+    def 'reports why an address is invalid'() {
+        expect:
+        codec.check(address) == status
+        codec.checkAll([address]) == [status] as Status[]
+        where:
+        address                                                     | status
+        "bitcoincash:qpk4hk3wuxe2uqtqc97n8atzrrr6r5mleczf9sur4h"    | Status.VALID
+        "bitcoincash:ppk4hk3wuxe2uqtqc97n8atzrrr6r5mleczf9sur4h"    | Status.BAD_CHECKSUM
+        "bchtest:qpk4hk3wuxe2uqtqc97n8atzrrr6r5mleczf9sur4h"        | Status.WRONG_PREFIX
+        "bitcoincash:qPk4hk3wuxe2UQtqc97n8atzrRR6r5mlECzf9sur4H"    | Status.MIXED_CASE
+        "bitcoincash:qpk4hk3wuxe2uqtqc97n8atzrrr6r5mleczf9sur4b"    | Status.BAD_CHARACTER
+        "bitcoincash:qpk4hk3wuxe2uqtqc97n8atzrrr6r5mleczf9sur4h:"   | Status.BAD_SEPARATOR
+        "bitcoincash:qpk4hk3w"                                      | Status.BAD_LENGTH
+        "bitcoincash!qpk4hk3wuxe2uqtqc97n8atzrrr6r5mleczf9sur4h"    | Status.BAD_CHARACTER
+    }
+
+    def 'a failed check leaves the last valid address in place'() {
+        given:
+        def valid = "bitcoincash:qpk4hk3wuxe2uqtqc97n8atzrrr6r5mleczf9sur4h"
+        codec.check(valid)
+        byte[] hash = Arrays.copyOf(codec.hash, codec.hashLength)
+        when:
+        def status = codec.check("bitcoincash:qr6m7j9njldwwzlg9v7v53unlr4jkmx6eylep8ekg3")
+        then:
+        status == Status.BAD_CHECKSUM
+        Arrays.copyOf(codec.hash, codec.hashLength) == hash
+        codec.decode(valid).hash160 == hash
+    }
+
+    def 'rejects the same malformed payloads as the helper'() {
+        given:
+        def params = MainNetParams.INSTANCE
+        def address = CashAddressHelper.encodeCashAddress(params.cashAddrPrefix, payload as byte[])
+        when:
+        CashAddress.fromFormattedAddress(params, address)
+        then:
+        thrown(AddressFormatException)
+        codec.check(address) == status
+        where:
+        payload                                                                                                    | status
+        []                                                                                                         | Status.BAD_LENGTH
+        [0x07, 0x01, 0x16, 0x15, 0x17, 0x16, 0x11, 0x0e, 0x1c, 0x06, 0x19, 0xa, 0x1c, 0x00, 0xb, 0x00, 0x18, 0x05,
+         0x1e, 0x13, 0x07, 0x1d, 0x0b, 0x02, 0x03]                                                                 | Status.BAD_PADDING
+        [0x07, 0x01, 0x16, 0x15, 0x17, 0x16, 0x11, 0x0e, 0x1c, 0x06, 0x19, 0xa, 0x1c, 0x00, 0xb, 0x00, 0x18, 0x05,
+         0x1e, 0x13, 0x0d]                                                                                         | Status.BAD_PADDING
+        [0x1f, 0x01, 0x16, 0x15, 0x17, 0x16, 0x11, 0x0e, 0x1c, 0x06, 0x19, 0xa, 0x1c, 0x00, 0xb, 0x00, 0x18, 0x05,
+         0x1e, 0x13, 0x07, 0x1d, 0x0b, 0x02, 0x03, 0x03, 0x03, 0x1a, 0x3, 0x14, 0x1b, 0x1f, 0x19, 0x18]            | Status.BAD_VERSION
+        [0x00, 0x06, 0x16, 0x15, 0x17, 0x16, 0x11, 0x0e, 0x1c, 0x06, 0x19, 0xa, 0x1c, 0x00, 0xb, 0x00, 0x18, 0x05,
+         0x1e, 0x13, 0x07, 0x1d, 0x0b, 0x02, 0x03, 0x03, 0x03, 0x1a, 0x3, 0x14, 0x1b, 0x1f, 0x19, 0x18]            | Status.BAD_LENGTH
+    }
+
+    def 'encodes other networks and hash sizes'() {
+        given:
+        def testCodec = new CashAddressCodec(TestNet3Params.INSTANCE)
+        byte[] hash = (1..32).collect { it as byte } as byte[]
+        when:
+        def address = testCodec.encode(CashAddress.CashAddressType.Script, hash)
+        then:
+        address == CashAddressHelper.encodeCashAddress("bchtest",
+                CashAddressHelper.packAddressData(hash, 1 as byte))
+        testCodec.check(address) == Status.VALID
+        testCodec.type == CashAddress.CashAddressType.Script
+        testCodec.hashLength == 32
+        Arrays.copyOf(testCodec.hash, 32) == hash
+        codec.check(address) == Status.WRONG_PREFIX
+    }
+}
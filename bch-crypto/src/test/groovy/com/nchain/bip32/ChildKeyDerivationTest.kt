@@ -17,6 +17,7 @@
 
 package com.nchain.bip32
 
+import com.nchain.keycrypter.KeyCrypterException
 import com.nchain.params.MainNetParams
 import com.nchain.params.NetworkParameters
 import com.nchain.params.TestNet3Params
@@ -186,6 +187,106 @@ class ChildKeyDerivationTest {
         assertEquals(key3.key.pubKeyPoint, pubkey3.key.pubKeyPoint)
     }
 
+    @Test
+    fun bulkDerivationMatchesSingleDerivation() {
+        val master = HDKeyDerivation.createMasterPrivateKey("satoshi lives!".toByteArray())
+        val account = HDKeyDerivation.deriveChildKey(master, ChildNumber.ZERO_HARDENED)
+        val accountPub = account.dropPrivateBytes().dropParent()
+
+        val privChildren = HDKeyDerivation.deriveChildren(account, 5, 30, 4)
+        val pubChildren = HDKeyDerivation.deriveChildren(accountPub, 5, 30, 3)
+        assertNotNull(privChildren.privKeys)
+        assertNull(pubChildren.privKeys)
+        for (c in 0 until 30) {
+            val expected = HDKeyDerivation.deriveChildKey(account, 5 + c)
+            assertTrue(privChildren.isValid(c))
+            val key = privChildren.key(c)
+            assertEquals(expected, key)
+            assertEquals(expected.privKey, key.privKey)
+            assertArrayEquals(expected.key.pubKeyHash, privChildren.hash160(c))
+            assertArrayEquals(expected.key.pubKey, pubChildren.pubKey(c))
+            assertArrayEquals(expected.chainCode, pubChildren.key(c).chainCode)
+            assertEquals(c, pubChildren.indexOfHash160(expected.key.pubKeyHash))
+        }
+        assertEquals(-1, pubChildren.indexOfHash160(master.key.pubKeyHash))
+        assertEquals(0, HDKeyDerivation.deriveChildren(account, 0, 0).count)
+    }
+
+    @Test
+    fun rederivedPrivateKeysAreCached() {
+        val master = HDKeyDerivation.createMasterPrivateKey("satoshi lives!".toByteArray())
+        val account = HDKeyDerivation.deriveChildKey(master, ChildNumber.ZERO_HARDENED)
+        // A chain of keys without private bytes below the account: 0H/1H/2/i
+        val hardened = HDKeyDerivation.deriveChildKey(account, ChildNumber(1, true)).dropPrivateBytes()
+        val chain = HDKeyDerivation.deriveChildKey(hardened, ChildNumber(2, false)).dropPrivateBytes()
+        for (round in 0 until 2) {
+            for (i in 0 until 5) {
+                val leaf = HDKeyDerivation.deriveChildKey(chain, i).dropPrivateBytes()
+                assertTrue(leaf.key.isPubKeyOnly)
+                val expected = HDKeyDerivation.deriveChildKey(HDKeyDerivation.deriveChildKey(HDKeyDerivation.deriveChildKey(
+                        account, ChildNumber(1, true)), ChildNumber(2, false)), i)
+                assertEquals(expected.privKey, leaf.privKey)
+                assertEquals(expected.privKey, leaf.privKey)
+            }
+            // Wiping the cache from a descendant clears it on the account, later lookups derive again.
+            chain.clearDerivedPrivateKeys()
+        }
+        assertEquals(HDKeyDerivation.deriveChildKey(account, ChildNumber(1, true)).privKey, hardened.privKey)
+        assertNull(master.dropPrivateBytes().dropParent().privKey)
+    }
+
+    @Test
+    fun cachedPrivateKeysAreCheckedAgainstThePublicKey() {
+        val master = HDKeyDerivation.createMasterPrivateKey("satoshi lives!".toByteArray())
+        val account = HDKeyDerivation.deriveChildKey(master, ChildNumber.ZERO_HARDENED)
+        val chain = HDKeyDerivation.deriveChildKey(account, ChildNumber.ONE).dropPrivateBytes()
+        val leaf = HDKeyDerivation.deriveChildKey(chain, 0).dropPrivateBytes()
+        val other = HDKeyDerivation.deriveChildKey(chain, 1)
+        assertNotNull(leaf.privKey)
+        // Same ancestor and path as the cached leaf, but another public key: it must not get the leaf's secret.
+        val impostor = DeterministicKey(leaf.path, leaf.chainCode, other.key.pub, null, chain)
+        try {
+            impostor.privKey
+            fail()
+        } catch (e: KeyCrypterException) {
+            // Expected.
+        }
+        assertEquals(other.privKey, HDKeyDerivation.deriveChildKey(chain, 1).dropPrivateBytes().privKey)
+    }
+
+    @Test
+    fun concurrentHierarchyLookups() {
+        val master = HDKeyDerivation.createMasterPrivateKey("satoshi lives!".toByteArray())
+        val hierarchy = DeterministicHierarchy(master)
+        val path = listOf(ChildNumber.ZERO_HARDENED, ChildNumber.ONE, ChildNumber(7, false))
+        val threads = 8
+        val results = arrayOfNulls<DeterministicKey>(threads)
+        val next = IntArray(threads)
+        val workers = (0 until threads).map { t ->
+            Thread {
+                results[t] = hierarchy[path, true, true]
+                next[t] = hierarchy.deriveNextChild(path, true, false, false).childNumber.num()
+            }
+        }
+        workers.forEach { it.start() }
+        workers.forEach { it.join() }
+
+        val expected = HDKeyDerivation.deriveChildKey(HDKeyDerivation.deriveChildKey(
+                HDKeyDerivation.deriveChildKey(master, ChildNumber.ZERO_HARDENED), ChildNumber.ONE), ChildNumber(7, false))
+        for (key in results)
+            assertSame(results[0], key)
+        assertEquals(expected, results[0])
+        // Every thread got its own child number, and the parent's bookkeeping saw all of them.
+        assertEquals((0 until threads).toList(), next.sorted())
+        assertEquals(threads, hierarchy.getNumChildren(path))
+        assertEquals(8, hierarchy.getNumChildren(path.subList(0, 2)))
+        try {
+            hierarchy[listOf(ChildNumber.ONE), false, false]
+            fail()
+        } catch (e: IllegalArgumentException) {
+        }
+    }
+
     @Test
     fun testSerializationMainAndTestNetworks() {
         val key1 = HDKeyDerivation.createMasterPrivateKey("satoshi lives!".toByteArray())
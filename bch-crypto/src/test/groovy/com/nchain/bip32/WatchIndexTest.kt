@@ -0,0 +1,81 @@
+package com.nchain.bip32
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class WatchIndexTest {
+
+    private val master = HDKeyDerivation.createMasterPrivateKey("satoshi lives!".toByteArray())
+
+    private fun chain(account: Int): DeterministicKey {
+        val accountKey = HDKeyDerivation.deriveChildKey(master, ChildNumber(account, true))
+        return HDKeyDerivation.deriveChildKey(accountKey, ChildNumber.ZERO).dropPrivateBytes().dropParent()
+    }
+
+    private fun hash160(chain: DeterministicKey, child: Int): ByteArray =
+            HDKeyDerivation.deriveChildKey(chain, child).key.pubKeyHash
+
+    @Test
+    fun findsKeysInTheWindow() {
+        val index = WatchIndex(5)
+        val chains = (0 until 40).map { chain(it) }
+        assertEquals(0, index.addAccounts(chains.subList(0, 30), 4))
+        assertEquals(30, index.addAccount(chains[30]))
+        assertEquals(31, index.addAccounts(chains.subList(31, 40)))
+        assertEquals(40, index.accountCount)
+        assertEquals(200, index.size)
+
+        for (a in listOf(0, 17, 30, 39)) {
+            for (child in 0 until 5) {
+                val match = index.find(hash160(chains[a], child))!!
+                assertEquals(a, match.account)
+                assertEquals(child, match.childNumber.num())
+                assertEquals(HDUtils.append(chains[a].path, ChildNumber(child, false)), match.path)
+                assertArrayEquals(hash160(chains[a], child), match.key().key.pubKeyHash)
+            }
+            assertNull(index.find(hash160(chains[a], 5)))
+        }
+        assertFalse(index.contains(master.key.pubKeyHash))
+        assertFalse(index.contains(ByteArray(19)))
+    }
+
+    @Test
+    fun markUsedSlidesTheWindow() {
+        val index = WatchIndex(3)
+        val chain = chain(0)
+        val account = index.addAccount(chain)
+        assertEquals(-1, index.lastUsed(account))
+
+        // Using child 1 brings 3 and 4 into view, but not 5.
+        val match = index.markUsed(hash160(chain, 1))!!
+        assertEquals(1, match.childNumber.num())
+        assertEquals(1, index.lastUsed(account))
+        assertEquals(5, index.size)
+        assertTrue(index.contains(hash160(chain, 4)))
+        assertFalse(index.contains(hash160(chain, 5)))
+
+        // Using an older child doesn't shrink or extend anything.
+        assertEquals(0, index.markUsed(account, 0))
+        assertEquals(1, index.lastUsed(account))
+
+        assertEquals(3, index.markUsed(account, 4))
+        assertEquals(8, index.size)
+        for (child in 0 until 8)
+            assertEquals(child, index.find(hash160(chain, child))!!.childNumber.num())
+        assertNull(index.markUsed(hash160(chain, 8)))
+    }
+
+    @Test
+    fun concurrentMarkUsed() {
+        val index = WatchIndex(4)
+        val chain = chain(1)
+        val account = index.addAccount(chain)
+        val workers = (0 until 8).map { t -> Thread { index.markUsed(account, t) } }
+        workers.forEach { it.start() }
+        workers.forEach { it.join() }
+        assertEquals(7, index.lastUsed(account))
+        assertEquals(12, index.size)
+        for (child in 0 until 12)
+            assertEquals(child, index.find(hash160(chain, child))!!.childNumber.num())
+    }
+}
@@ -0,0 +1,42 @@
+package com.nchain.bip38
+
+import com.nchain.params.MainNetParams
+import org.junit.Assert.*
+import org.junit.Test
+
+class BIP38DecrypterTest {
+
+    private fun key(base58: String) = BIP38PrivateKey.fromBase58(MainNetParams, base58)
+
+    @Test
+    fun workersFollowTheMemoryBudget() {
+        assertEquals(1, BIP38Decrypter(1, 8).workers)
+        assertEquals(3, BIP38Decrypter(3 * BIP38Decrypter.SCRYPT_MEMORY + 1, 8).workers)
+        assertEquals(2, BIP38Decrypter(100 * BIP38Decrypter.SCRYPT_MEMORY, 2).workers)
+    }
+
+    @Test
+    fun decryptAll() {
+        val keys = listOf(
+                key("6PRVWUbkzzsbcVac2qwfssoUJAN1Xhrg6bNk8J7Nzm5H7kxEbn2Nh2ZoGg"),
+                key("6PRNFFkZc2NZ6dJqFfhRoFNMR9Lnyj7dYGrzdgXXVMXcxoKTePPX1dWByq"),
+                key("6PYNKZ1EAgYgmQfmNVamxyXVWHzK5s6DGhwP4J5o44cvXdoY7sRzhtpUeo"),
+                key("6PfQu77ygVyJLZjfvMLyhLMQbYnu5uguoJJ4kMCLqWwPEdfpwANVS76gTX"))
+        val decrypted = BIP38Decrypter(4 * BIP38Decrypter.SCRYPT_MEMORY, 4).decryptAll(keys, "TestingOneTwoThree")
+        assertEquals("5KN7MzqK5wt2TP1fQCYyHBtDrXdJuXbUzm4A9rKAteGu3Qi5CVR", decrypted[0]!!.dumpPrivKey(MainNetParams).toString())
+        assertNull(decrypted[1])
+        assertEquals("L44B5gGEpqEDRS9vVPz7QT35jcBG2r3CZwSwQ4fCewXAhAhqGVpP", decrypted[2]!!.dumpPrivKey(MainNetParams).toString())
+        assertEquals("5K4caxezwjGCGfnoPTZ8tMcJBLB7Jvyjv4xxeacadhq8nLisLR2", decrypted[3]!!.dumpPrivKey(MainNetParams).toString())
+    }
+
+    @Test
+    fun findPassphrase() {
+        val key = key("6PRNFFkZc2NZ6dJqFfhRoFNMR9Lnyj7dYGrzdgXXVMXcxoKTePPX1dWByq")
+        val decrypter = BIP38Decrypter(2 * BIP38Decrypter.SCRYPT_MEMORY, 2)
+        val match = decrypter.findPassphrase(key, listOf("satoshi", "Satoshi ", "Satoshi", "SATOSHI"))!!
+        assertEquals(2, match.index)
+        assertEquals("Satoshi", match.passphrase)
+        assertEquals("5HtasZ6ofTHP6HCwTqTkLDuLQisYPah7aUnSKfC7h4hMUVw2gi5", match.key.dumpPrivKey(MainNetParams).toString())
+        assertNull(decrypter.findPassphrase(key, listOf("nakamoto")))
+    }
+}
@@ -0,0 +1,75 @@
+package com.nchain.bip39
+
+import com.nchain.bip32.ChildNumber
+import com.nchain.bip32.HDKeyDerivation
+import com.nchain.tools.HEX
+import org.junit.Assert.*
+import org.junit.Test
+
+class MnemonicRecoveryTest {
+
+    private val words = MnemonicCode.ENGLISH.toMnemonic(HEX.decode("0c1e24e5917779d297e14d45f14e1a1a"))
+    private val chainPath = listOf(ChildNumber.ZERO_HARDENED, ChildNumber.ZERO)
+    private val target: ByteArray
+
+    init {
+        var key = HDKeyDerivation.createMasterPrivateKey(MnemonicCode.toSeed(words, ""))
+        for (childNumber in chainPath)
+            key = HDKeyDerivation.deriveChildKey(key, childNumber)
+        target = HDKeyDerivation.deriveChildKey(key, 3).key.pubKeyHash
+    }
+
+    private fun recover(remembered: List<String?>): MnemonicRecovery.Builder =
+            MnemonicRecovery.Builder(remembered, target, chainPath).gapLimit(5)
+
+    @Test
+    fun lostWord() {
+        val remembered = ArrayList<String?>(words)
+        remembered[4] = null
+        val recovery = recover(remembered).build()
+        assertEquals(2048, recovery.total)
+        val reports = ArrayList<MnemonicRecovery.Progress>()
+        val result = recovery.search(4, 0, object : MnemonicRecovery.ProgressListener {
+            override fun onProgress(progress: MnemonicRecovery.Progress) {
+                reports.add(progress)
+            }
+        })!!
+        assertEquals(words, result.words)
+        assertEquals(3, result.childNumber.num())
+        assertEquals(MnemonicCode.ENGLISH.wordList.indexOf(words[4]).toLong(), result.index)
+        assertFalse(reports.isEmpty())
+        for (p in reports)
+            assertTrue(p.checkpoint <= p.checked && p.checksumValid <= p.checked)
+
+        // Resuming past the phrase finds nothing, and the checkpoint then covers everything.
+        var last: MnemonicRecovery.Progress? = null
+        assertNull(recovery.search(4, result.index + 1, object : MnemonicRecovery.ProgressListener {
+            override fun onProgress(progress: MnemonicRecovery.Progress) {
+                last = progress
+            }
+        }))
+        assertEquals(recovery.total, last!!.checkpoint)
+    }
+
+    @Test
+    fun misspeltAndSwappedWords() {
+        val remembered = ArrayList<String?>(words)
+        remembered[2] = words[2].dropLast(1)
+        assertFalse(MnemonicCode.ENGLISH.wordList.contains(remembered[2]))
+        assertNotEquals(words[7], words[9])
+        remembered[7] = words[9]
+        remembered[9] = words[7]
+        val result = recover(remembered).trySwaps(true).build().search(4)!!
+        assertEquals(words, result.words)
+    }
+
+    @Test
+    fun lostWordAtUnknownPosition() {
+        val remembered = ArrayList<String?>(words)
+        remembered.removeAt(10)
+        val recovery = recover(remembered).build()
+        // The lost word could be at any of the 12 positions.
+        assertEquals(12 * 2048L, recovery.total)
+        assertEquals(words, recovery.search(4)!!.words)
+    }
+}
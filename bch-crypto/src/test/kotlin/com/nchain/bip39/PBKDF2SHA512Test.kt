@@ -0,0 +1,40 @@
+package com.nchain.bip39
+
+import com.nchain.tools.HEX
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import javax.crypto.SecretKeyFactory
+import javax.crypto.spec.PBEKeySpec
+
+class PBKDF2SHA512Test {
+
+    @Test
+    fun knownVectors() {
+        assertEquals("867f70cf1ade02cff3752599a3a53dc4af34c7a669815ae5d513554e1c8cf252c02d470a285a0501bad999bfe943c08f" +
+                "050235d7d68b1da55e63f73b60a57fce", HEX.encode(PBKDF2SHA512.derive("password", "salt", 1, 64)))
+        assertEquals("e1d9c16aa681708a45f5c7c4e215ceb66e011a2e9f0040713f18aefdb866d53cf76cab2868a39b9f7840edce4fef5a82" +
+                "be67335c77a6068e04112754f27ccf4e", HEX.encode(PBKDF2SHA512.derive("password", "salt", 2, 64)))
+    }
+
+    @Test
+    fun matchesJce() {
+        val factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA512")
+        // Short and long (hashed) passwords, derived keys shorter than, equal to and longer than one block.
+        val passwords = arrayOf("password", "abandon ".repeat(24).trim())
+        for (password in passwords) {
+            for (dkLen in intArrayOf(20, 64, 100, 200)) {
+                val expected = factory.generateSecret(
+                        PBEKeySpec(password.toCharArray(), "mnemonicTREZOR".toByteArray(), 50, dkLen * 8)).encoded
+                assertArrayEquals(expected, PBKDF2SHA512.derive(password, "mnemonicTREZOR", 50, dkLen))
+            }
+        }
+    }
+
+    @Test
+    fun bip39Seed() {
+        val words = "abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon about"
+        assertEquals("c55257c360c07c72029aebc1b53c05ed0362ada38ead3e3e9efa3708e53495531f09a6987599d18264c1e1c92f2cf1" +
+                "41630c7a3c4ab7c81b2f001698e7463b04", HEX.encode(MnemonicCode.toSeed(words.split(" "), "TREZOR")))
+    }
+}
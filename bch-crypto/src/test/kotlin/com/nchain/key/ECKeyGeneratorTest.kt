@@ -0,0 +1,60 @@
+package com.nchain.key
+
+import com.nchain.shared.Sha256Hash
+import org.junit.Assert.*
+import org.junit.Test
+import java.math.BigInteger
+import java.security.SecureRandom
+
+class ECKeyGeneratorTest {
+
+    @Test
+    fun createMatchesSingleKeyDerivation() {
+        val keys = ECKeyGenerator.create(50, true, 4)
+        assertEquals(50, keys.size)
+        for (key in keys) {
+            assertTrue(key.isCompressed)
+            assertEquals(ECKey.fromPrivate(key.privKey, true).pub, key.pub)
+        }
+        assertEquals(50, keys.map { it.privKey }.toSet().size)
+    }
+
+    @Test
+    fun createUncompressedSingleThreaded() {
+        val keys = ECKeyGenerator.create(5, SecureRandom(), false)
+        for (key in keys) {
+            assertFalse(key.isCompressed)
+            assertEquals(65, key.pubKey.size)
+            assertArrayEquals(ECKey.fromPrivate(key.privKey, false).pubKey, key.pubKey)
+            val hash = Sha256Hash.of(key.pubKey)
+            assertTrue(key.verify(hash, key.sign(hash)))
+        }
+    }
+
+    @Test
+    fun sequentialFromPrivateKey() {
+        val base = ECKey.fromPrivate(BigInteger.valueOf(1000))
+        val keys = ECKeyGenerator.sequential(base, 37, 3)
+        assertEquals(37, keys.size)
+        for (i in keys.indices) {
+            val expected = ECKey.fromPrivate(BigInteger.valueOf(1001L + i))
+            assertEquals(expected.privKey, keys[i].privKey)
+            assertArrayEquals(expected.pubKey, keys[i].pubKey)
+        }
+    }
+
+    @Test
+    fun sequentialFromPublicKey() {
+        val base = ECKey.fromPrivate(BigInteger.valueOf(77), false)
+        val keys = ECKeyGenerator.sequential(ECKey.fromPublicOnly(base.pubKey), 10, 2)
+        for (i in keys.indices) {
+            assertTrue(keys[i].isPubKeyOnly)
+            assertArrayEquals(ECKey.fromPrivate(BigInteger.valueOf(78L + i), false).pubKey, keys[i].pubKey)
+        }
+    }
+
+    @Test
+    fun emptyBatch() {
+        assertTrue(ECKeyGenerator.create(0).isEmpty())
+    }
+}
@@ -30,6 +30,7 @@ import org.junit.Test
 
 import java.math.BigInteger
 
+import com.nchain.tools.ByteUtils
 import com.nchain.tools.ByteUtils.reverseBytes
 import com.nchain.tools.HEX
 import com.nchain.shared.Sha256Hash
@@ -37,6 +38,7 @@ import com.nchain.tools.loggerFor
 import com.nchain.tools.toHex
 import org.junit.Assert.*
 import java.security.SignatureException
+import java.util.Base64
 import java.util.concurrent.Callable
 import java.util.concurrent.Executors
 import java.util.concurrent.Future
@@ -230,6 +232,63 @@ class ECKeyTest {
         assertEquals(expectedCashAddress, gotCashAddress)
     }
 
+    @Test
+    fun recoverPublicKeysMatchesVerify() {
+        val other = ECKey.create()
+        for (i in 0 until 10) {
+            val key = ECKey.create()
+            val hash = Sha256Hash.of(byteArrayOf(i.toByte()))
+            val sig = key.sign(hash)
+            val signers = ECKeySigner.recoverPublicKeys(hash.bytes, sig)
+            assertTrue(signers.size >= 2)
+            assertTrue(ECKeySigner.isSignedBy(signers, key.pubKey))
+            assertTrue(ECKeySigner.isSignedBy(signers, ECKey.fromPrivate(key.privKey, false).pubKey))
+            assertFalse(ECKeySigner.isSignedBy(signers, other.pubKey))
+            for (signer in signers)
+                assertTrue(ECKeySigner.verify(hash.bytes, sig, signer.getEncoded(true)))
+        }
+        val sig = other.sign(Sha256Hash.ZERO_HASH)
+        assertTrue(ECKeySigner.recoverPublicKeys(Sha256Hash.ZERO_HASH.bytes, ECKey.ECDSASignature(sig.r, ECKey.CURVE.n)).isEmpty())
+    }
+
+    @Test
+    fun verifyMessagesInBatch() {
+        val qtAddress = CashAddress.fromBase58(MainNetParams, "14YPSNPi6NSXnUxtPAsyJSuw3pv7AU3Cag")
+        val qtSignature = "HxNZdo6ggZ41hd3mM3gfJRqOQPZYcO8z8qdX2BwmpbF11CaOQV+QiZGGQxaYOncKoNW61oRuSMMF8udfK54XqI8="
+        val messages = ArrayList<ECKeySigner.SignedMessage>()
+        messages.add(ECKeySigner.SignedMessage(qtAddress.hash160, "hello", qtSignature))
+        messages.add(ECKeySigner.SignedMessage(qtAddress.hash160, "hello!", qtSignature))
+        messages.add(ECKeySigner.SignedMessage(qtAddress.hash160, "hello", "not a signature"))
+        for (i in 0 until 20) {
+            val key = ECKey.fromPrivate(BigInteger.valueOf(1000L + i), i % 2 == 0)
+            val message = "message $i"
+            messages.add(ECKeySigner.SignedMessage(key.pubKeyHash, message, key.signMessage(message)))
+        }
+        // Signed by a different key than the one expected.
+        messages.add(ECKeySigner.SignedMessage(messages[3].pubKeyHash, messages[4].message, messages[4].signatureBase64))
+        // r out of range: r = n with recId 0, and r = 0 with recId 2, for which x = n is on the curve.
+        messages.add(ECKeySigner.SignedMessage(qtAddress.hash160, "hello", messageSignature(31, ECKey.CURVE.n, BigInteger.ONE)))
+        messages.add(ECKeySigner.SignedMessage(qtAddress.hash160, "hello", messageSignature(33, BigInteger.ZERO, BigInteger.ONE)))
+
+        val results = ECKeySigner.verifyMessages(messages, 3)
+        assertEquals(messages.size, results.size)
+        assertTrue(results[0])
+        assertFalse(results[1])
+        assertFalse(results[2])
+        for (i in 3 until messages.size - 3)
+            assertTrue(results[i])
+        for (i in messages.size - 3 until messages.size)
+            assertFalse(results[i])
+    }
+
+    private fun messageSignature(header: Int, r: BigInteger, s: BigInteger): String {
+        val bytes = ByteArray(65)
+        bytes[0] = header.toByte()
+        System.arraycopy(ByteUtils.bigIntegerToBytes(r, 32), 0, bytes, 1, 32)
+        System.arraycopy(ByteUtils.bigIntegerToBytes(s, 32), 0, bytes, 33, 32)
+        return Base64.getEncoder().encodeToString(bytes)
+    }
+
 
     @Test
     @Throws(Exception::class)
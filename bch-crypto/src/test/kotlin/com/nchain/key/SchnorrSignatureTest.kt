@@ -0,0 +1,71 @@
+package com.nchain.key
+
+import com.nchain.shared.Sha256Hash
+import com.nchain.tools.HEX
+import org.junit.Assert.*
+import org.junit.Test
+import java.math.BigInteger
+import java.security.SecureRandom
+
+class SchnorrSignatureTest {
+
+    @Test
+    fun verifyReferenceVector() {
+        // Test vector 1 of the original bip-schnorr proposal, which the Bitcoin Cash scheme adopted.
+        val pub = HEX.decode("0279BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F81798")
+        val message = ByteArray(32)
+        val sig = HEX.decode("787A848E71043D280C50470E8E1532B2DD5D20EE912A45DBDD2BD1DFBF187EF6" +
+                "7031A98831859DC34DFFEEDDA86831842CCD0079E1F92AF177F7F22CC1DCED05")
+        assertTrue(ECKeySigner.verifySchnorr(message, sig, pub))
+        sig[63] = (sig[63].toInt() xor 1).toByte()
+        assertFalse(ECKeySigner.verifySchnorr(message, sig, pub))
+    }
+
+    @Test
+    fun signAndVerify() {
+        val key = ECKey.create()
+        for (i in 0 until 20) {
+            val hash = Sha256Hash.of(byteArrayOf(i.toByte()))
+            val sig = key.signSchnorr(hash)
+            assertTrue(key.verifySchnorr(hash, sig))
+            assertTrue(ECKeySigner.verifySchnorr(hash.bytes, sig.encode(), key.pubKey))
+            assertEquals(sig, ECKey.SchnorrSignature.decode(sig.encode()))
+            // Deterministic nonce.
+            assertEquals(sig, key.signSchnorr(hash))
+            assertFalse(key.verifySchnorr(Sha256Hash.of(byteArrayOf(i.toByte(), 1)), sig))
+            assertFalse(key.verifySchnorr(hash, ECKey.SchnorrSignature(sig.r, sig.s.add(BigInteger.ONE))))
+        }
+    }
+
+    @Test
+    fun uncompressedKeyVerifies() {
+        val key = ECKey.fromPrivate(BigInteger.valueOf(123456789), false)
+        val hash = Sha256Hash.of("uncompressed".toByteArray())
+        assertTrue(ECKeySigner.verifySchnorr(hash.bytes, key.signSchnorr(hash), key.pubKey))
+    }
+
+    @Test
+    fun rejectsOutOfRangeComponents() {
+        val key = ECKey.create()
+        val hash = Sha256Hash.of(byteArrayOf(1))
+        val sig = key.signSchnorr(hash)
+        assertFalse(key.verifySchnorr(hash, ECKey.SchnorrSignature(sig.r, sig.s.add(ECKey.CURVE.n))))
+    }
+
+    @Test
+    fun batchVerification() {
+        val random = SecureRandom()
+        val entries = (0 until 16).map {
+            val key = ECKey.create()
+            val hash = Sha256Hash.of(byteArrayOf(it.toByte()))
+            ECKeySigner.SchnorrBatchEntry(hash.bytes, key.signSchnorr(hash), key.pubKey)
+        }
+        assertTrue(ECKeySigner.verifySchnorrBatch(entries, random))
+        assertTrue(ECKeySigner.verifySchnorrBatch(emptyList(), random))
+
+        val bad = entries.toMutableList()
+        val victim = bad[5]
+        bad[5] = ECKeySigner.SchnorrBatchEntry(Sha256Hash.of(byteArrayOf(99)).bytes, victim.signature, victim.pub)
+        assertFalse(ECKeySigner.verifySchnorrBatch(bad, random))
+    }
+}
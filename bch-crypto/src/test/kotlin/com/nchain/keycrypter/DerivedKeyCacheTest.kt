@@ -0,0 +1,78 @@
+package com.nchain.keycrypter
+
+import org.junit.Assert.*
+import org.junit.Test
+import org.spongycastle.crypto.params.KeyParameter
+import java.util.concurrent.TimeUnit
+
+class DerivedKeyCacheTest {
+
+    private var now = 0L
+    private val config = ScryptConfig(KeyCrypterScrypt.randomSalt(), 1024, 8, 1)
+
+    private fun cache(maxEntries: Int = 4) = DerivedKeyCache(maxEntries, 1000, { now })
+
+    @Test
+    fun derivedKeysAreReused() {
+        val cache = cache()
+        val crypter = KeyCrypterScrypt(config, cache)
+        val key = crypter.deriveKey("password")
+        assertEquals(1, cache.size())
+        val cached = crypter.deriveKey("password")
+        assertArrayEquals(key.key, cached.key)
+        assertNotSame(key.key, cached.key)
+
+        // Callers get copies: overwriting one doesn't damage the cached key.
+        cached.key.fill(0)
+        assertArrayEquals(key.key, crypter.deriveKey("password").key)
+        assertArrayEquals(key.key, KeyCrypterScrypt(config).deriveKey("password").key)
+
+        // A different password or salt is a different entry.
+        assertFalse(key.key.contentEquals(crypter.deriveKey("Password").key))
+        val otherSalt = KeyCrypterScrypt(config.copy(salt = KeyCrypterScrypt.randomSalt()), cache)
+        assertFalse(key.key.contentEquals(otherSalt.deriveKey("password").key))
+        assertEquals(3, cache.size())
+    }
+
+    @Test
+    fun expiryAndEviction() {
+        val cache = cache(2)
+        val key = keyOf(1)
+        val password = KeyCrypterScrypt.convertToByteArray("a")
+        cache.put(password, config, key)
+        now += TimeUnit.MILLISECONDS.toNanos(999)
+        assertNotNull(cache.get(password, config))
+        now += TimeUnit.MILLISECONDS.toNanos(1)
+        assertNull(cache.get(password, config))
+        assertEquals(0, cache.size())
+
+        cache.put(KeyCrypterScrypt.convertToByteArray("a"), config, key)
+        cache.put(KeyCrypterScrypt.convertToByteArray("b"), config, key)
+        cache.get(KeyCrypterScrypt.convertToByteArray("a"), config)
+        cache.put(KeyCrypterScrypt.convertToByteArray("c"), config, key)
+        assertEquals(2, cache.size())
+        assertNotNull(cache.get(KeyCrypterScrypt.convertToByteArray("a"), config))
+        assertNull(cache.get(KeyCrypterScrypt.convertToByteArray("b"), config))
+
+        now += TimeUnit.SECONDS.toNanos(1)
+        cache.purgeExpired()
+        assertEquals(0, cache.size())
+    }
+
+    @Test
+    fun invalidation() {
+        val cache = cache()
+        val key = keyOf(2)
+        cache.put(KeyCrypterScrypt.convertToByteArray("a"), config, key)
+        cache.put(KeyCrypterScrypt.convertToByteArray("b"), config, key)
+        cache.invalidate("a", config)
+        assertNull(cache.get(KeyCrypterScrypt.convertToByteArray("a"), config))
+        assertNotNull(cache.get(KeyCrypterScrypt.convertToByteArray("b"), config))
+        cache.invalidateAll()
+        assertEquals(0, cache.size())
+        // The caller's key was copied in, so it is untouched by the wipe.
+        assertTrue(key.key.all { it == 2.toByte() })
+    }
+
+    private fun keyOf(b: Int) = KeyParameter(ByteArray(32) { b.toByte() })
+}
@@ -0,0 +1,40 @@
+package com.nchain.keycrypter
+
+import com.lambdaworks.crypto.SCrypt
+import com.nchain.tools.HEX
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+class ScryptTest {
+
+    @Test
+    fun rfc7914Vectors() {
+        assertEquals("77d6576238657b203b19ca42c18a0497f16b4844e3074ae8dfdffa3fede21442fcd0069ded0948f8326a753a0fc81f1" +
+                "7e8d3e0fb2e0d3628cf35e20c38d18906", HEX.encode(Scrypt.scrypt(ByteArray(0), ByteArray(0), 16, 1, 1, 64)))
+        assertEquals("fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b3731622eaf30d92e22a3886ff109279d9830da" +
+                "c727afb94a83ee6d8360cbdfa2cc0640",
+                HEX.encode(Scrypt.scrypt("password".toByteArray(), "NaCl".toByteArray(), 1024, 8, 16, 64, 4)))
+    }
+
+    @Test
+    fun matchesSequentialImplementation() {
+        val random = Random(1)
+        for (p in intArrayOf(1, 2, 3, 5)) {
+            val password = ByteArray(random.nextInt(40)).also { random.nextBytes(it) }
+            val salt = ByteArray(8).also { random.nextBytes(it) }
+            val expected = SCrypt.scryptJ(password, salt, 256, 4, p, 32)
+            for (parallelism in intArrayOf(1, 2, 8))
+                assertArrayEquals(expected, Scrypt.scrypt(password, salt, 256, 4, p, 32, parallelism))
+        }
+    }
+
+    @Test
+    fun keyCrypterWithParallelLanes() {
+        val salt = KeyCrypterScrypt.randomSalt()
+        val sequential = KeyCrypterScrypt.create(salt, 1024, 8, 4).deriveKey("password")
+        val parallel = KeyCrypterScrypt.create(salt, 1024, 8, 4, 4).deriveKey("password")
+        assertArrayEquals(sequential.key, parallel.key)
+    }
+}
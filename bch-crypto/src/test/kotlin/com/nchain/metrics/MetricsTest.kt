@@ -0,0 +1,121 @@
+package com.nchain.metrics
+
+import com.nchain.key.ECKey
+import com.nchain.key.ECKeySigner
+import com.nchain.shared.Sha256Hash
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+
+class MetricsTest {
+
+    @After
+    fun tearDown() {
+        Metrics.install(null)
+    }
+
+    @Test
+    fun histogramPercentiles() {
+        val histogram = LatencyHistogram()
+        assertEquals(0L, histogram.valueAtPercentile(99.0))
+        for (i in 1..1000L)
+            histogram.record(i * 1000)
+        assertEquals(1000L, histogram.count)
+        assertEquals(1000000L, histogram.max)
+        assertEquals(500500.0, histogram.mean, 0.0)
+        assertWithin(500000, histogram.valueAtPercentile(50.0))
+        assertWithin(990000, histogram.valueAtPercentile(99.0))
+        assertEquals(1000000L, histogram.valueAtPercentile(100.0))
+        histogram.reset()
+        assertEquals(0L, histogram.count)
+        assertEquals(0L, histogram.max)
+    }
+
+    @Test
+    fun histogramExactBelowSubBuckets() {
+        val histogram = LatencyHistogram()
+        histogram.record(7)
+        histogram.record(-5)
+        assertEquals(0L, histogram.valueAtPercentile(50.0))
+        assertEquals(7L, histogram.valueAtPercentile(100.0))
+    }
+
+    @Test
+    fun histogramBucketsCoverTheirValues() {
+        var value = 1L
+        while (value > 0) {
+            for (v in longArrayOf(value - 1, value, value + value / 3)) {
+                if (v < 0)
+                    continue
+                val bucket = LatencyHistogram.bucketOf(v)
+                assertTrue("$v above its bucket", v <= LatencyHistogram.highestOf(bucket))
+                assertTrue("$v below its bucket", bucket == 0 || v > LatencyHistogram.highestOf(bucket - 1))
+            }
+            value = value shl 1
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)))
+    }
+
+    @Test
+    fun disabledByDefault() {
+        val stage = Metrics.stage("test.disabled")
+        assertFalse(stage.isEnabled)
+        assertEquals(Metrics.DISABLED, stage.start())
+        assertEquals(42, stage.time { 42 })
+    }
+
+    @Test
+    fun stagesReportToTheInstalledRegistry() {
+        val stage = Metrics.stage("test.stage")
+        assertSame(stage, Metrics.stage("test.stage"))
+        val registry = SimpleMetricsRegistry()
+        Metrics.install(registry)
+        assertTrue(stage.isEnabled)
+
+        stage.time { }
+        stage.stop(stage.start(), false)
+        try {
+            stage.time<Unit> { throw IllegalStateException() }
+            fail()
+        } catch (e: IllegalStateException) {
+            // expected
+        }
+        assertTrue(stage.timeCheck { true })
+        assertFalse(stage.timeCheck { false })
+        assertEquals(5L, registry.histograms()["test.stage"]!!.count)
+        assertEquals(3L, registry.counters()["test.stage.failures"]!!.count)
+        assertTrue(registry.report().contains("test.stage"))
+
+        registry.reset()
+        assertEquals(0L, registry.histograms()["test.stage"]!!.count)
+
+        Metrics.install(null)
+        assertFalse(stage.isEnabled)
+        stage.time { }
+        assertEquals(0L, registry.histograms()["test.stage"]!!.count)
+    }
+
+    @Test
+    fun signerStages() {
+        val registry = SimpleMetricsRegistry()
+        Metrics.install(registry)
+        val key = ECKey.create()
+        val hash = Sha256Hash.of(byteArrayOf(1))
+        val signature = key.sign(hash)
+        assertTrue(ECKeySigner.verify(hash.bytes, signature, key.pubKey))
+        assertFalse(ECKeySigner.verify(Sha256Hash.of(byteArrayOf(2)).bytes, signature, key.pubKey))
+        val schnorr = ECKeySigner.signSchnorr(hash, key.privKey)
+        assertTrue(ECKeySigner.verifySchnorr(hash.bytes, schnorr, key.pubKey))
+
+        val histograms = registry.histograms()
+        assertEquals(1L, histograms["ecdsa.sign"]!!.count)
+        assertEquals(2L, histograms["ecdsa.verify"]!!.count)
+        assertEquals(1L, registry.counters()["ecdsa.verify.failures"]!!.count)
+        assertEquals(1L, histograms["schnorr.sign"]!!.count)
+        assertEquals(1L, histograms["schnorr.verify"]!!.count)
+    }
+
+    private fun assertWithin(expected: Long, actual: Long) {
+        assertTrue("$actual is not within 4% of $expected", Math.abs(actual - expected) <= expected * 4 / 100)
+    }
+}
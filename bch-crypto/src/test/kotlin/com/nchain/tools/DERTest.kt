@@ -0,0 +1,72 @@
+package com.nchain.tools
+
+import com.nchain.key.ECKey
+import com.nchain.shared.Sha256Hash
+import com.nchain.shared.VerificationException
+import org.junit.Assert.*
+import org.junit.Test
+import java.math.BigInteger
+
+class DERTest {
+
+    // High S signature from Bitcoin ABC's script_tests.json, with its SIGHASH_ALL byte.
+    private val highS = HEX.decode("304502203e4516da7253cf068effec6b95c41221c0cf3a8e6ccb8cbf1725b562e9afde2c022100" +
+            "ab1e3da73d67e32045a20e0b999e049978ea8d6ee5480d485fcf2ce0d03b2ef001")
+
+    @Test
+    fun encodeRoundTrip() {
+        val key = ECKey.create()
+        for (i in 0 until 50) {
+            val sig = key.sign(Sha256Hash.of(byteArrayOf(i.toByte())))
+            val der = DER.encode(sig)
+            assertEquals(sig, DER.decodeSignature(der))
+            val withHashType = der.copyOf(der.size + 1)
+            withHashType[der.size] = 1
+            assertTrue(DER.isStrictlyEncoded(withHashType))
+            assertEquals(sig, DER.decodeStrict(withHashType))
+        }
+    }
+
+    @Test
+    fun encodeSmallValues() {
+        assertArrayEquals(HEX.decode("3006020100020180"), DER.encode(ECKey.ECDSASignature(BigInteger.ZERO, BigInteger.valueOf(-128))))
+        assertArrayEquals(HEX.decode("300702010102020080"), DER.encode(ECKey.ECDSASignature(BigInteger.ONE, BigInteger.valueOf(128))))
+    }
+
+    @Test
+    fun decodeStrict() {
+        val sig = DER.decodeStrict(highS)!!
+        assertEquals(BigInteger("3e4516da7253cf068effec6b95c41221c0cf3a8e6ccb8cbf1725b562e9afde2c", 16), sig.r)
+        assertEquals(BigInteger("ab1e3da73d67e32045a20e0b999e049978ea8d6ee5480d485fcf2ce0d03b2ef0", 16), sig.s)
+        assertFalse(sig.isCanonical)
+    }
+
+    @Test
+    fun rejectsNonStrictEncodings() {
+        // Wrong total length, negative R, padded R, missing hashtype byte, long form sequence length.
+        val encodings = arrayOf(
+                "300502010102010101",
+                "300602018102010101",
+                "30070202000102010101",
+                "3006020101020101",
+                "3081060201010201010101")
+        for (hex in encodings) {
+            val bytes = HEX.decode(hex)
+            assertFalse(hex, DER.isStrictlyEncoded(bytes))
+            assertNull(hex, DER.decodeStrict(bytes))
+        }
+    }
+
+    @Test
+    fun laxDecoding() {
+        // Long form lengths, zero padding and a negative S are all tolerated, the values are read as unsigned.
+        val sig = DER.decodeSignature(HEX.decode("30810902820002000102018101"))
+        assertEquals(BigInteger.ONE, sig.r)
+        assertEquals(BigInteger.valueOf(0x81), sig.s)
+    }
+
+    @Test(expected = VerificationException.SignatureFormatError::class)
+    fun laxDecodingRejectsTruncated() {
+        DER.decodeSignature(HEX.decode("3006020101020201"))
+    }
+}
@@ -0,0 +1,99 @@
+package com.nchain.tools
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.StringReader
+import java.io.StringWriter
+import java.nio.ByteBuffer
+import java.util.Random
+
+class HEXTest {
+
+    private val bytes = ByteArray(20000).also { Random(16).nextBytes(it) }
+
+    @Test
+    fun roundTrip() {
+        assertEquals("00017f80ff", HEX.encode(byteArrayOf(0, 1, 0x7f, -0x80, -1)))
+        assertArrayEquals(byteArrayOf(0, 1, 0x7f, -0x80, -1), HEX.decode("00017F80fF"))
+        assertEquals("", HEX.encode(ByteArray(0)))
+        val hex = HEX.encode(bytes)
+        assertEquals(java.math.BigInteger(1, bytes).toString(16).padStart(hex.length, '0'), hex)
+        assertArrayEquals(bytes, HEX.decode(hex))
+        assertArrayEquals(bytes, HEX.decode(hex.toUpperCase()))
+    }
+
+    @Test
+    fun rejectsInvalidInput() {
+        for (hex in listOf("0", "abc", "0g", "g0", "0 ", "é0")) {
+            try {
+                HEX.decode(hex)
+                fail(hex)
+            } catch (e: IllegalArgumentException) {
+            }
+        }
+    }
+
+    @Test
+    fun callerBuffers() {
+        val chars = CharArray(14)
+        assertEquals(6, HEX.encode(byteArrayOf(1, 2, 3, 4, 5), 1, 3, chars, 4))
+        assertEquals("020304", String(chars, 4, 6))
+        val out = ByteArray(5)
+        assertEquals(3, HEX.decode(String(chars), 4, 6, out, 2))
+        assertArrayEquals(byteArrayOf(0, 0, 2, 3, 4), out)
+
+        // Decoding ASCII in place.
+        val ascii = "deadBEEF".toByteArray()
+        assertEquals(4, HEX.decode(ascii, 0, ascii.size, ascii, 0))
+        assertArrayEquals(HEX.decode("deadbeef"), ascii.copyOf(4))
+
+        val appended = StringBuilder("x")
+        HEX.encode(bytes, 0, bytes.size, appended)
+        assertEquals("x" + HEX.encode(bytes), appended.toString())
+    }
+
+    @Test
+    fun buffers() {
+        val input = ByteBuffer.wrap("0102030".toByteArray())
+        val output = ByteBuffer.allocate(2)
+        assertEquals(2, HEX.decode(input, output))
+        assertEquals(4, input.position())
+        output.clear()
+        assertEquals(1, HEX.decode(input, output))
+        assertEquals(1, input.remaining())
+        assertEquals(3, output.array()[0].toInt())
+    }
+
+    @Test
+    fun streams() {
+        val hex = StringWriter()
+        assertEquals(bytes.size.toLong(), HEX.encode(ByteArrayInputStream(bytes), hex))
+        assertEquals(HEX.encode(bytes), hex.toString())
+        val decoded = ByteArrayOutputStream()
+        assertEquals(bytes.size.toLong(), HEX.decode(StringReader(hex.toString()), decoded))
+        assertArrayEquals(bytes, decoded.toByteArray())
+
+        // Chunks of odd length split bytes between calls.
+        val decoder = HEX.Decoder()
+        val chars = hex.toString().toCharArray()
+        val out = ByteArray(bytes.size)
+        var written = 0
+        var offset = 0
+        while (offset < chars.size) {
+            val n = Math.min(777, chars.size - offset)
+            written += decoder.update(chars, offset, n, out, written)
+            offset += n
+        }
+        decoder.finish()
+        assertArrayEquals(bytes, out)
+
+        decoder.update("abc".toCharArray(), 0, 3, out, 0)
+        try {
+            decoder.finish()
+            fail()
+        } catch (e: IllegalArgumentException) {
+        }
+    }
+}
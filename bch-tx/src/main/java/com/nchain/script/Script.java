@@ -26,6 +26,7 @@ import com.nchain.address.CashAddress;
 import com.nchain.bitcoinkt.core.TransactionSignatureService;
 import com.nchain.key.ECKey;
 import com.nchain.key.ECKeySigner;
+import com.nchain.metrics.Metrics;
 import com.nchain.script.ScriptBuilder;
 import com.nchain.script.ScriptChunk;
 import com.nchain.script.ScriptError;
@@ -34,6 +35,7 @@ import com.nchain.shared.VerificationException;
 import com.nchain.params.NetworkParameters;
 import com.nchain.shared.Sha256Hash;
 import com.nchain.tools.ByteUtils;
+import com.nchain.tools.DER;
 import com.nchain.tools.HEX;
 import com.nchain.tools.UnsafeByteArrayOutputStream;
 import com.nchain.tx.Coin;
@@ -44,6 +46,7 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.digests.RIPEMD160Digest;
+import org.spongycastle.math.ec.ECPoint;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -111,7 +114,8 @@ public class Script {
         SIGHASH_FORKID,
         REPLAY_PROTECTION,
         MONOLITH_OPCODES, // May 15, 2018 Hard fork
-        PUBKEYTYPE // June 26, 29018.
+        PUBKEYTYPE, // June 26, 29018.
+        SCHNORR // Accept 64 byte Schnorr signatures in CHECKSIG (May 15, 2019 Hard fork)
     }
 
     // The outcome of the script execution is affected by the Verification flags used. The more verifications are
@@ -132,6 +136,9 @@ public class Script {
     public static final EnumSet<VerifyFlag> ALL_VERIFY_FLAGS = EnumSet.allOf(VerifyFlag.class);
 
     private static final Logger log = LoggerFactory.getLogger(Script.class);
+
+    private static final Metrics.Stage VERIFY = Metrics.stage("script.verify");
+    private static final Metrics.Stage CHECKSIG = Metrics.stage("script.checksig");
     public static final long MAX_SCRIPT_ELEMENT_SIZE = 520;  // bytes
     public static final int DEFAULT_MAX_NUM_ELEMENT_SIZE = 4;
     public static final int SIG_SIZE = 75;
@@ -601,8 +608,10 @@ public class Script {
         checkArgument(chunks.get(0).isOpCode()); // P2SH scriptSig
         int numKeys = Script.decodeFromOpN(chunks.get(chunks.size() - 2).getOpcode());
         TransactionSignature signature = TransactionSignature.decodeFromBitcoin(signatureBytes, true);
+        // Recover the possible signers once instead of verifying the signature against each key in turn.
+        List<ECPoint> signers = ECKeySigner.recoverPublicKeys(hash.getBytes(), signature.getSignature());
         for (int i = 0 ; i < numKeys ; i++) {
-            if (ECKey.fromPublicOnly(chunks.get(i + 1).getData()).verify(hash, signature.getSignature())) {
+            if (ECKeySigner.isSignedBy(signers, chunks.get(i + 1).getData())) {
                 return i;
             }
         }
@@ -1009,6 +1018,23 @@ public class Script {
      */
     public static void executeScript(Transaction txContainingThis, long index,
                                      Script script, LinkedList<byte[]> stack, Coin value, Set<VerifyFlag> verifyFlags, ScriptStateListener scriptStateListener) throws ScriptException {
+        executeScript(txContainingThis, index, script, stack, value, verifyFlags, scriptStateListener, ScriptProfiler.start(script));
+    }
+
+    private static void executeScript(Transaction txContainingThis, long index,
+                                      Script script, LinkedList<byte[]> stack, Coin value, Set<VerifyFlag> verifyFlags,
+                                      ScriptStateListener scriptStateListener, ScriptProfiler.Run profilerRun) throws ScriptException {
+        try {
+            interpret(txContainingThis, index, script, stack, value, verifyFlags, scriptStateListener, profilerRun);
+        } finally {
+            if (profilerRun != null)
+                profilerRun.finish();
+        }
+    }
+
+    private static void interpret(Transaction txContainingThis, long index,
+                                  Script script, LinkedList<byte[]> stack, Coin value, Set<VerifyFlag> verifyFlags,
+                                  ScriptStateListener scriptStateListener, ScriptProfiler.Run profilerRun) throws ScriptException {
         int opCount = 0;
         int lastCodeSepLocation = 0;
 
@@ -1030,6 +1056,9 @@ public class Script {
         }
 
         for (ScriptChunk chunk : script.chunks) {
+            if (profilerRun != null)
+                profilerRun.step(chunk.getOpcode());
+
             boolean shouldExecute = !ifStack.contains(false);
 
             if (scriptStateListener != null) {
@@ -1367,13 +1396,14 @@ public class Script {
                         stack.addLast(ByteUtils.getEMPTY_BYTE_ARRAY());
                     } else {
                         int signBit = 0x00;
-                        if (minimalNumBytes.length > 0) {
-                            signBit = minimalNumBytes[minimalNumBytes.length - 1] & 0x80;
-                            minimalNumBytes[minimalNumBytes.length - 1] &= 0x7f;
-                        }
                         int minimalBytesToCopy = minimalNumBytes.length > numSize ? numSize : minimalNumBytes.length;
                         byte[] expandedNumBytes = new byte[numSize]; //initialized to all zeroes
                         System.arraycopy(minimalNumBytes, 0, expandedNumBytes, 0, minimalBytesToCopy);
+                        // The sign bit is cleared in the copy: minimalNumBytes may be the pushed data of the script.
+                        if (minimalNumBytes.length > 0) {
+                            signBit = minimalNumBytes[minimalNumBytes.length - 1] & 0x80;
+                            expandedNumBytes[minimalNumBytes.length - 1] &= 0x7f;
+                        }
                         expandedNumBytes[expandedNumBytes.length - 1] = (byte) signBit;
                         stack.addLast(expandedNumBytes);
                     }
@@ -1417,21 +1447,23 @@ public class Script {
                         throw new ScriptException(ScriptError.SCRIPT_ER_OPERAND_SIZE, "invalid operand size");
                     }
 
-                    // To avoid allocating, we modify vch1 in place.
+                    // Not in place: stack items can be the pushed data of a script, which may be shared between
+                    // threads, or another item on the stack after OP_DUP.
+                    byte[] vchOut = new byte[vch1.length];
                     switch (opcode) {
                         case OP_AND:
                             for (int i = 0; i < vch1.length; i++) {
-                                vch1[i] &= vch2[i];
+                                vchOut[i] = (byte) (vch1[i] & vch2[i]);
                             }
                             break;
                         case OP_OR:
                             for (int i = 0; i < vch1.length; i++) {
-                                vch1[i] |= vch2[i];
+                                vchOut[i] = (byte) (vch1[i] | vch2[i]);
                             }
                             break;
                         case OP_XOR:
                             for (int i = 0; i < vch1.length; i++) {
-                                vch1[i] ^= vch2[i];
+                                vchOut[i] = (byte) (vch1[i] ^ vch2[i]);
                             }
                             break;
                         default:
@@ -1441,8 +1473,8 @@ public class Script {
                     // And pop vch2.
                     //popstack(stack);
 
-                    //put vch1 back on stack
-                    stack.addLast(vch1);
+                    //put the result on the stack
+                    stack.addLast(vchOut);
 
                     break;
 
@@ -1901,9 +1933,6 @@ public class Script {
     private static void executeCheckSig(Transaction txContainingThis, int index, Script script, LinkedList<byte[]> stack,
                                         int lastCodeSepLocation, int opcode, Coin value,
                                         Set<VerifyFlag> verifyFlags) {
-        final boolean requireCanonical = verifyFlags.contains(VerifyFlag.STRICTENC)
-            || verifyFlags.contains(VerifyFlag.DERSIG)
-            || verifyFlags.contains(VerifyFlag.LOW_S);
         if (stack.size() < 2)
             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "the operation was invalid given the contents of the stack");
         byte[] pubKey = stack.pollLast();
@@ -1920,6 +1949,29 @@ public class Script {
         }
         connectedScript = removeAllInstancesOf(connectedScript, outStream.toByteArray());
 
+        long start = CHECKSIG.start();
+        boolean sigValid = false;
+        try {
+            sigValid = checkSignature(txContainingThis, index, connectedScript, sigBytes, pubKey, value, verifyFlags);
+        } finally {
+            CHECKSIG.stop(start, sigValid);
+        }
+
+        // NULLFAIL Verification:
+        // If the NULLFAIL flag is active and the result of the Signature Verification is FALSE, we check
+        // that the signature is an empty Array...
+        if (!sigValid && verifyFlags.contains(VerifyFlag.NULLFAIL) && sigBytes.length > 0)
+            throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_NULLFAIL, "NULLFAIL-compliant");
+
+        if (opcode == OP_CHECKSIG)
+            stack.add(sigValid ? new byte[] {1} : new byte[] {});
+        else if (opcode == OP_CHECKSIGVERIFY)
+            if (!sigValid)
+                throw new ScriptException("Script failed OP_CHECKSIGVERIFY");
+    }
+
+    private static boolean checkSignature(Transaction txContainingThis, int index, byte[] connectedScript,
+                                          byte[] sigBytes, byte[] pubKey, Coin value, Set<VerifyFlag> verifyFlags) {
         // TODO: Use int for indexes everywhere, we can't have that many inputs/outputs
         boolean sigValid = false;
 
@@ -1931,50 +1983,49 @@ public class Script {
 
             if (sigBytes.length > 0) {
 
-                // We check the signature Encoding.
+                // With the SCHNORR flag a 65 byte signature (64 + sighash byte) is always a Schnorr signature; DER
+                // encoded ECDSA signatures never have that length once the flag is active.
+                final boolean isSchnorr = isSchnorrSignature(sigBytes, verifyFlags);
+
+                // We check the signature Encoding. Under the strict encoding flags this also decodes the signature.
                 // In case of failed verification, and Exception is thrown
-                checkSignatureEncoding(sigBytes, verifyFlags);
+                TransactionSignature sig = checkSignatureEncoding(sigBytes, verifyFlags);
 
                 // We check the Public Key encoding and compression.
                 // In case of failed verification, and Exception is thrown
                 checkPubKeyEncoding(pubKey, verifyFlags);
 
-                // Signature is well-structured...
-                TransactionSignature sig = TransactionSignature.decodeFromBitcoin(sigBytes, requireCanonical,
-                        verifyFlags.contains(VerifyFlag.LOW_S));
+                if (isSchnorr) {
+                    int sighashFlags = sigBytes[sigBytes.length - 1] & 0xff;
+                    Sha256Hash hash = (sighashFlags & Transaction.SigHash.FORKID.getValue()) != 0 ?
+                            TransactionSignatureService.INSTANCE.hashForSignatureWitness(txContainingThis, index, connectedScript, value, TransactionSignature.sigHashMode(sighashFlags), (sighashFlags & Transaction.SigHash.ANYONECANPAY.getValue()) != 0, verifyFlags) :
+                            TransactionSignatureService.INSTANCE.hashForSignature(txContainingThis, index, connectedScript, (byte) sighashFlags);
 
-                // TODO: Should check hash type is known
-                Sha256Hash hash = sig.useForkId() ?
-                        TransactionSignatureService.INSTANCE.hashForSignatureWitness(txContainingThis, index, connectedScript, value, sig.sigHashMode(), sig.anyoneCanPay(), verifyFlags) :
-                        TransactionSignatureService.INSTANCE.hashForSignature(txContainingThis, index, connectedScript, (byte) sig.getSighashFlags());
+                    sigValid = ECKeySigner.verifySchnorr(hash.getBytes(), ECKey.SchnorrSignature.decode(sigBytes), pubKey);
+                } else {
+                    // Signature is well-structured...
+                    if (sig == null)
+                        sig = TransactionSignature.decodeFromBitcoin(sigBytes, false, false);
 
-                sigValid = ECKeySigner.verify(hash.getBytes(), sig.getSignature(), pubKey);
+                    // TODO: Should check hash type is known
+                    Sha256Hash hash = sig.useForkId() ?
+                            TransactionSignatureService.INSTANCE.hashForSignatureWitness(txContainingThis, index, connectedScript, value, sig.sigHashMode(), sig.anyoneCanPay(), verifyFlags) :
+                            TransactionSignatureService.INSTANCE.hashForSignature(txContainingThis, index, connectedScript, (byte) sig.getSighashFlags());
+
+                    sigValid = ECKeySigner.verify(hash.getBytes(), sig.getSignature(), pubKey);
+                }
 
             }
 
         } catch (VerificationException.SignatureFormatError e) {
             sigValid = false;
         }
-
-        // NULLFAIL Verification:
-        // If the NULLFAIL flag is active and the result of the Signature Verification is FALSE, we check
-        // that the signature is an empty Array...
-        if (!sigValid && verifyFlags.contains(VerifyFlag.NULLFAIL) && sigBytes.length > 0)
-            throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_NULLFAIL, "NULLFAIL-compliant");
-
-        if (opcode == OP_CHECKSIG)
-            stack.add(sigValid ? new byte[] {1} : new byte[] {});
-        else if (opcode == OP_CHECKSIGVERIFY)
-            if (!sigValid)
-                throw new ScriptException("Script failed OP_CHECKSIGVERIFY");
+        return sigValid;
     }
 
     private static int executeMultiSig(Transaction txContainingThis, int index, Script script, LinkedList<byte[]> stack,
                                        int opCount, int lastCodeSepLocation, int opcode, Coin value,
                                        Set<VerifyFlag> verifyFlags) {
-        final boolean requireCanonical = verifyFlags.contains(VerifyFlag.STRICTENC)
-            || verifyFlags.contains(VerifyFlag.DERSIG)
-            || verifyFlags.contains(VerifyFlag.LOW_S);
         final boolean enforceMinimal = verifyFlags.contains(VerifyFlag.MINIMALDATA);
 
         // We have on the Stack the number of Signatures, followed by the
@@ -1996,11 +2047,9 @@ public class Script {
         if (stack.size() < pubKeyCount + 1)
             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "the operation was invalid given the contents of the stack");
 
-        LinkedList<byte[]> pubkeys = new LinkedList<byte[]>();
-        for (int i = 0; i < pubKeyCount; i++) {
-            byte[] pubKey = stack.pollLast();
-            pubkeys.add(pubKey);
-        }
+        byte[][] pubkeys = new byte[pubKeyCount][];
+        for (int i = 0; i < pubKeyCount; i++)
+            pubkeys[i] = stack.pollLast();
 
         int sigCount = castToBigInteger(stack.pollLast(), enforceMinimal).intValue();
         if (sigCount < 0 || sigCount > pubKeyCount)
@@ -2008,11 +2057,9 @@ public class Script {
         if (stack.size() < sigCount + 1)
             throw new ScriptException(ScriptError.SCRIPT_ERR_INVALID_STACK_OPERATION, "the operation was invalid given the contents of the stack");
 
-        LinkedList<byte[]> sigs = new LinkedList<byte[]>();
-        for (int i = 0; i < sigCount; i++) {
-            byte[] sig = stack.pollLast();
-            sigs.add(sig);
-        }
+        byte[][] sigs = new byte[sigCount][];
+        for (int i = 0; i < sigCount; i++)
+            sigs[i] = stack.pollLast();
 
         byte[] prog = script.getProgram();
         byte[] connectedScript = Arrays.copyOfRange(prog, lastCodeSepLocation, prog.length);
@@ -2029,46 +2076,58 @@ public class Script {
 
         boolean valid = true;
 
-        // we copy the Signature array into another List, and we use this copy to check the
-        // Multisignature
-        // NOTE this is important, since later on we need the original List of signatures to
-        // perform other verifications, like NULLFAIL
-
-        LinkedList<byte[]> sigsCopy = new LinkedList<byte[]>(sigs);
-
-        while (! sigsCopy.isEmpty()) {
-            byte[] pubKey = pubkeys.pollFirst();
-            // We could reasonably move this out of the loop, but because signature verification is significantly
-            // more expensive than hashing, its not a big deal.
-            TransactionSignature sig;
+        // Signatures and keys are matched in order: each key is tried against the first signature that hasn't been
+        // matched yet, and is discarded if it didn't make it. Rather than verifying the signature against every key it
+        // is tried with, the keys able to produce it are recovered the first time the signature is tried, and each
+        // key is then just compared against them. That's one recovery per signature, however the keys are ordered.
+        // NOTE: the original signatures are kept untouched, since later on we need them to perform other
+        // verifications, like NULLFAIL
+        int sigIndex = 0;
+        int keyIndex = 0;
+        List<ECPoint> signers = null;
+
+        while (sigIndex < sigCount) {
+            byte[] pubKey = pubkeys[keyIndex++];
+            byte[] sigBytes = sigs[sigIndex];
             try {
 
-                if (sigsCopy.getFirst().length > 0) {
+                if (sigBytes.length > 0) {
 
-                    // We check the signature Encoding.
-                    // In case of failed verification, and Exception is thrown
-                    checkSignatureEncoding(sigsCopy.getFirst(), verifyFlags);
+                    // Schnorr signatures are not accepted by CHECKMULTISIG; with the SCHNORR flag active a 65 byte
+                    // signature can't be a valid ECDSA one either.
+                    if (isSchnorrSignature(sigBytes, verifyFlags))
+                        throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_BADLENGTH, "Schnorr signature used in CHECKMULTISIG");
+
+                    // We check the signature Encoding. Under the strict encoding flags this also decodes the signature.
+                    // In case of failed verification, and Exception is thrown. Once the signers of the signature are
+                    // known its encoding has already passed, so there is no need to check it again.
+                    TransactionSignature sig = signers == null ? checkSignatureEncoding(sigBytes, verifyFlags) : null;
 
                     // We check the Public Key encoding and compression.
                     // In case of failed verification, and Exception is thrown
                     checkPubKeyEncoding(pubKey, verifyFlags);
 
-
-                    // Signature is well-structured, but it can still be Empty, so we control that situations...
-                    if (sigsCopy.getFirst().length > 0) {
-                        sig = TransactionSignature.decodeFromBitcoin(sigsCopy.getFirst(), requireCanonical);
+                    // Signature is well-structured...
+                    if (signers == null) {
+                        // Stays empty if the signature can't be decoded, so it doesn't match any key.
+                        signers = Collections.emptyList();
+                        if (sig == null)
+                            sig = TransactionSignature.decodeFromBitcoin(sigBytes, false, false);
                         Sha256Hash hash = sig.useForkId() ?
                                 TransactionSignatureService.INSTANCE.hashForSignatureWitness(txContainingThis, index, connectedScript, value, sig.sigHashMode(), sig.anyoneCanPay(), verifyFlags) :
                                 TransactionSignatureService.INSTANCE.hashForSignature(txContainingThis, index, connectedScript, (byte) sig.getSighashFlags());
-                        if (ECKeySigner.verify(hash.getBytes(), sig.getSignature(), pubKey))
-                            sigsCopy.pollFirst();
+                        signers = ECKeySigner.recoverPublicKeys(hash.getBytes(), sig.getSignature());
+                    }
+                    if (ECKeySigner.isSignedBy(signers, pubKey)) {
+                        sigIndex++;
+                        signers = null;
                     }
                 }
 
             } catch (VerificationException.SignatureFormatError e) {
                 // the sig failed to verify against the pubkey, but that's ok, lets move on to the next one
             }
-            if (sigsCopy.size() > pubkeys.size()) {
+            if (sigCount - sigIndex > pubKeyCount - keyIndex) {
                 valid = false;
                 break;
             }
@@ -2099,7 +2158,6 @@ public class Script {
      * Verifies that this script (interpreted as a scriptSig) correctly spends the given scriptPubKey, enabling all
      * validation rules.
      * @param txContainingThis The transaction in which this input scriptSig resides.
-     *                         Accessing txContainingThis from another thread while this method runs results in undefined behavior.
      * @param scriptSigIndex The index in txContainingThis of the scriptSig (note: NOT the index of the scriptPubKey).
      * @param scriptPubKey The connected scriptPubKey containing the conditions needed to claim the value.
      * @deprecated Use {@link #correctlySpends(org.bitcoinj.core.Transaction, long, com.nchain.script.Script, Set)}
@@ -2119,7 +2177,6 @@ public class Script {
     /**
      * Verifies that this script (interpreted as a scriptSig) correctly spends the given scriptPubKey.
      * @param txContainingThis The transaction in which this input scriptSig resides.
-     *                         Accessing txContainingThis from another thread while this method runs results in undefined behavior.
      * @param scriptSigIndex The index in txContainingThis of the scriptSig (note: NOT the index of the scriptPubKey).
      * @param scriptPubKey The connected scriptPubKey containing the conditions needed to claim the value.
      * @param verifyFlags Each flag enables one validation rule. If in doubt, use {@link #correctlySpends(Transaction, long, Script)}
@@ -2127,22 +2184,30 @@ public class Script {
      */
     public void correctlySpends(Transaction txContainingThis, long scriptSigIndex, Script scriptPubKey, Coin value,
                                 Set<VerifyFlag> verifyFlags) {
-        // Clone the transaction because executing the script involves editing it, and if we die, we'll leave
-        // the tx half broken (also it's not so thread safe to work on it directly.
-        // TODO: make the transaxtion inmutable?
-//        try {
-//            txContainingThis = txContainingThis.getParams().getDefaultSerializer().makeTransaction(txContainingThis.bitcoinSerialize());
-//        } catch (ProtocolException e) {
-//            throw new RuntimeException(e);   // Should not happen unless we were given a totally broken transaction.
-//        }
+        long start = VERIFY.start();
+        boolean verified = false;
+        try {
+            verifySpend(txContainingThis, scriptSigIndex, scriptPubKey, value, verifyFlags);
+            verified = true;
+        } finally {
+            VERIFY.stop(start, verified);
+        }
+    }
+
+    private void verifySpend(Transaction txContainingThis, long scriptSigIndex, Script scriptPubKey, Coin value,
+                             Set<VerifyFlag> verifyFlags) {
+        // Transactions are immutable, so the scripts run against txContainingThis itself rather than a clone.
 
         // We check the size of the Script:
         if (getProgram().length > 10000 || scriptPubKey.getProgram().length > 10000)
             throw new ScriptException(ScriptError.SCRIPT_ERR_SCRIPT_SIZE, "the script is too large");
 
-        // In case FORKID is enabled, then we also force the STRICTENC flag
-        if (verifyFlags.contains(VerifyFlag.SIGHASH_FORKID))
+        // In case FORKID is enabled, then we also force the STRICTENC flag. On a copy, as the caller's set may be
+        // shared with other verifying threads.
+        if (verifyFlags.contains(VerifyFlag.SIGHASH_FORKID) && !verifyFlags.contains(VerifyFlag.STRICTENC)) {
+            verifyFlags = EnumSet.copyOf(verifyFlags);
             verifyFlags.add(VerifyFlag.STRICTENC);
+        }
 
         // In case the "SIGPUSHONLY" flag is enmabled, we check that the script is composed of ONLY
         // PUSH operations...
@@ -2152,14 +2217,16 @@ public class Script {
 
         LinkedList<byte[]> stack = new LinkedList<byte[]>();
         LinkedList<byte[]> p2shStack = null;
+        // The scriptSig and the redeem script are profiled as part of the scriptPubKey they spend.
+        ScriptProfiler.Run profilerRun = ScriptProfiler.start(scriptPubKey);
 
-        executeScript(txContainingThis, scriptSigIndex, this, stack, value, verifyFlags);
+        executeScript(txContainingThis, scriptSigIndex, this, stack, value, verifyFlags, null, profilerRun);
 //        executeDebugScript(txContainingThis, scriptSigIndex, this, stack, value, verifyFlags, new InteractiveScriptStateListener());
 
         if (verifyFlags.contains(VerifyFlag.P2SH))
             p2shStack = new LinkedList<byte[]>(stack);
 
-        executeScript(txContainingThis, scriptSigIndex, scriptPubKey, stack, value, verifyFlags);
+        executeScript(txContainingThis, scriptSigIndex, scriptPubKey, stack, value, verifyFlags, null, profilerRun);
 //        executeDebugScript(txContainingThis, scriptSigIndex, scriptPubKey, stack, value, verifyFlags, new InteractiveScriptStateListener());
 
         if (stack.isEmpty())
@@ -2190,7 +2257,7 @@ public class Script {
             byte[] scriptPubKeyBytes = p2shStack.pollLast();
             Script scriptPubKeyP2SH = new Script(scriptPubKeyBytes);
 
-            executeScript(txContainingThis, scriptSigIndex, scriptPubKeyP2SH, p2shStack, value, verifyFlags);
+            executeScript(txContainingThis, scriptSigIndex, scriptPubKeyP2SH, p2shStack, value, verifyFlags, null, profilerRun);
             //executeDebugScript(txContainingThis, scriptSigIndex, scriptPubKeyP2SH, p2shStack, value, verifyFlags, ScriptLogManager.getListener(ScriptLogListener.ScriptType.p2sh));
 
             if (p2shStack.isEmpty())
@@ -2240,73 +2307,68 @@ public class Script {
      * different factors, and we need info about which ones has explicity failed. so instead of returning a
      * boolean (which is not specific enough), we throw a more specific exception in case of failure.
      *
+     * When the flags require a strict encoding the signature is decoded while its encoding is validated, and the
+     * decoded signature is returned so the caller doesn't need to parse the bytes a second time. Otherwise (and for
+     * Schnorr signatures) null is returned.
+     *
      * @throws              Exception in case signature is not valid
      */
-    private static void checkSignatureEncoding(byte[] sigBytes, Set<VerifyFlag> flags) throws VerificationException.SignatureFormatError {
+    private static TransactionSignature checkSignatureEncoding(byte[] sigBytes, Set<VerifyFlag> flags) throws VerificationException.SignatureFormatError {
 
         // NOTE:
         // When the "STRICTENC" flag is active, we need to check if the Signature encoding is right, and
-        // different errors might be thrown: SIG_DER, SIG_HASHTYPE and FORID.
+        // different errors might be thrown: SIG_DER, SIG_HIGH_S, SIG_HASHTYPE and FORID.
         //  - SIG_DER: The signature is not DER-encoded
+        //  - SIG_HIGH_S: The S value is above half the curve order
         //  - SIGHASH_TYPE: The SIGHASH (last byte in the signature) is wrong.
         //  - FORKID:
 
-        boolean derEncodingOK = true;
-        boolean sighashTypeOK = true;
-        boolean forkIdOK = true;
-        String errMsg = null;
+        TransactionSignature sig = null;
 
         // If the flags specify STRICTENC, DERSIG or LOW_S, we check if the Signature is CANONICAL...
-        if ((flags.contains(VerifyFlag.STRICTENC)
+        // Schnorr signatures have a fixed size encoding, so only the hashtype checks apply to them.
+        if (!isSchnorrSignature(sigBytes, flags)
+                && (flags.contains(VerifyFlag.STRICTENC)
                 || flags.contains(VerifyFlag.DERSIG)
-                || flags.contains(VerifyFlag.LOW_S))
-                && !TransactionSignature.isEncodingCanonical(sigBytes)) {
-            derEncodingOK = false;
-            errMsg = "Signature not in DER Format";
-        }
-
+                || flags.contains(VerifyFlag.LOW_S))) {
+            ECKey.ECDSASignature ecdsa = DER.decodeStrict(sigBytes);
+            if (ecdsa == null)
+                throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_DER, "Signature not in DER Format");
 
-        if (derEncodingOK) {
             // We check Low DER Signature...
-            if (flags.contains(VerifyFlag.LOW_S)) checkLowDERSignature(sigBytes);
-
-            // We check the HASHTYPE and the FORKID...
-            if (flags.contains(VerifyFlag.STRICTENC)) {
-
-                // Checking hashtype...
-                if (!TransactionSignature.isValidHashType(sigBytes)) {
-                    sighashTypeOK = false;
-                    errMsg = "Hashtype not correct in Signature";
-                }
-
+            if (flags.contains(VerifyFlag.LOW_S) && !ecdsa.isCanonical())
+                throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_HIGH_S, "S-value is not canonical");
 
-                // checking forkIdEnabled...
-                boolean usesForkId = TransactionSignature.hasForkId(sigBytes);
-                boolean forIkEnabled = flags.contains(VerifyFlag.SIGHASH_FORKID);
-                if (!forIkEnabled && usesForkId) {
-                    forkIdOK = false;
-                    errMsg = "FORKID verification disabled, but FORKId found in the Signature";
-                }
-                if (forIkEnabled && !usesForkId) {
-                    forkIdOK = false;
-                    errMsg = "FORKID verification enabled, but no FORKId found in the Signature";
-                }
-            }
+            sig = new TransactionSignature(ecdsa.getR(), ecdsa.getS(), sigBytes[sigBytes.length - 1] & 0xff);
         }
 
+        // We check the HASHTYPE and the FORKID...
+        if (flags.contains(VerifyFlag.STRICTENC)) {
 
-        // Now we trigger the error. In case more than one error has been detected, we trigger only one of them. The
-        // priority in this case does not affect the outcome of the Script (ScriptException in any case).
+            // Checking hashtype...
+            if (!TransactionSignature.isValidHashType(sigBytes))
+                throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_HASHTYPE, "Hashtype not correct in Signature");
 
-        if (!sighashTypeOK) throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_HASHTYPE, errMsg);
-        if (!forkIdOK) throw new ScriptException(ScriptError.SCRIPT_ERR_FORKID, errMsg);
-        if (!derEncodingOK) throw new ScriptException(ScriptError.SCRIPT_ERR_SIG_DER, errMsg);
+            // checking forkIdEnabled...
+            boolean usesForkId = TransactionSignature.hasForkId(sigBytes);
+            boolean forIkEnabled = flags.contains(VerifyFlag.SIGHASH_FORKID);
+            if (!forIkEnabled && usesForkId)
+                throw new ScriptException(ScriptError.SCRIPT_ERR_FORKID, "FORKID verification disabled, but FORKId found in the Signature");
+            if (forIkEnabled && !usesForkId)
+                throw new ScriptException(ScriptError.SCRIPT_ERR_FORKID, "FORKID verification enabled, but no FORKId found in the Signature");
+        }
 
         // If we reach this far, Signature is OK...
+        return sig;
     }
 
-    // TODO: Implementation pending...
-    private static void checkLowDERSignature(byte[] sigBytes) throws VerificationException.SignatureFormatError {}
+    /**
+     * Returns true if the given signature (including its sighash byte) has to be interpreted as a Schnorr signature
+     * under the given flags.
+     */
+    private static boolean isSchnorrSignature(byte[] sigBytes, Set<VerifyFlag> flags) {
+        return flags.contains(VerifyFlag.SCHNORR) && sigBytes.length == ECKey.SchnorrSignature.SIZE + 1;
+    }
 
     /**
      * Checks the Public Key encoding
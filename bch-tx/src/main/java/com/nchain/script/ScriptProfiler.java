@@ -0,0 +1,256 @@
+package com.nchain.script;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A low overhead profiler of the script interpreter, to find out which opcodes dominate the CPU in real traffic.
+ * While it is {@link #enable() enabled}, every chunk the interpreter steps through is counted against its opcode,
+ * with the time and, where the JVM can tell, the bytes allocated until the next chunk. The figures are kept in
+ * striped counters per {@link Script.ScriptType}: the type of the scriptPubKey being spent, which its scriptSig and
+ * P2SH redeem script are counted under too, or the type of the script itself when it is run directly with
+ * {@link Script#executeScript}.
+ *
+ * <p>Unlike a {@link ScriptStateListener} this neither copies nor wraps the stacks, and it can be switched on and off
+ * at runtime: a script that starts while it is disabled costs a single volatile read.</p>
+ *
+ * <pre>
+ * ScriptProfiler.enable();
+ * ... // validate some traffic
+ * ScriptProfiler.disable();
+ * System.out.println(ScriptProfiler.report());
+ * </pre>
+ */
+public final class ScriptProfiler {
+
+    /** What the opcodes of one script type have cost. */
+    public static final class Profile {
+        private final Script.ScriptType type;
+        private final LongAdder[] counts = adders();
+        private final LongAdder[] nanos = adders();
+        private final LongAdder[] bytes = adders();
+
+        private Profile(Script.ScriptType type) {
+            this.type = type;
+        }
+
+        public Script.ScriptType getType() {
+            return type;
+        }
+
+        /** The opcodes that were stepped through at least once, the most expensive first. */
+        public List<OpcodeStats> getOpcodes() {
+            List<OpcodeStats> opcodes = new ArrayList<OpcodeStats>();
+            for (int opcode = 0; opcode < 256; opcode++) {
+                long count = counts[opcode].sum();
+                if (count != 0)
+                    opcodes.add(new OpcodeStats(opcode, count, nanos[opcode].sum(), bytes[opcode].sum()));
+            }
+            Collections.sort(opcodes, BY_NANOS);
+            return opcodes;
+        }
+
+        private void reset() {
+            for (int opcode = 0; opcode < 256; opcode++) {
+                counts[opcode].reset();
+                nanos[opcode].reset();
+                bytes[opcode].reset();
+            }
+        }
+
+        private static LongAdder[] adders() {
+            LongAdder[] adders = new LongAdder[256];
+            for (int i = 0; i < adders.length; i++)
+                adders[i] = new LongAdder();
+            return adders;
+        }
+    }
+
+    /** The totals of one opcode. */
+    public static final class OpcodeStats {
+        private final int opcode;
+        private final long count;
+        private final long nanos;
+        private final long bytes;
+
+        OpcodeStats(int opcode, long count, long nanos, long bytes) {
+            this.opcode = opcode;
+            this.count = count;
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        public int getOpcode() {
+            return opcode;
+        }
+
+        public String getName() {
+            return opcode > ScriptOpCodes.OP_0 && opcode < ScriptOpCodes.OP_PUSHDATA1
+                    ? ScriptOpCodes.getPushDataName(opcode) : ScriptOpCodes.getOpCodeName(opcode);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /** The total time spent on the opcode, in nanoseconds. */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /** The total bytes allocated by the opcode, or 0 if the JVM doesn't measure allocations. */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return getName() + ": " + count + " runs, " + nanos + " ns, " + bytes + " bytes";
+        }
+    }
+
+    /**
+     * Times the chunks of one script run. The time and bytes of a chunk are those until the next chunk, or until
+     * {@link #finish()}; measuring between chunks rather than around them keeps the interpreter's many early
+     * {@code continue}s and exceptions out of the way.
+     */
+    static final class Run {
+        private final Profile profile;
+        private final long thread = Thread.currentThread().getId();
+        private int opcode = -1;
+        private long started;
+        private long allocated;
+
+        Run(Profile profile) {
+            this.profile = profile;
+        }
+
+        void step(int next) {
+            long now = System.nanoTime();
+            long bytes = allocatedBytes(thread);
+            if (opcode >= 0)
+                record(now, bytes);
+            opcode = next;
+            started = now;
+            allocated = bytes;
+        }
+
+        void finish() {
+            if (opcode >= 0)
+                record(System.nanoTime(), allocatedBytes(thread));
+            opcode = -1;
+        }
+
+        private void record(long now, long bytes) {
+            profile.counts[opcode].increment();
+            profile.nanos[opcode].add(now - started);
+            if (bytes > allocated)
+                profile.bytes[opcode].add(bytes - allocated);
+        }
+    }
+
+    private static final Comparator<OpcodeStats> BY_NANOS = new Comparator<OpcodeStats>() {
+        @Override
+        public int compare(OpcodeStats a, OpcodeStats b) {
+            return a.nanos != b.nanos ? (a.nanos > b.nanos ? -1 : 1) : a.opcode - b.opcode;
+        }
+    };
+
+    private static final Map<Script.ScriptType, Profile> profiles = new EnumMap<Script.ScriptType, Profile>(Script.ScriptType.class);
+    private static final com.sun.management.ThreadMXBean allocations = allocationBean();
+    private static volatile boolean enabled;
+
+    static {
+        for (Script.ScriptType type : Script.ScriptType.values())
+            profiles.put(type, new Profile(type));
+    }
+
+    private ScriptProfiler() {
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    /** Stops profiling; the scripts already running finish their profile. */
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Whether the bytes allocated by the opcodes are measured, which depends on the JVM. */
+    public static boolean isAllocationTracked() {
+        return allocations != null;
+    }
+
+    public static Profile getProfile(Script.ScriptType type) {
+        return profiles.get(type);
+    }
+
+    public static void reset() {
+        for (Profile profile : profiles.values())
+            profile.reset();
+    }
+
+    /** A table of the opcodes of each script type that ran, the most expensive first. */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Profile profile : profiles.values()) {
+            List<OpcodeStats> opcodes = profile.getOpcodes();
+            if (opcodes.isEmpty())
+                continue;
+            long total = 0;
+            for (OpcodeStats stats : opcodes)
+                total += stats.nanos;
+            sb.append(profile.type).append('\n');
+            sb.append(String.format(Locale.ROOT, "  %-22s %12s %14s %7s %10s %14s%n",
+                    "opcode", "count", "total us", "time %", "mean ns", "bytes"));
+            for (OpcodeStats stats : opcodes) {
+                sb.append(String.format(Locale.ROOT, "  %-22s %12d %14.1f %7.2f %10.1f %14d%n",
+                        stats.getName(), stats.count, stats.nanos / 1000.0,
+                        total == 0 ? 0.0 : 100.0 * stats.nanos / total, (double) stats.nanos / stats.count,
+                        stats.bytes));
+            }
+        }
+        return sb.toString();
+    }
+
+    /** A run of a script spending the given scriptPubKey, or null when profiling is disabled. */
+    static Run start(Script scriptPubKey) {
+        return enabled ? new Run(profiles.get(scriptPubKey.getScriptType())) : null;
+    }
+
+    private static long allocatedBytes(long thread) {
+        return allocations == null ? 0 : allocations.getThreadAllocatedBytes(thread);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+                if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+                    // The first call is slow; keep it out of the first opcode.
+                    sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    return sun;
+                }
+            }
+        } catch (LinkageError e) {
+            // Not a HotSpot-like JVM.
+        } catch (SecurityException e) {
+            // Not allowed to manage the threads.
+        }
+        return null;
+    }
+}
@@ -30,7 +30,8 @@ import java.util.Set;
  * script engine and as such will update on each call to the listener.  Also important to note that although the lists themselves cannot
  * be modified the elements are byte arrays and as such could be modified.  Here be dragons!
  *
- * This class is not recommended for real world use.  Only for testing and debugging scripts.
+ * This class is not recommended for real world use.  Only for testing and debugging scripts.  To find out where the
+ * interpreter spends its time in production, use {@link ScriptProfiler}.
  *
  * See the tools project for an example implementation InteractiveScriptStateListener
  *
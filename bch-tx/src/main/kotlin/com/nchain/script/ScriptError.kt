@@ -64,6 +64,7 @@ enum class ScriptError private constructor(val mnemonic: String) {
     SCRIPT_ERR_CLEANSTACK("CLEANSTACK"),
     SCRIPT_ERR_MINIMALIF("MINIMALIF"),
     SCRIPT_ERR_SIG_NULLFAIL("NULLFAIL"),
+    SCRIPT_ERR_SIG_BADLENGTH("SIG_BADLENGTH"),
 
     /* softfork safeness */
     SCRIPT_ERR_DISCOURAGE_UPGRADABLE_NOPS("DISCOURAGE_UPGRADABLE_NOPS"),
@@ -0,0 +1,157 @@
+package com.nchain.tools
+
+import com.nchain.script.Script
+import com.nchain.shared.ProtocolException
+import com.nchain.shared.VarInt
+import com.nchain.tx.Transaction
+import com.nchain.tx.TransactionInput
+import com.nchain.tx.TransactionOutPoint
+import com.nchain.tx.TransactionOutput
+import java.io.DataInputStream
+import java.io.EOFException
+import java.io.Flushable
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.EnumSet
+
+/**
+ * A validation workload to replay: transactions in dependency order, every input of which spends an output of an
+ * earlier one, except for the coinbase transactions that fund them, and the verify flags the scripts pass with.
+ * [WorkloadGenerator] makes them; [write] and [read] store them in a compact file:
+ *
+ * ```
+ * "BCHW" version(1) varint(flag count) (varint(length) flag name)* (varint(length) raw transaction)*
+ * ```
+ */
+class Workload(flags: Set<Script.VerifyFlag>, val transactions: List<Transaction>) {
+    // A copy that already holds STRICTENC when needed, so that correctlySpends needn't copy it again.
+    private val verifyFlags: EnumSet<Script.VerifyFlag> = EnumSet.noneOf(Script.VerifyFlag::class.java).apply {
+        addAll(flags)
+        if (contains(Script.VerifyFlag.SIGHASH_FORKID))
+            add(Script.VerifyFlag.STRICTENC)
+    }
+
+    private val outputs = HashMap<TransactionOutPoint, TransactionOutput>()
+
+    init {
+        for (tx in transactions) {
+            for (i in tx.outputs.indices)
+                outputs[TransactionOutPoint(i.toLong(), tx.hash)] = tx.outputs[i]
+        }
+    }
+
+    val flags: Set<Script.VerifyFlag>
+        get() = EnumSet.copyOf(verifyFlags)
+
+    /** The serialized size of the transactions, in bytes. */
+    val size: Long
+        get() = transactions.fold(0L) { size, tx -> size + tx.length }
+
+    /** The output that the input spends. */
+    fun spentOutput(input: TransactionInput): TransactionOutput {
+        val outpoint = TransactionOutPoint(input.outpoint.index, input.outpoint.hash)
+        return outputs[outpoint] ?: throw IllegalArgumentException("Not an output of this workload: $outpoint")
+    }
+
+    /**
+     * Verifies the scripts of every input of the transaction, as a validator would.
+     *
+     * @throws com.nchain.script.ScriptException if one doesn't verify.
+     */
+    fun verify(tx: Transaction) {
+        if (tx.isCoinBase)
+            return
+        for (i in tx.inputs.indices) {
+            val input = tx.inputs[i]
+            val output = spentOutput(input)
+            input.scriptSig.correctlySpends(tx, i.toLong(), Script(output.scriptBytes), output.value, verifyFlags)
+        }
+    }
+
+    /** Writes the workload in its file format; the stream is left open. */
+    @Throws(IOException::class)
+    fun write(out: OutputStream) {
+        val writer = Writer(out, verifyFlags)
+        for (tx in transactions)
+            writer.write(tx)
+        writer.flush()
+    }
+
+    /** Writes a workload a transaction at a time, so that a large one needn't be held in memory. */
+    class Writer @Throws(IOException::class) constructor(private val out: OutputStream,
+                                                         flags: Set<Script.VerifyFlag>) : Flushable {
+        init {
+            out.write(MAGIC)
+            out.write(VERSION)
+            out.write(VarInt(flags.size.toLong()).encode())
+            for (flag in flags)
+                writeBytes(flag.name.toByteArray(Charsets.US_ASCII))
+        }
+
+        @Throws(IOException::class)
+        fun write(tx: Transaction) = writeBytes(tx.bitcoinSerialize())
+
+        @Throws(IOException::class)
+        override fun flush() = out.flush()
+
+        private fun writeBytes(bytes: ByteArray) {
+            out.write(VarInt(bytes.size.toLong()).encode())
+            out.write(bytes)
+        }
+    }
+
+    companion object {
+        private val MAGIC = "BCHW".toByteArray(Charsets.US_ASCII)
+        private const val VERSION = 1
+
+        /** Reads a workload written by [write] or a [Writer], up to the end of the stream. */
+        @JvmStatic
+        @Throws(IOException::class)
+        fun read(input: InputStream): Workload {
+            val data = DataInputStream(input)
+            val magic = ByteArray(MAGIC.size)
+            data.readFully(magic)
+            if (!magic.contentEquals(MAGIC) || data.read() != VERSION)
+                throw ProtocolException("Not a workload file")
+            val flags = EnumSet.noneOf(Script.VerifyFlag::class.java)
+            for (i in 0 until readVarInt(data)!!)
+                flags.add(Script.VerifyFlag.valueOf(String(readBytes(data, readVarInt(data)!!), Charsets.US_ASCII)))
+            val transactions = ArrayList<Transaction>()
+            while (true) {
+                val length = readVarInt(data) ?: break
+                transactions.add(Transaction.parse(readBytes(data, length)))
+            }
+            return Workload(flags, transactions)
+        }
+
+        private fun readBytes(data: DataInputStream, length: Int): ByteArray {
+            val bytes = ByteArray(length)
+            data.readFully(bytes)
+            return bytes
+        }
+
+        // Null at the end of the stream.
+        private fun readVarInt(data: DataInputStream): Int? {
+            val first = data.read()
+            if (first < 0)
+                return null
+            val size = when (first) {
+                0xFD -> 2
+                0xFE -> 4
+                0xFF -> 8
+                else -> return first
+            }
+            var value = 0L
+            for (i in 0 until size) {
+                val b = data.read()
+                if (b < 0)
+                    throw EOFException()
+                value = value or (b.toLong() shl (8 * i))
+            }
+            if (value < 0 || value > Int.MAX_VALUE)
+                throw ProtocolException("Length out of range: $value")
+            return value.toInt()
+        }
+    }
+}
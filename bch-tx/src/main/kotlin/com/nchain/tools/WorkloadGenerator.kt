@@ -0,0 +1,314 @@
+package com.nchain.tools
+
+import com.nchain.bitcoinkt.core.TransactionSignatureService
+import com.nchain.key.ECKey
+import com.nchain.script.Script
+import com.nchain.script.ScriptBuilder
+import com.nchain.script.ScriptOpCodes.OP_CHECKSIG
+import com.nchain.script.ScriptOpCodes.OP_DUP
+import com.nchain.script.ScriptOpCodes.OP_EQUALVERIFY
+import com.nchain.script.ScriptOpCodes.OP_HASH160
+import com.nchain.tx.Coin
+import com.nchain.tx.Transaction
+import com.nchain.tx.TransactionInput
+import com.nchain.tx.TransactionOutPoint
+import com.nchain.tx.TransactionOutput
+import java.io.BufferedOutputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.math.BigInteger
+import java.util.EnumMap
+import java.util.EnumSet
+import java.util.Random
+
+/**
+ * Generates a synthetic [Workload] of valid, signed transactions for capacity testing, where [FakeTxBuilder] only
+ * makes a handful. The same seed and settings always give the same transactions, byte for byte.
+ *
+ * Each transaction spends outputs picked at random among the unspent outputs of the earlier ones. The number of
+ * inputs and outputs follow the [fanIn] and [fanOut] weights, the output scripts follow the [mix], and no chain of
+ * unconfirmed parents is longer than [maxDepth]. Coinbase transactions are added as needed to fund them.
+ *
+ * ```
+ * val generator = WorkloadGenerator(42)
+ * generator.maxBytes = 32_000_000
+ * generator.transactions = Int.MAX_VALUE
+ * generator.generate(FileOutputStream("block.workload"))
+ * ```
+ *
+ * Signing dominates the generation: expect a few minutes for a 32 MB workload.
+ */
+class WorkloadGenerator(val seed: Long) {
+
+    enum class OutputType {
+        P2PKH,
+        /** A 2-of-3 multisig redeem script behind a P2SH output. */
+        P2SH_MULTISIG,
+        /** An unspendable data output; a transaction has one at most. */
+        OP_RETURN,
+        /** A CHECKLOCKTIMEVERIFY payment channel, closed with both signatures or refunded after its lock time. */
+        CLTV_CHANNEL
+    }
+
+    /** The number of transactions to generate, funding transactions aside. */
+    var transactions = 1000
+
+    /** Stops once the transactions add up to this many bytes. */
+    var maxBytes = Long.MAX_VALUE
+
+    /** The longest chain of transactions spending each other's outputs; 1 only spends funding outputs. */
+    var maxDepth = 25
+
+    /** The number of outputs of each funding transaction. */
+    var fundingOutputs = 100
+
+    /** The weights of 1, 2, 3... inputs per transaction. */
+    var fanIn = intArrayOf(55, 30, 10, 5)
+
+    /** The weights of 1, 2, 3... outputs per transaction. */
+    var fanOut = intArrayOf(15, 65, 15, 5)
+
+    private val mix = EnumMap<OutputType, Int>(OutputType::class.java)
+
+    init {
+        mix[OutputType.P2PKH] = 70
+        mix[OutputType.P2SH_MULTISIG] = 15
+        mix[OutputType.OP_RETURN] = 5
+        mix[OutputType.CLTV_CHANNEL] = 10
+    }
+
+    /** Sets the weight of a type of output script; 0 leaves it out. */
+    fun mix(type: OutputType, weight: Int): WorkloadGenerator {
+        check(weight >= 0, {"Negative weight: $weight"})
+        mix[type] = weight
+        return this
+    }
+
+    fun generate(): Workload {
+        val transactions = ArrayList<Transaction>()
+        Run().generate { transactions.add(it) }
+        return Workload(FLAGS, transactions)
+    }
+
+    /** Generates the workload straight into its file format; the stream is left open. */
+    @Throws(IOException::class)
+    fun generate(out: OutputStream) {
+        val writer = Workload.Writer(out, FLAGS)
+        Run().generate { writer.write(it) }
+        writer.flush()
+    }
+
+    // An output that can be spent, with what it takes to sign for it.
+    private class Unspent(val outpoint: TransactionOutPoint, val value: Long, val type: OutputType,
+                          val keys: List<ECKey>, val scriptCode: Script, val depth: Int)
+
+    // The state of one generation, so that the generator can be run again with the same result.
+    private inner class Run {
+        val random = Random(seed)
+        val keys = List(KEYS) { ECKey.fromPrivate(BigInteger(1, bytes(32)), true) }
+        val spendable = mix.filter { it.key != OutputType.OP_RETURN }
+        val pool = ArrayList<Unspent>()
+        var fundings = 0L
+
+        fun generate(sink: (Transaction) -> Unit) {
+            check(mix.values.sum() > 0 && spendable.values.sum() > 0, {"No output type to spend in the mix"})
+            check(maxDepth > 0, {"maxDepth must be positive"})
+            var bytes = 0L
+            var count = 0
+            while (count < transactions && bytes < maxBytes) {
+                val inputs = ArrayList<Unspent>()
+                val wanted = pick(fanIn) + 1
+                while (inputs.size < wanted || sum(inputs) - fee(inputs.size) < MIN_OUTPUT) {
+                    if (pool.isEmpty()) {
+                        val funding = fund()
+                        sink(funding)
+                        bytes += funding.length
+                    }
+                    inputs.add(take())
+                }
+                val tx = spend(inputs)
+                sink(tx)
+                bytes += tx.length
+                count++
+            }
+        }
+
+        fun fund(): Transaction {
+            val types = List(fundingOutputs) { pick(spendable) }
+            val outputs = types.map { output(it, FUNDING_VALUE) }
+            val input = TransactionInput(ScriptBuilder().number(fundings++).build().getProgram())
+            val tx = Transaction(1, 0, listOf(input), outputs.map { it.first })
+            register(tx, outputs, 0)
+            return tx
+        }
+
+        fun spend(inputs: List<Unspent>): Transaction {
+            val depth = inputs.map { it.depth }.max()!! + 1
+            val total = sum(inputs) - fee(inputs.size)
+            val types = List(pick(fanOut) + 1) { pick(mix) }.toMutableList()
+            if (types.count { it == OutputType.OP_RETURN } > 1 || types.all { it == OutputType.OP_RETURN }) {
+                types.removeAll { it == OutputType.OP_RETURN }
+                types.add(OutputType.OP_RETURN)
+                types.add(0, pick(spendable))
+            }
+            while (types.count { it != OutputType.OP_RETURN } > Math.max(1L, total / MIN_OUTPUT))
+                types.removeAt(types.indexOfFirst { it != OutputType.OP_RETURN })
+            val paying = types.count { it != OutputType.OP_RETURN }
+            val first = types.indexOfFirst { it != OutputType.OP_RETURN }
+            val outputs = types.mapIndexed { i, type ->
+                val value = if (type == OutputType.OP_RETURN) 0 else total / paying + if (i == first) total % paying else 0
+                output(type, value)
+            }
+
+            // A refunded channel needs the lock time, and inputs that aren't final.
+            val refunds = inputs.map { it.type == OutputType.CLTV_CHANNEL && random.nextInt(3) == 0 }
+            val lockTime = if (refunds.contains(true)) CLTV_HEIGHT else 0L
+            val sequence = if (lockTime != 0L) TransactionInput.NO_SEQUENCE - 1 else TransactionInput.NO_SEQUENCE
+            val unsigned = Transaction(1, lockTime, inputs.map { TransactionInput(ByteArray(0), it.outpoint, sequence) },
+                    outputs.map { it.first })
+            // FORKID signatures don't cover the other scriptSigs, so each input can be signed against the unsigned tx.
+            val signed = inputs.mapIndexed { i, input ->
+                TransactionInput(scriptSig(unsigned, i, input, refunds[i]).getProgram(), input.outpoint, sequence)
+            }
+            val tx = Transaction(1, lockTime, signed, unsigned.outputs)
+            if (depth < maxDepth)
+                register(tx, outputs, depth)
+            return tx
+        }
+
+        fun scriptSig(tx: Transaction, index: Int, input: Unspent, refund: Boolean): Script {
+            val signatures = input.keys.take(if (input.type == OutputType.P2PKH || refund) 1 else 2).map {
+                TransactionSignatureService.calculateWitnessSignature(tx, index, it, input.scriptCode.getProgram(),
+                        Coin.valueOf(input.value), Transaction.SigHash.ALL, false, FLAGS)
+            }
+            return when (input.type) {
+                OutputType.P2PKH -> ScriptBuilder.createInputScript(signatures[0], input.keys[0])
+                OutputType.P2SH_MULTISIG -> ScriptBuilder.createP2SHMultiSigInputScript(signatures, input.scriptCode)
+                OutputType.CLTV_CHANNEL ->
+                    if (refund)
+                        ScriptBuilder.createCLTVPaymentChannelRefund(signatures[0])
+                    else
+                        ScriptBuilder.createCLTVPaymentChannelInput(signatures[0], signatures[1])
+                OutputType.OP_RETURN -> throw IllegalStateException("OP_RETURN outputs can't be spent")
+            }
+        }
+
+        // An output of the type, with the keys that sign for it and its script code: the redeem script of P2SH.
+        fun output(type: OutputType, value: Long): Pair<TransactionOutput, Unspent?> {
+            val coin = Coin.valueOf(value)
+            return when (type) {
+                OutputType.P2PKH -> {
+                    val key = key()
+                    val script = ScriptBuilder().op(OP_DUP).op(OP_HASH160).data(key.pubKeyHash).op(OP_EQUALVERIFY)
+                            .op(OP_CHECKSIG).build()
+                    Pair(TransactionOutput(coin, script.getProgram()), unspent(value, type, listOf(key), script))
+                }
+                OutputType.P2SH_MULTISIG -> {
+                    val signers = listOf(key(), key(), key())
+                    val redeemScript = ScriptBuilder.createRedeemScript(2, signers)
+                    Pair(TransactionOutput(coin, ScriptBuilder.createP2SHOutputScript(redeemScript).getProgram()),
+                            unspent(value, type, signers, redeemScript))
+                }
+                OutputType.CLTV_CHANNEL -> {
+                    // The refund is signed by the sender alone, who comes first.
+                    val from = key()
+                    val to = key()
+                    val script = ScriptBuilder.createCLTVPaymentChannelOutput(BigInteger.valueOf(CLTV_HEIGHT), from, to)
+                    Pair(TransactionOutput(coin, script.getProgram()), unspent(value, type, listOf(from, to), script))
+                }
+                OutputType.OP_RETURN ->
+                    Pair(TransactionOutput(coin, ScriptBuilder.createOpReturnScript(bytes(20 + random.nextInt(61))).getProgram()),
+                            null)
+            }
+        }
+
+        // Completed with the outpoint once the transaction is built.
+        fun unspent(value: Long, type: OutputType, keys: List<ECKey>, scriptCode: Script) =
+                Unspent(TransactionOutPoint.UNCONNECTED, value, type, keys, scriptCode, 0)
+
+        fun register(tx: Transaction, outputs: List<Pair<TransactionOutput, Unspent?>>, depth: Int) {
+            for (i in outputs.indices) {
+                val unspent = outputs[i].second ?: continue
+                pool.add(Unspent(TransactionOutPoint(i.toLong(), tx.hash), unspent.value, unspent.type, unspent.keys,
+                        unspent.scriptCode, depth))
+            }
+        }
+
+        // Removes a random output from the pool, in constant time.
+        fun take(): Unspent {
+            val i = random.nextInt(pool.size)
+            val unspent = pool[i]
+            pool[i] = pool[pool.size - 1]
+            pool.removeAt(pool.size - 1)
+            return unspent
+        }
+
+        fun pick(weights: IntArray): Int {
+            var r = random.nextInt(weights.sum())
+            for (i in weights.indices) {
+                r -= weights[i]
+                if (r < 0)
+                    return i
+            }
+            throw IllegalArgumentException("No positive weight")
+        }
+
+        fun pick(weights: Map<OutputType, Int>): OutputType {
+            var r = random.nextInt(weights.values.sum())
+            for ((type, weight) in weights) {
+                r -= weight
+                if (r < 0)
+                    return type
+            }
+            throw IllegalArgumentException("No positive weight")
+        }
+
+        fun key() = keys[random.nextInt(keys.size)]
+
+        fun bytes(size: Int): ByteArray {
+            val bytes = ByteArray(size)
+            random.nextBytes(bytes)
+            return bytes
+        }
+
+        fun sum(inputs: List<Unspent>) = inputs.fold(0L) { sum, it -> sum + it.value }
+
+        fun fee(inputs: Int) = FEE_PER_INPUT * inputs
+    }
+
+    companion object {
+        /** The flags the generated scripts are valid with. */
+        @JvmStatic val FLAGS: Set<Script.VerifyFlag> = EnumSet.of(
+                Script.VerifyFlag.P2SH,
+                Script.VerifyFlag.STRICTENC,
+                Script.VerifyFlag.DERSIG,
+                Script.VerifyFlag.LOW_S,
+                Script.VerifyFlag.NULLDUMMY,
+                Script.VerifyFlag.SIGPUSHONLY,
+                Script.VerifyFlag.MINIMALDATA,
+                Script.VerifyFlag.NULLFAIL,
+                Script.VerifyFlag.CLEANSTACK,
+                Script.VerifyFlag.CHECKLOCKTIMEVERIFY,
+                Script.VerifyFlag.SIGHASH_FORKID)
+
+        private const val KEYS = 64
+        private const val FUNDING_VALUE = 10 * 100_000_000L
+        private const val MIN_OUTPUT = 10_000L
+        private const val FEE_PER_INPUT = 250L
+        private const val CLTV_HEIGHT = 500_000L
+
+        /** Writes a workload file: `WorkloadGenerator <file> <seed> <megabytes>`. */
+        @JvmStatic
+        fun main(args: Array<String>) {
+            if (args.size != 3) {
+                System.err.println("Usage: WorkloadGenerator <file> <seed> <megabytes>")
+                System.exit(1)
+            }
+            val generator = WorkloadGenerator(args[1].toLong())
+            generator.transactions = Int.MAX_VALUE
+            generator.maxBytes = args[2].toLong() * 1_000_000
+            BufferedOutputStream(FileOutputStream(args[0])).use { generator.generate(it) }
+        }
+    }
+}
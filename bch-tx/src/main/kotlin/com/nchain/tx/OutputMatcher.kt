@@ -0,0 +1,306 @@
+package com.nchain.tx
+
+import com.nchain.address.CashAddress
+import com.nchain.params.NetworkParameters
+import com.nchain.shared.ProtocolException
+import com.nchain.tools.MessageReader
+import com.nchain.script.ScriptOpCodes.OP_CHECKSIG
+import com.nchain.script.ScriptOpCodes.OP_DUP
+import com.nchain.script.ScriptOpCodes.OP_EQUAL
+import com.nchain.script.ScriptOpCodes.OP_EQUALVERIFY
+import com.nchain.script.ScriptOpCodes.OP_HASH160
+import java.util.Arrays
+
+/**
+ * Screens transaction outputs against a large, fixed set of watched addresses. Instead of parsing each scriptPubKey
+ * into a [com.nchain.script.Script] and building a [CashAddress] from it, the 20 byte hash is read straight from the
+ * script bytes when they are one of the standard templates:
+ *
+ *  * P2PKH: `OP_DUP OP_HASH160 <20 bytes> OP_EQUALVERIFY OP_CHECKSIG`
+ *  * P2SH: `OP_HASH160 <20 bytes> OP_EQUAL`
+ *
+ * The hash is then checked against a blocked Bloom filter, which touches a single 64 byte block per lookup and
+ * rejects almost every output that isn't watched. Only the few that pass it are looked up in the exact set, an open
+ * addressing table of the hashes. Whole serialized transactions, such as the transactions of a block, can be screened
+ * without building [Transaction] objects at all, see [scanTransactions].
+ *
+ * Instances are immutable and thread safe; use a [Builder] to create one.
+ */
+class OutputMatcher private constructor(hashes: ByteArray, types: ByteArray, count: Int, bitsPerAddress: Int) {
+
+    /** An output paying to a watched address, found by [scanTransactions] or [scanBlock]. */
+    class Match internal constructor(
+            /** The position of the transaction in the scanned range. */
+            val transaction: Int,
+            /** The offset of the serialized transaction in the scanned bytes, to parse it if needed. */
+            val transactionOffset: Int,
+            /** The index of the output in the transaction. */
+            val output: Int,
+            val value: Coin,
+            val addressType: CashAddress.CashAddressType,
+            val hash160: ByteArray) {
+
+        fun toAddress(params: NetworkParameters): CashAddress = if (addressType == CashAddress.CashAddressType.PubKey)
+            CashAddress.fromP2PubKey(params, hash160)
+        else
+            CashAddress.fromP2SHHash(params, hash160)
+    }
+
+    /** Collects the watched addresses; they can be given as [CashAddress]es or as raw hashes. */
+    class Builder @JvmOverloads constructor(expectedSize: Int = 1024) {
+        private var hashes = ByteArray(Math.max(expectedSize, 16) * 20)
+        private var types = ByteArray(Math.max(expectedSize, 16))
+        private var count = 0
+        private var bitsPerAddress = DEFAULT_BITS_PER_ADDRESS
+
+        fun add(address: CashAddress): Builder = add(address.addressType, address.hash160)
+
+        fun add(addressType: CashAddress.CashAddressType, hash160: ByteArray): Builder {
+            check(hash160.size == 20, {"Not a 20 byte hash: ${hash160.size}"})
+            if (count == types.size) {
+                hashes = Arrays.copyOf(hashes, hashes.size * 2)
+                types = Arrays.copyOf(types, types.size * 2)
+            }
+            System.arraycopy(hash160, 0, hashes, count * 20, 20)
+            types[count++] = typeCode(addressType)
+            return this
+        }
+
+        fun addAll(addresses: Iterable<CashAddress>): Builder {
+            for (address in addresses)
+                add(address)
+            return this
+        }
+
+        /**
+         * The size of the Bloom filter per watched address, 16 by default. More bits mean fewer outputs reach the
+         * exact set; fewer bits mean a smaller filter that stays in cache more easily.
+         */
+        fun bitsPerAddress(bits: Int): Builder {
+            check(bits > 0, {"bits must be positive: $bits"})
+            bitsPerAddress = bits
+            return this
+        }
+
+        fun build(): OutputMatcher = OutputMatcher(hashes, types, count, bitsPerAddress)
+    }
+
+    // Blocked Bloom filter: 512 bit blocks, as 8 longs each. The block is picked by the first four bytes of a hash,
+    // the bits in it by the next eight, which is fine since hashes are uniformly distributed already.
+    private val filter: LongArray
+    private val blockMask: Int
+
+    // The exact set, with linear probing and at most half full. Slot s holds a hash at slotHashes[20 * s] and its
+    // type code in slotTypes[s], or EMPTY.
+    private val slotHashes: ByteArray
+    private val slotTypes: ByteArray
+    private val slotMask: Int
+
+    /** The number of distinct watched addresses. */
+    val size: Int
+
+    init {
+        var blocks = 1
+        while (blocks.toLong() * 512 < count.toLong() * bitsPerAddress)
+            blocks = blocks shl 1
+        filter = LongArray(blocks * 8)
+        blockMask = blocks - 1
+        var slots = 16
+        while (slots < count * 2L)
+            slots = slots shl 1
+        slotHashes = ByteArray(slots * 20)
+        slotTypes = ByteArray(slots)
+        slotMask = slots - 1
+
+        var distinct = 0
+        for (i in 0 until count) {
+            val offset = i * 20
+            var slot = readInt(hashes, offset + 12) and slotMask
+            while (slotTypes[slot] != EMPTY && !slotEquals(slot, types[i], hashes, offset))
+                slot = (slot + 1) and slotMask
+            if (slotTypes[slot] != EMPTY)
+                continue
+            System.arraycopy(hashes, offset, slotHashes, slot * 20, 20)
+            slotTypes[slot] = types[i]
+            distinct++
+
+            val base = (readInt(hashes, offset) and blockMask) * 8
+            var bits = readLong(hashes, offset + 4)
+            for (k in 0 until HASHES_PER_ADDRESS) {
+                val bit = bits.toInt() and 511
+                filter[base + (bit ushr 6)] = filter[base + (bit ushr 6)] or (1L shl bit)
+                bits = bits ushr 9
+            }
+        }
+        size = distinct
+    }
+
+    /** Returns true if the given address is watched. */
+    fun contains(address: CashAddress): Boolean = contains(address.addressType, address.hash160)
+
+    /** Returns true if the address of the given type and hash is watched. */
+    fun contains(addressType: CashAddress.CashAddressType, hash160: ByteArray): Boolean =
+            hash160.size == 20 && contains(typeCode(addressType), hash160, 0)
+
+    /** Returns true if the output pays to a watched address. */
+    fun matches(output: TransactionOutput): Boolean {
+        val script = output.scriptBytes
+        val hashOffset = hashOffset(script, 0, script.size)
+        return hashOffset >= 0 && contains(typeOf(script.size), script, hashOffset)
+    }
+
+    /** Returns the indexes of the outputs of the transaction that pay to a watched address. */
+    fun matchingOutputs(tx: Transaction): IntArray {
+        var matches = IntArray(0)
+        for (i in tx.outputs.indices) {
+            if (matches(tx.outputs[i])) {
+                matches = Arrays.copyOf(matches, matches.size + 1)
+                matches[matches.size - 1] = i
+            }
+        }
+        return matches
+    }
+
+    /**
+     * Screens `count` consecutive serialized transactions starting at `offset`, without parsing them into objects.
+     *
+     * @throws ProtocolException if the bytes end before the last transaction does.
+     */
+    @Throws(ProtocolException::class)
+    fun scanTransactions(payload: ByteArray, offset: Int, count: Int): List<Match> {
+        val matches = ArrayList<Match>()
+        val reader = MessageReader(payload, offset)
+        for (t in 0 until count)
+            scanTransaction(reader, t, matches)
+        return matches
+    }
+
+    /**
+     * Screens all the transactions of a serialized block: the 80 byte header, the number of transactions and the
+     * transactions themselves.
+     *
+     * @throws ProtocolException if the block is truncated.
+     */
+    @Throws(ProtocolException::class)
+    fun scanBlock(block: ByteArray): List<Match> {
+        val reader = MessageReader(block, 0)
+        skip(reader, BLOCK_HEADER_SIZE)
+        val count = reader.readVarInt()
+        val matches = ArrayList<Match>()
+        for (t in 0 until count)
+            scanTransaction(reader, t.toInt(), matches)
+        return matches
+    }
+
+    private fun scanTransaction(reader: MessageReader, transaction: Int, matches: MutableList<Match>) {
+        val payload = reader.payload
+        val transactionOffset = reader.cursor
+        skip(reader, 4) // version
+        val inputs = reader.readVarInt()
+        for (i in 0 until inputs) {
+            skip(reader, TransactionOutPoint.MESSAGE_LENGTH)
+            skip(reader, reader.readVarInt())
+            skip(reader, 4) // sequence
+        }
+        val outputs = reader.readVarInt()
+        for (o in 0 until outputs) {
+            val value = reader.readInt64()
+            val scriptLength = reader.readVarInt()
+            val scriptOffset = reader.cursor
+            skip(reader, scriptLength)
+            val hashOffset = hashOffset(payload, scriptOffset, scriptLength.toInt())
+            if (hashOffset < 0)
+                continue
+            val type = typeOf(scriptLength.toInt())
+            if (contains(type, payload, hashOffset))
+                matches.add(Match(transaction, transactionOffset, o.toInt(), Coin.valueOf(value),
+                        if (type == P2PKH) CashAddress.CashAddressType.PubKey else CashAddress.CashAddressType.Script,
+                        Arrays.copyOfRange(payload, hashOffset, hashOffset + 20)))
+        }
+        skip(reader, 4) // lock time
+    }
+
+    private fun contains(type: Byte, hashes: ByteArray, offset: Int): Boolean {
+        val base = (readInt(hashes, offset) and blockMask) * 8
+        var bits = readLong(hashes, offset + 4)
+        for (k in 0 until HASHES_PER_ADDRESS) {
+            val bit = bits.toInt() and 511
+            if (filter[base + (bit ushr 6)] and (1L shl bit) == 0L)
+                return false
+            bits = bits ushr 9
+        }
+        var slot = readInt(hashes, offset + 12) and slotMask
+        while (slotTypes[slot] != EMPTY) {
+            if (slotEquals(slot, type, hashes, offset))
+                return true
+            slot = (slot + 1) and slotMask
+        }
+        return false
+    }
+
+    private fun slotEquals(slot: Int, type: Byte, hashes: ByteArray, offset: Int): Boolean {
+        if (slotTypes[slot] != type)
+            return false
+        val slotOffset = slot * 20
+        for (b in 0 until 20)
+            if (slotHashes[slotOffset + b] != hashes[offset + b])
+                return false
+        return true
+    }
+
+    companion object {
+
+        const val DEFAULT_BITS_PER_ADDRESS = 16
+
+        private const val HASHES_PER_ADDRESS = 7
+        private const val BLOCK_HEADER_SIZE = 80
+
+        private const val EMPTY: Byte = 0
+        private const val P2PKH: Byte = 1
+        private const val P2SH: Byte = 2
+
+        private fun typeCode(addressType: CashAddress.CashAddressType): Byte =
+                if (addressType == CashAddress.CashAddressType.PubKey) P2PKH else P2SH
+
+        // Only called for scripts accepted by hashOffset, which tells the templates apart by their length.
+        private fun typeOf(scriptLength: Int): Byte = if (scriptLength == 25) P2PKH else P2SH
+
+        /**
+         * Returns the offset of the 20 byte hash if script[offset, offset + length) is a standard P2PKH or P2SH
+         * output script, otherwise -1. Like [com.nchain.script.Script.isPayToScriptHash] this matches the exact byte
+         * templates, so P2PKH scripts pushing the hash with a non-minimal push opcode are not recognised.
+         */
+        @JvmStatic
+        fun hashOffset(script: ByteArray, offset: Int, length: Int): Int {
+            if (length == 25 &&
+                    script[offset].toInt() and 0xff == OP_DUP &&
+                    script[offset + 1].toInt() and 0xff == OP_HASH160 &&
+                    script[offset + 2].toInt() == 20 &&
+                    script[offset + 23].toInt() and 0xff == OP_EQUALVERIFY &&
+                    script[offset + 24].toInt() and 0xff == OP_CHECKSIG)
+                return offset + 3
+            if (length == 23 &&
+                    script[offset].toInt() and 0xff == OP_HASH160 &&
+                    script[offset + 1].toInt() == 20 &&
+                    script[offset + 22].toInt() and 0xff == OP_EQUAL)
+                return offset + 2
+            return -1
+        }
+
+        private fun skip(reader: MessageReader, length: Long) {
+            if (length < 0 || length > reader.payload.size - reader.cursor)
+                throw ProtocolException("Attempted to read past the end of the transaction")
+            reader.addOffset(length.toInt())
+        }
+
+        private fun skip(reader: MessageReader, length: Int) = skip(reader, length.toLong())
+
+        private fun readInt(bytes: ByteArray, offset: Int): Int {
+            return (bytes[offset].toInt() shl 24) or ((bytes[offset + 1].toInt() and 0xff) shl 16) or
+                    ((bytes[offset + 2].toInt() and 0xff) shl 8) or (bytes[offset + 3].toInt() and 0xff)
+        }
+
+        private fun readLong(bytes: ByteArray, offset: Int): Long =
+                (readInt(bytes, offset).toLong() shl 32) or (readInt(bytes, offset + 4).toLong() and 0xffffffffL)
+    }
+}
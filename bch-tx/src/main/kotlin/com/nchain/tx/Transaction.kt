@@ -52,46 +52,49 @@ import java.util.*
  * are building a wallet, how to present confidence to your users is something to consider carefully.
  *
  *
- * Instances of this class are not safe for use by multiple threads.
+ * Instances of this class are immutable and thread safe: a parsed transaction can be shared between threads, for
+ * instance to verify its inputs in parallel.
  */
 class Transaction(val version: Long = 0L,
                   val lockTime: Long = 1L,
                   inputs:List<TransactionInput>? = null,
                   outputs: List<TransactionOutput>? = null) {
 
-    private var _hash: Sha256Hash? = null
-    private var _inputSum: Coin? = null
-    private var _outputSum: Coin? = null
-    private var _fee: Coin? = null
-    private var _length: Int? = null
+    // Lazily computed from the immutable fields below. Each cache holds an immutable value in a single volatile field
+    // that is read once into a local: threads that race to fill one compute equal values, and whichever is published
+    // is seen fully initialized.
+    @Volatile private var _serialized: Serialized? = null
+    @Volatile private var _inputSum: Coin? = null
+    @Volatile private var _outputSum: Coin? = null
+    @Volatile private var _fee: Coin? = null
+
+    // The length and hash are computed from the same bytes, so they are cached together.
+    private class Serialized(val length: Int, val hash: Sha256Hash)
 
     val inputs: List<TransactionInput>
     val outputs: List<TransactionOutput>
 
     init {
-        this.inputs = if (inputs != null) Collections.unmodifiableList(inputs) else Collections.EMPTY_LIST as List<TransactionInput>
-        this.outputs = if (outputs != null) Collections.unmodifiableList(outputs) else Collections.EMPTY_LIST as List<TransactionOutput>
+        this.inputs = if (inputs != null) Collections.unmodifiableList(ArrayList(inputs)) else Collections.EMPTY_LIST as List<TransactionInput>
+        this.outputs = if (outputs != null) Collections.unmodifiableList(ArrayList(outputs)) else Collections.EMPTY_LIST as List<TransactionOutput>
     }
 
-    val length: Int
+    private val serialized: Serialized
         get() {
-            if (_length == null) {
+            var serialized = _serialized
+            if (serialized == null) {
                 val bytes = bitcoinSerialize()
-                _length = bytes.size
-                _hash = Sha256Hash.wrapReversed(Sha256Hash.hashTwice(bytes))
+                serialized = Serialized(bytes.size, Sha256Hash.wrapReversed(Sha256Hash.hashTwice(bytes)))
+                _serialized = serialized
             }
-            return _length!!
+            return serialized
         }
 
+    val length: Int
+        get() = serialized.length
+
     val hash: Sha256Hash
-        get() {
-            if (_hash == null) {
-                val bytes = bitcoinSerialize()
-                _length = bytes.size
-                _hash = Sha256Hash.wrapReversed(Sha256Hash.hashTwice(bytes))
-            }
-            return _hash!!
-        }
+        get() = serialized.hash
 
     val hashAsString: String
         get() = hash.toString()
@@ -101,36 +104,42 @@ class Transaction(val version: Long = 0L,
      */
     val inputSum: Coin
         get() {
-            if (_inputSum == null) {
+            var sum = _inputSum
+            if (sum == null) {
                 var inputSum = 0L
                 for (input in inputs) {
                     if (input.connectedOutput?.value != null) {
                         inputSum = LongMath.checkedAdd(inputSum, input.connectedOutput!!.value.value)
                     }
                 }
-                _inputSum = Coin.valueOf(inputSum)
+                sum = Coin.valueOf(inputSum)
+                _inputSum = sum
             }
-            return _inputSum!!
+            return sum
         }
 
     val outputSum: Coin
         get() {
-            if (_outputSum == null) {
+            var sum = _outputSum
+            if (sum == null) {
                 var outputSum = 0L
                 for (output in outputs) {
                     outputSum = LongMath.checkedAdd(outputSum, output.value.value)
                 }
-                _outputSum = Coin.valueOf(outputSum)
+                sum = Coin.valueOf(outputSum)
+                _outputSum = sum
             }
-            return _outputSum!!
+            return sum
         }
 
     val fee: Coin
         get() {
-            if (_fee == null) {
-                _fee = inputSum.subtract(outputSum)
+            var fee = _fee
+            if (fee == null) {
+                fee = inputSum.subtract(outputSum)
+                _fee = fee
             }
-            return _fee!!
+            return fee
         }
 
 
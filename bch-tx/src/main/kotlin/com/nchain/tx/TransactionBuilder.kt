@@ -19,6 +19,7 @@ package com.nchain.tx
 
 import com.nchain.address.CashAddress
 import com.nchain.key.ECKey
+import com.nchain.metrics.Metrics
 import com.nchain.shared.Sha256Hash
 import com.nchain.shared.VarInt
 import com.nchain.tools.MessageReader
@@ -315,6 +316,7 @@ class TransactionBuilder
 */
     companion object {
         private val log = LoggerFactory.getLogger(TransactionBuilder::class.java!!)
+        private val PARSE = Metrics.stage("tx.parse")
 
         @JvmOverloads
         fun parse(rawHex: String):TransactionBuilder {
@@ -322,7 +324,9 @@ class TransactionBuilder
         }
 
         @JvmOverloads
-        fun parse(payload: ByteArray, offset:Int = 0):TransactionBuilder {
+        fun parse(payload: ByteArray, offset:Int = 0):TransactionBuilder = PARSE.time { read(payload, offset) }
+
+        private fun read(payload: ByteArray, offset: Int): TransactionBuilder {
             val reader = MessageReader(payload, offset)
 
             val version = reader.readUint32()
@@ -20,7 +20,6 @@ package com.nchain.tx
 
 import java.io.IOException
 import java.io.OutputStream
-import java.lang.ref.WeakReference
 
 import com.nchain.shared.VerificationException
 import com.nchain.shared.Sha256Hash
@@ -41,7 +40,7 @@ import java.util.*
  * to the outputs of another. The exceptions are coinbase transactions, which create new coins.
  *
  *
- * Instances of this class are not safe for use by multiple threads.
+ * Instances of this class are thread safe.
  */
 
 open class TransactionInput
@@ -71,9 +70,9 @@ open class TransactionInput
     // The "script bytes" might not actually be a script. In coinbase transactions where new coins are minted there
     // is no input transaction, so instead the scriptBytes contains some extra stuff (like a rollover nonce) that we
     // don't care about much. The bytes are turned into a Script object (cached below) on demand via a getter.
-    // The Script object obtained from parsing scriptBytes. Only filled in on demand and if the transaction is not
-    // coinbase.
-    private var _scriptSig: WeakReference<Script>? = null
+    // The Script object obtained from parsing scriptBytes, filled in on demand. Threads that race to fill it parse
+    // equal scripts, which are never modified once parsed, so it is safe to publish through a volatile field.
+    @Volatile private var _scriptSig: Script? = null
 
     /**
      * Returns the script that is fed to the referenced output (scriptPubKey) script in order to satisfy it: usually
@@ -84,11 +83,10 @@ open class TransactionInput
         get() {
             // Transactions that generate new coins don't actually have a script. Instead this
             // parameter is overloaded to be something totally different.
-            var script: Script? = if (_scriptSig == null) null else _scriptSig!!.get()
+            var script = _scriptSig
             if (script == null) {
-                // can be null because is the first time (no WeakReference) or because the WeakReference is empty
                 script = Script(scriptBytes)
-                _scriptSig = WeakReference(script)
+                _scriptSig = script
             }
             return script
         }
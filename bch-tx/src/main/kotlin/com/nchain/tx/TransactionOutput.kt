@@ -37,7 +37,7 @@ import java.util.*
  * A TransactionOutput message contains a scriptPubKey that controls who is able to spend its value. It is a sub-part
  * of the Transaction message.
  *
- * Instances of this class thread safe
+ * Instances of this class are thread safe.
  */
 class TransactionOutput(val value: Coin = Coin.ZERO,
                         val scriptBytes: ByteArray) {
@@ -193,15 +193,18 @@ class TransactionOutput(val value: Coin = Coin.ZERO,
     }
 */
 
-    private var _scriptPubKey: Script? = null
-    
+    // Parsed on demand; see TransactionInput.scriptSig.
+    @Volatile private var _scriptPubKey: Script? = null
+
     val scriptPubKey: Script
         @Throws(ScriptException::class)
         get() {
-            if (_scriptPubKey == null) {
-                _scriptPubKey = Script(scriptBytes)
+            var script = _scriptPubKey
+            if (script == null) {
+                script = Script(scriptBytes)
+                _scriptPubKey = script
             }
-            return _scriptPubKey!!
+            return script
         }
 
     /**
@@ -64,13 +64,7 @@ class TransactionSignature {
     }
 
     fun sigHashMode(): Transaction.SigHash {
-        val mode = sighashFlags and 0x1f
-        return if (mode == Transaction.SigHash.NONE.value)
-            Transaction.SigHash.NONE
-        else if (mode == Transaction.SigHash.SINGLE.value)
-            Transaction.SigHash.SINGLE
-        else
-            Transaction.SigHash.ALL
+        return sigHashMode(sighashFlags)
     }
 
     /**
@@ -80,9 +74,10 @@ class TransactionSignature {
      */
     fun bitcoinSerialize(): ByteArray {
         try {
-            val bos = DER.createByteStream(signature)
-            bos.write(sighashFlags)
-            return bos.toByteArray()
+            val der = DER.encode(signature)
+            val bytes = der.copyOf(der.size + 1)
+            bytes[der.size] = sighashFlags.toByte()
+            return bytes
         } catch (e: IOException) {
             throw RuntimeException(e)  // Cannot happen.
         }
@@ -107,6 +102,31 @@ class TransactionSignature {
             return TransactionSignature(`val`, `val`)
         }
 
+        /** Returns the signing mode encoded in the given sighash flags, ignoring the ANYONECANPAY and FORKID bits. */
+        @JvmStatic
+        fun sigHashMode(sighashFlags: Int): Transaction.SigHash {
+            val mode = sighashFlags and 0x1f
+            return if (mode == Transaction.SigHash.NONE.value)
+                Transaction.SigHash.NONE
+            else if (mode == Transaction.SigHash.SINGLE.value)
+                Transaction.SigHash.SINGLE
+            else
+                Transaction.SigHash.ALL
+        }
+
+        /**
+         * Serializes a Schnorr signature the way it appears in a scriptSig: the 64 byte signature followed by the
+         * sighash flags byte. Schnorr signatures are not DER encoded, so unlike [bitcoinSerialize] the result always
+         * has the same size.
+         */
+        @JvmStatic
+        fun encodeSchnorr(signature: ECKey.SchnorrSignature, sighashFlags: Int): ByteArray {
+            val bytes = ByteArray(ECKey.SchnorrSignature.SIZE + 1)
+            System.arraycopy(signature.encode(), 0, bytes, 0, ECKey.SchnorrSignature.SIZE)
+            bytes[ECKey.SchnorrSignature.SIZE] = sighashFlags.toByte()
+            return bytes
+        }
+
         /** Calculates the byte used in the protocol to represent the combination of mode and anyoneCanPay.  */
         @JvmStatic
         fun calcSigHashValue(mode: Transaction.SigHash, anyoneCanPay: Boolean): Int {
@@ -157,32 +177,7 @@ class TransactionSignature {
             // Where R and S are not negative (their first byte has its highest bit not set), and not
             // excessively padded (do not start with a 0 byte, unless an otherwise negative number follows,
             // in which case a single 0 byte is necessary and even required).
-
-            if (signature.size < 9 || signature.size > 73)
-                return false
-
-            //                   "wrong type"                  "wrong length marker"
-            if (signature[0].toInt() and 0xff != 0x30 || signature[1].toInt() and 0xff != signature.size - 3)
-                return false
-
-            val lenR = signature[3].toInt() and 0xff
-            if (5 + lenR >= signature.size || lenR == 0)
-                return false
-            val lenS = signature[5 + lenR].toInt() and 0xff
-            if (lenR + lenS + 7 != signature.size || lenS == 0)
-                return false
-
-            //    R value type mismatch          R value negative
-            if (signature[4 - 2].toInt() != 0x02 || signature[4].toInt() and 0x80 == 0x80)
-                return false
-            if (lenR > 1 && signature[4].toInt() == 0x00 && signature[4 + 1].toInt() and 0x80 != 0x80)
-                return false // R value excessively padded
-
-            //       S value type mismatch                    S value negative
-            if (signature[6 + lenR - 2].toInt() != 0x02 || signature[6 + lenR].toInt() and 0x80 == 0x80)
-                return false
-            return if (lenS > 1 && signature[6 + lenR].toInt() == 0x00 && signature[6 + lenR + 1].toInt() and 0x80 != 0x80) false else true // S value excessively padded
-
+            return DER.isStrictlyEncoded(signature)
         }
 
         @JvmStatic
@@ -222,13 +217,12 @@ class TransactionSignature {
                               requireCanonicalEncoding: Boolean,
                               requireCanonicalSValue: Boolean): TransactionSignature {
             // Bitcoin encoding is DER signature + sighash byte.
-            if (requireCanonicalEncoding && !isEncodingCanonical(bytes))
-                throw VerificationException("Signature encoding is not canonical.")
             val sig: ECKey.ECDSASignature
-            try {
+            if (requireCanonicalEncoding) {
+                // Validates and decodes in the same pass.
+                sig = DER.decodeStrict(bytes) ?: throw VerificationException("Signature encoding is not canonical.")
+            } else {
                 sig = DER.decodeSignature(bytes)
-            } catch (e: IllegalArgumentException) {
-                throw VerificationException("Could not decode DER: " + e.message)
             }
 
             if (requireCanonicalSValue && !sig.isCanonical)
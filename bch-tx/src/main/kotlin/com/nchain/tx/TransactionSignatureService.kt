@@ -1,6 +1,7 @@
 package com.nchain.bitcoinkt.core
 
 import com.nchain.key.ECKey
+import com.nchain.metrics.Metrics
 import com.nchain.shared.Sha256Hash
 import com.nchain.shared.VarInt
 import com.nchain.tools.ByteUtils
@@ -22,6 +23,9 @@ import kotlin.experimental.and
 
 object TransactionSignatureService {
 
+    private val SIGHASH_LEGACY = Metrics.stage("sighash.legacy")
+    private val SIGHASH_FORKID = Metrics.stage("sighash.forkid")
+
     /**
      * Calculates a signature that is valid for being inserted into the input at the given position. This is simply
      * a wrapper around calling [Transaction.hashForSignature]
@@ -55,6 +59,25 @@ object TransactionSignatureService {
         return TransactionSignature(key.sign(hash), hashType, anyoneCanPay, true)
     }
 
+    /**
+     * Calculates a FORKID Schnorr signature that is valid for being inserted into the input at the given position,
+     * already serialized with its sighash byte (see [TransactionSignature.encodeSchnorr]). Spending scripts must be
+     * verified with [Script.VerifyFlag.SCHNORR] for it to be accepted, and it can't be used in CHECKMULTISIG.
+     */
+    fun calculateSchnorrWitnessSignature(
+            tx: Transaction,
+            inputIndex: Int,
+            key: ECKey,
+            redeemScript: ByteArray,
+            value: Coin,
+            hashType: Transaction.SigHash,
+            anyoneCanPay: Boolean,
+            verifyFlags: Set<Script.VerifyFlag>): ByteArray {
+        val hash = hashForSignatureWitness(tx, inputIndex, redeemScript, value, hashType, anyoneCanPay, verifyFlags)
+        return TransactionSignature.encodeSchnorr(key.signSchnorr(hash),
+                TransactionSignature.calcSigHashValue(hashType, anyoneCanPay, true))
+    }
+
     /**
      * Calculates a signature that is valid for being inserted into the input at the given position. This is simply
      * a wrapper around calling [Transaction.hashForSignature]
@@ -212,7 +235,10 @@ object TransactionSignatureService {
      * This is required for signatures which use a sigHashType which cannot be represented using SigHash and anyoneCanPay
      * See transaction c99c49da4c38af669dea436d3e73780dfdb6c1ecf9958baa52960e8baee30e73, which has sigHashType 0
      */
-    fun hashForSignature(tx: Transaction, inputIndex: Int, connectedScript: ByteArray, sigHashType: Byte): Sha256Hash? {
+    fun hashForSignature(tx: Transaction, inputIndex: Int, connectedScript: ByteArray, sigHashType: Byte): Sha256Hash? =
+            SIGHASH_LEGACY.time { legacyHash(tx, inputIndex, connectedScript, sigHashType) }
+
+    private fun legacyHash(tx: Transaction, inputIndex: Int, connectedScript: ByteArray, sigHashType: Byte): Sha256Hash {
         // The SIGHASH flags are used in the design of contracts, please see this page for a further understanding of
         // the purposes of the code in this method:
         //
@@ -325,7 +351,6 @@ object TransactionSignatureService {
      * @param type Should be SigHash.ALL
      * @param anyoneCanPay should be false.
      */
-    @Synchronized
     fun hashForSignatureWitness(
             tx: Transaction,
             inputIndex: Int,
@@ -338,8 +363,17 @@ object TransactionSignatureService {
         return hashForSignatureWitness(tx, inputIndex, connectedScript, prevValue, type, anyoneCanPay, verifyFlags)
     }
 
-    @Synchronized
     fun hashForSignatureWitness(
+            tx: Transaction,
+            inputIndex: Int,
+            connectedScript: ByteArray,
+            prevValue: Coin,
+            type: Transaction.SigHash,
+            anyoneCanPay: Boolean,
+            verifyFlags: Set<Script.VerifyFlag>): Sha256Hash =
+            SIGHASH_FORKID.time { forkIdHash(tx, inputIndex, connectedScript, prevValue, type, anyoneCanPay, verifyFlags) }
+
+    private fun forkIdHash(
             tx: Transaction,
             inputIndex: Int,
             connectedScript: ByteArray,
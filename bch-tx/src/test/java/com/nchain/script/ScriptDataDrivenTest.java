@@ -116,10 +116,6 @@ public class ScriptDataDrivenTest {
 
             flags = ScriptHelpers.parseVerifyFlags(flagString);
 
-            // TODO: these capabilities have not been implemented yet or they are failing
-            if (expected.equals("SIG_HIGH_S")) {
-                return;
-            }
             scriptSig = ScriptHelpers.parseScriptString(scriptSigString);
             scriptPubKey = ScriptHelpers.parseScriptString(scriptPubKeyString);
 
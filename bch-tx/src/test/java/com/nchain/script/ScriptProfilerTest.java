@@ -0,0 +1,100 @@
+package com.nchain.script;
+
+import com.nchain.bitcoinkt.core.TransactionSignatureService;
+import com.nchain.key.ECKey;
+import com.nchain.script.Script.VerifyFlag;
+import com.nchain.tx.Coin;
+import com.nchain.tx.Transaction;
+import com.nchain.tx.TransactionBuilder;
+import com.nchain.tx.TransactionInput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import static com.nchain.script.ScriptOpCodes.*;
+import static org.junit.Assert.*;
+
+public class ScriptProfilerTest {
+
+    @Before
+    public void setUp() {
+        ScriptProfiler.reset();
+    }
+
+    @After
+    public void tearDown() {
+        ScriptProfiler.disable();
+        ScriptProfiler.reset();
+    }
+
+    @Test
+    public void profilesSpendsUnderTheScriptPubKeyType() {
+        ECKey key = ECKey.create();
+        Script scriptPubKey = ScriptBuilder.createOutputScript(key);
+        Coin value = Coin.valueOf(100000);
+        TransactionBuilder tx = new TransactionBuilder();
+        tx.addInput(new TransactionInput(new byte[] {}));
+        tx.addOutput(value, ScriptBuilder.createOutputScript(ECKey.create()));
+        EnumSet<VerifyFlag> flags = EnumSet.of(VerifyFlag.STRICTENC, VerifyFlag.SIGHASH_FORKID, VerifyFlag.SCHNORR);
+        byte[] sig = TransactionSignatureService.INSTANCE.calculateSchnorrWitnessSignature(tx.build(), 0, key,
+                scriptPubKey.getProgram(), value, Transaction.SigHash.ALL, false, flags);
+        Script scriptSig = new ScriptBuilder().data(sig).build();
+
+        scriptSig.correctlySpends(tx.build(), 0, scriptPubKey, value, flags);
+        assertTrue(ScriptProfiler.getProfile(Script.ScriptType.PUB_KEY).getOpcodes().isEmpty());
+
+        ScriptProfiler.enable();
+        for (int i = 0; i < 3; i++)
+            scriptSig.correctlySpends(tx.build(), 0, scriptPubKey, value, flags);
+        ScriptProfiler.reset(); // That was the warm-up.
+        for (int i = 0; i < 3; i++)
+            scriptSig.correctlySpends(tx.build(), 0, scriptPubKey, value, flags);
+        ScriptProfiler.disable();
+        scriptSig.correctlySpends(tx.build(), 0, scriptPubKey, value, flags);
+
+        Map<Integer, ScriptProfiler.OpcodeStats> opcodes = opcodes(Script.ScriptType.PUB_KEY);
+        assertEquals(3, opcodes.size());
+        assertEquals(3, opcodes.get(sig.length).getCount());
+        assertEquals(3, opcodes.get(key.getPubKey().length).getCount());
+        ScriptProfiler.OpcodeStats checkSig = opcodes.get(OP_CHECKSIG);
+        assertEquals(3, checkSig.getCount());
+        assertEquals("CHECKSIG", checkSig.getName());
+        assertTrue(checkSig.getNanos() > 0);
+        // The signature check dominates.
+        assertEquals(OP_CHECKSIG, ScriptProfiler.getProfile(Script.ScriptType.PUB_KEY).getOpcodes().get(0).getOpcode());
+        assertTrue(ScriptProfiler.getProfile(Script.ScriptType.P2PKH).getOpcodes().isEmpty());
+        assertTrue(ScriptProfiler.report().contains("CHECKSIG"));
+
+        ScriptProfiler.reset();
+        assertTrue(ScriptProfiler.getProfile(Script.ScriptType.PUB_KEY).getOpcodes().isEmpty());
+    }
+
+    @Test
+    public void profilesFailingScripts() {
+        Script script = new ScriptBuilder().op(OP_1).op(OP_2).op(OP_EQUALVERIFY).build();
+        ScriptProfiler.enable();
+        try {
+            Script.executeScript(new Transaction(), 0, script, new LinkedList<byte[]>(), Coin.getZERO(),
+                    EnumSet.noneOf(VerifyFlag.class));
+            fail();
+        } catch (ScriptException e) {
+            // expected
+        }
+
+        Map<Integer, ScriptProfiler.OpcodeStats> opcodes = opcodes(Script.ScriptType.NO_TYPE);
+        assertEquals(3, opcodes.size());
+        assertEquals(1, opcodes.get(OP_EQUALVERIFY).getCount());
+    }
+
+    private static Map<Integer, ScriptProfiler.OpcodeStats> opcodes(Script.ScriptType type) {
+        Map<Integer, ScriptProfiler.OpcodeStats> opcodes = new HashMap<Integer, ScriptProfiler.OpcodeStats>();
+        for (ScriptProfiler.OpcodeStats stats : ScriptProfiler.getProfile(type).getOpcodes())
+            opcodes.put(stats.getOpcode(), stats);
+        return opcodes;
+    }
+}
@@ -245,6 +245,76 @@ public class ScriptTest {
     }
 
 
+    @Test
+    public void testMultiSigSignatureOrder() {
+        List<ECKey> keys = Arrays.asList(ECKey.create(), ECKey.create(), ECKey.create(), ECKey.create());
+        Script multisig = ScriptBuilder.createMultiSigOutputScript(2, keys);
+        TransactionBuilder tx = new TransactionBuilder();
+        tx.addInput(new TransactionInput(new byte[] {}));
+        tx.addOutput(Coin.valueOf(1000), ScriptBuilder.createOutputScript(ECKey.create()));
+        Sha256Hash sighash = TransactionSignatureService.INSTANCE.hashForSignature(tx.build(), 0, multisig, Transaction.SigHash.ALL, false);
+        byte[] sig1 = new TransactionSignature(keys.get(1).sign(sighash), Transaction.SigHash.ALL, false).bitcoinSerialize();
+        byte[] sig3 = new TransactionSignature(keys.get(3).sign(sighash), Transaction.SigHash.ALL, false).bitcoinSerialize();
+        EnumSet<VerifyFlag> flags = EnumSet.of(VerifyFlag.STRICTENC, VerifyFlag.NULLFAIL);
+
+        // Signatures must appear in the same order as their keys.
+        new ScriptBuilder().smallNum(0).data(sig1).data(sig3).build().correctlySpends(tx.build(), 0, multisig, Coin.valueOf(0), flags);
+        try {
+            new ScriptBuilder().smallNum(0).data(sig3).data(sig1).build().correctlySpends(tx.build(), 0, multisig, Coin.valueOf(0), flags);
+            fail();
+        } catch (ScriptException e) {
+            assertEquals(ScriptError.SCRIPT_ERR_SIG_NULLFAIL, e.getError());
+        }
+
+        // Co-signing a P2SH input inserts each signature at the position of its key.
+        Script inputScript = ScriptBuilder.createP2SHMultiSigInputScript(null, multisig);
+        int index = inputScript.getSigInsertionIndex(sighash, keys.get(3));
+        assertEquals(0, index);
+        inputScript = ScriptBuilder.updateScriptWithSignature(inputScript, sig3, index, 1, 1);
+        index = inputScript.getSigInsertionIndex(sighash, keys.get(1));
+        assertEquals(0, index);
+        inputScript = ScriptBuilder.updateScriptWithSignature(inputScript, sig1, index, 1, 1);
+        assertArrayEquals(sig1, inputScript.getChunks().get(1).getData());
+        assertArrayEquals(sig3, inputScript.getChunks().get(2).getData());
+    }
+
+    @Test
+    public void testSchnorrCheckSig() {
+        ECKey key = ECKey.create();
+        Script scriptPubKey = ScriptBuilder.createOutputScript(key);
+        Coin value = Coin.valueOf(100000);
+        TransactionBuilder tx = new TransactionBuilder();
+        tx.addInput(new TransactionInput(new byte[] {}));
+        tx.addOutput(value, ScriptBuilder.createOutputScript(ECKey.create()));
+        EnumSet<VerifyFlag> flags = EnumSet.of(VerifyFlag.STRICTENC, VerifyFlag.SIGHASH_FORKID, VerifyFlag.SCHNORR);
+
+        byte[] sig = TransactionSignatureService.INSTANCE.calculateSchnorrWitnessSignature(tx.build(), 0, key,
+                scriptPubKey.getProgram(), value, Transaction.SigHash.ALL, false, flags);
+        assertEquals(65, sig.length);
+        Script scriptSig = new ScriptBuilder().data(sig).build();
+        scriptSig.correctlySpends(tx.build(), 0, scriptPubKey, value, flags);
+
+        // Without the SCHNORR flag the signature is parsed as DER and rejected.
+        try {
+            scriptSig.correctlySpends(tx.build(), 0, scriptPubKey, value, EnumSet.of(VerifyFlag.STRICTENC, VerifyFlag.SIGHASH_FORKID));
+            fail();
+        } catch (ScriptException e) {
+            // Expected.
+        }
+
+        // Schnorr signatures are not accepted in CHECKMULTISIG.
+        Script multisig = ScriptBuilder.createMultiSigOutputScript(1, Collections.singletonList(key));
+        byte[] multisigSig = TransactionSignatureService.INSTANCE.calculateSchnorrWitnessSignature(tx.build(), 0, key,
+                multisig.getProgram(), value, Transaction.SigHash.ALL, false, flags);
+        Script multisigScriptSig = new ScriptBuilder().smallNum(0).data(multisigSig).build();
+        try {
+            multisigScriptSig.correctlySpends(tx.build(), 0, multisig, value, flags);
+            fail();
+        } catch (ScriptException e) {
+            assertEquals(ScriptError.SCRIPT_ERR_SIG_BADLENGTH, e.getError());
+        }
+    }
+
     @Test
     public void dataDrivenValidScripts() throws Exception {
         JsonNode json = new ObjectMapper().readTree(new InputStreamReader(Thread.currentThread().getContextClassLoader().getResourceAsStream(
@@ -520,6 +590,17 @@ public class ScriptTest {
         }
     }
 
+    @Test
+    public void testExecutionLeavesPushedDataUnchanged() {
+        // Parsed scripts are shared between threads, so opcodes must not modify the data they push in place.
+        Script xor = new ScriptBuilder().data(new byte[]{0x0f}).data(new byte[]{(byte) 0xff}).op(ScriptOpCodes.OP_XOR).build();
+        Script num2bin = new ScriptBuilder().data(new byte[]{(byte) 0x85}).number(4).op(ScriptOpCodes.OP_NUM2BIN).build();
+        for (int run = 0; run < 2; run++) {
+            assertArrayEquals(new byte[]{(byte) 0xf0}, executeMonolithScript(xor));
+            assertArrayEquals(new byte[]{0x05, 0x00, 0x00, (byte) 0x80}, executeMonolithScript(num2bin));
+        }
+    }
+
     private byte bitwiseScript(byte a, byte b, String opcode) {
         byte[] result = bitwiseScript(new byte[]{a}, new byte[]{b}, opcode);
         return result[0];
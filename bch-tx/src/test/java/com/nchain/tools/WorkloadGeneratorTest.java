@@ -0,0 +1,128 @@
+package com.nchain.tools;
+
+import com.nchain.script.Script;
+import com.nchain.shared.Sha256Hash;
+import com.nchain.tx.Transaction;
+import com.nchain.tx.TransactionInput;
+import com.nchain.tx.TransactionOutput;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class WorkloadGeneratorTest {
+
+    @Test
+    public void generatesValidTransactions() {
+        WorkloadGenerator generator = new WorkloadGenerator(1);
+        generator.setTransactions(300);
+        generator.setMaxDepth(4);
+        generator.setFundingOutputs(20);
+        Workload workload = generator.generate();
+
+        EnumSet<WorkloadGenerator.OutputType> types = EnumSet.noneOf(WorkloadGenerator.OutputType.class);
+        Map<Sha256Hash, Integer> depths = new HashMap<Sha256Hash, Integer>();
+        int deepest = 0;
+        boolean refund = false;
+        int spending = 0;
+        for (Transaction tx : workload.getTransactions()) {
+            workload.verify(tx);
+            int depth = 0;
+            if (!tx.isCoinBase()) {
+                spending++;
+                for (TransactionInput input : tx.getInputs())
+                    depth = Math.max(depth, depths.get(input.getOutpoint().getHash()) + 1);
+                refund |= tx.getLockTime() != 0;
+            }
+            assertTrue(depth <= 4);
+            deepest = Math.max(deepest, depth);
+            depths.put(tx.getHash(), depth);
+            for (TransactionOutput output : tx.getOutputs())
+                types.add(typeOf(new Script(output.getScriptBytes())));
+        }
+        assertEquals(300, spending);
+        assertEquals(EnumSet.allOf(WorkloadGenerator.OutputType.class), types);
+        assertEquals(4, deepest);
+        assertTrue(refund);
+    }
+
+    @Test
+    public void isDeterministic() throws IOException {
+        assertArrayEquals(bytes(generator(7)), bytes(generator(7)));
+        assertFalse(Arrays.equals(bytes(generator(7)), bytes(generator(8))));
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        Workload workload = generator(3).generate();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        workload.write(out);
+        assertArrayEquals(bytes(generator(3)), out.toByteArray());
+
+        Workload read = Workload.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(WorkloadGenerator.getFLAGS(), read.getFlags());
+        assertEquals(workload.getTransactions().size(), read.getTransactions().size());
+        assertEquals(workload.getSize(), read.getSize());
+        for (int i = 0; i < workload.getTransactions().size(); i++) {
+            Transaction tx = read.getTransactions().get(i);
+            assertEquals(workload.getTransactions().get(i).getHash(), tx.getHash());
+            read.verify(tx);
+        }
+    }
+
+    @Test
+    public void stopsAtMaxBytes() {
+        WorkloadGenerator generator = generator(5);
+        generator.setTransactions(Integer.MAX_VALUE);
+        generator.setMaxBytes(20000);
+        Workload workload = generator.generate();
+        long last = workload.getTransactions().get(workload.getTransactions().size() - 1).getLength();
+        assertTrue(workload.getSize() >= 20000);
+        assertTrue(workload.getSize() - last < 20000);
+    }
+
+    @Test
+    public void followsTheMix() {
+        WorkloadGenerator generator = generator(9)
+                .mix(WorkloadGenerator.OutputType.P2PKH, 0)
+                .mix(WorkloadGenerator.OutputType.OP_RETURN, 0)
+                .mix(WorkloadGenerator.OutputType.CLTV_CHANNEL, 0);
+        Workload workload = generator.generate();
+        for (Transaction tx : workload.getTransactions()) {
+            workload.verify(tx);
+            for (TransactionOutput output : tx.getOutputs())
+                assertTrue(new Script(output.getScriptBytes()).isPayToScriptHash());
+        }
+    }
+
+    private static WorkloadGenerator generator(long seed) {
+        WorkloadGenerator generator = new WorkloadGenerator(seed);
+        generator.setTransactions(40);
+        generator.setFundingOutputs(10);
+        return generator;
+    }
+
+    private static byte[] bytes(WorkloadGenerator generator) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.generate(out);
+        return out.toByteArray();
+    }
+
+    private static WorkloadGenerator.OutputType typeOf(Script script) {
+        if (script.isSentToAddress())
+            return WorkloadGenerator.OutputType.P2PKH;
+        if (script.isPayToScriptHash())
+            return WorkloadGenerator.OutputType.P2SH_MULTISIG;
+        if (script.isOpReturn())
+            return WorkloadGenerator.OutputType.OP_RETURN;
+        assertTrue(script.isSentToCLTVPaymentChannel());
+        return WorkloadGenerator.OutputType.CLTV_CHANNEL;
+    }
+}
@@ -0,0 +1,253 @@
+package com.nchain.tx;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nchain.key.ECKey;
+import com.nchain.key.ECKeySigner;
+import com.nchain.params.NetworkParameters;
+import com.nchain.params.UnitTestParams;
+import com.nchain.script.Script;
+import com.nchain.script.ScriptHelpers;
+import com.nchain.script.ScriptProfiler;
+import com.nchain.shared.Sha256Hash;
+import com.nchain.tools.FakeTxBuilder;
+import com.nchain.tools.HEX;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Guards the allocation rate of the hot paths against regressions. Each operation is run over a fixed corpus, the
+ * JSON test vectors and {@link FakeTxBuilder} transactions, and the average bytes it allocates per run must stay
+ * within its budget in allocation-budgets.properties. When one doesn't, the failure lists the corpus entries that
+ * allocate the most and, for scripts, the opcodes they allocate in. Lower a budget when an optimization lands.
+ */
+public class AllocationBudgetTest {
+    private static final Logger log = LoggerFactory.getLogger(AllocationBudgetTest.class);
+    private static final NetworkParameters PARAMS = UnitTestParams.INSTANCE;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int TOP = 5;
+
+    /** One run of an operation on one corpus entry. */
+    private static final class Entry {
+        final String name;
+        final Runnable run;
+        long bytes;
+
+        Entry(String name, Runnable run) {
+            this.name = name;
+            this.run = run;
+        }
+    }
+
+    private static Properties budgets;
+    private static List<JsonNode> scriptTests;
+    private static List<Transaction> transactions;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        assumeTrue("allocations are not measured by this JVM", AllocationMeter.isSupported());
+        budgets = new Properties();
+        InputStream in = AllocationBudgetTest.class.getClassLoader().getResourceAsStream("allocation-budgets.properties");
+        try {
+            budgets.load(in);
+        } finally {
+            in.close();
+        }
+        scriptTests = new ArrayList<JsonNode>();
+        for (JsonNode test : readJson("script_tests.json")) {
+            if (test.size() > 1)
+                scriptTests.add(test);
+        }
+        transactions = new ArrayList<Transaction>();
+        for (JsonNode test : readJson("tx_valid.json")) {
+            if (test.size() > 1)
+                transactions.add(Transaction.parse(test.get(1).asText().toLowerCase()));
+        }
+        transactions.add(FakeTxBuilder.createFakeTx(PARAMS).build());
+        transactions.add(FakeTxBuilder.createFakeCoinbaseTx(PARAMS).build());
+        transactions.add(FakeTxBuilder.createFakeTxToMeWithReturnData(PARAMS, Coin.getCOIN(),
+                ECKey.create().toCashAddress(PARAMS), new byte[40]).build());
+        transactions.add(FakeTxBuilder.createFakeTxWithChangeAddress(PARAMS, Coin.getCOIN(),
+                ECKey.create().toCashAddress(PARAMS), ECKey.create().toCashAddress(PARAMS)).build());
+    }
+
+    @Test
+    public void scriptParse() throws IOException {
+        List<Entry> corpus = new ArrayList<Entry>();
+        for (JsonNode test : scriptTests) {
+            int i = test.get(0).isArray() ? 1 : 0;
+            for (String script : new String[] {test.get(i).asText(), test.get(i + 1).asText()}) {
+                final byte[] program;
+                try {
+                    program = ScriptHelpers.parseScriptString(script).getProgram();
+                } catch (RuntimeException e) {
+                    continue; // Not supported by the helper.
+                }
+                corpus.add(new Entry(script, new Runnable() {
+                    @Override
+                    public void run() {
+                        new Script(program);
+                    }
+                }));
+            }
+        }
+        checkBudget("script.parse", corpus, false);
+    }
+
+    @Test
+    public void scriptExecute() throws IOException {
+        List<Entry> corpus = new ArrayList<Entry>();
+        for (JsonNode test : scriptTests) {
+            int i = 0;
+            Coin value = Coin.valueOf(0);
+            if (test.get(0).isArray())
+                value = Coin.parseCoin(test.get(i++).get(0).asText());
+            String scriptSigString = test.get(i++).asText();
+            String scriptPubKeyString = test.get(i++).asText();
+            String flagString = test.get(i++).asText();
+            if (!"OK".equals(test.get(i).asText()))
+                continue;
+            try {
+                final Script scriptSig = ScriptHelpers.parseScriptString(scriptSigString);
+                final Script scriptPubKey = ScriptHelpers.parseScriptString(scriptPubKeyString);
+                final Set<Script.VerifyFlag> flags = ScriptHelpers.parseVerifyFlags(flagString);
+                final Coin amount = value;
+                final Transaction spend = ScriptHelpers.buildSpendingTransaction(scriptSig,
+                        ScriptHelpers.buildCreditingTransaction(scriptPubKey, value));
+                Entry entry = new Entry(scriptSigString + " | " + scriptPubKeyString, new Runnable() {
+                    @Override
+                    public void run() {
+                        scriptSig.correctlySpends(spend, 0, scriptPubKey, amount, flags);
+                    }
+                });
+                entry.run.run();
+                corpus.add(entry);
+            } catch (RuntimeException e) {
+                // Not supported by the helper.
+            }
+        }
+        checkBudget("script.execute", corpus, true);
+    }
+
+    @Test
+    public void transactionSerialize() {
+        List<Entry> corpus = new ArrayList<Entry>();
+        for (final Transaction tx : transactions) {
+            corpus.add(new Entry(tx.getHashAsString(), new Runnable() {
+                @Override
+                public void run() {
+                    tx.bitcoinSerialize();
+                }
+            }));
+        }
+        checkBudget("tx.serialize", corpus, false);
+    }
+
+    @Test
+    public void ecdsaVerify() {
+        List<Entry> corpus = new ArrayList<Entry>();
+        for (int i = 1; i <= 16; i++) {
+            ECKey key = ECKey.fromPrivate(BigInteger.valueOf(i).shiftLeft(200).add(BigInteger.valueOf(i)), true);
+            final byte[] hash = Sha256Hash.of(new byte[] {(byte) i}).getBytes();
+            final ECKey.ECDSASignature signature = key.sign(Sha256Hash.wrap(hash));
+            final byte[] pubKey = key.getPubKey();
+            corpus.add(new Entry(HEX.encode(pubKey), new Runnable() {
+                @Override
+                public void run() {
+                    ECKeySigner.verify(hash, signature, pubKey);
+                }
+            }));
+        }
+        checkBudget("ecdsa.verify", corpus, false);
+    }
+
+    @Test
+    public void sha256HashTwice() {
+        List<Entry> corpus = new ArrayList<Entry>();
+        for (Transaction tx : transactions) {
+            final byte[] bytes = tx.bitcoinSerialize();
+            corpus.add(new Entry(bytes.length + " bytes", new Runnable() {
+                @Override
+                public void run() {
+                    Sha256Hash.hashTwice(bytes);
+                }
+            }));
+        }
+        checkBudget("sha256.hashTwice", corpus, false);
+    }
+
+    private static void checkBudget(String operation, final List<Entry> corpus, boolean script) {
+        AllocationMeter meter = new AllocationMeter();
+        long perRun = meter.bytes(new Runnable() {
+            @Override
+            public void run() {
+                for (Entry entry : corpus)
+                    entry.run.run();
+            }
+        }, 5) / corpus.size();
+        long budget = Long.parseLong(budgets.getProperty(operation));
+        log.info("{}: {} bytes per run over {} runs, budget {}", operation, perRun, corpus.size(), budget);
+        // The breakdown measures every entry again and profiles the scripts, so it is only worked out on failure.
+        if (perRun > budget)
+            fail(report(operation, corpus, perRun, budget, meter, script));
+    }
+
+    private static String report(String operation, List<Entry> corpus, long perRun, long budget,
+                                 AllocationMeter meter, boolean script) {
+        for (Entry entry : corpus)
+            entry.bytes = meter.bytes(entry.run, 0);
+        List<Entry> sorted = new ArrayList<Entry>(corpus);
+        Collections.sort(sorted, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.bytes != b.bytes ? (a.bytes > b.bytes ? -1 : 1) : 0;
+            }
+        });
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s: %d bytes per run over %d runs, budget %d%n", operation, perRun, corpus.size(), budget));
+        sb.append("  top allocating entries:\n");
+        for (Entry entry : sorted.subList(0, Math.min(TOP, sorted.size()))) {
+            String name = entry.name.length() > 80 ? entry.name.substring(0, 77) + "..." : entry.name;
+            sb.append(String.format("  %10d  %s%n", entry.bytes, name));
+        }
+        if (script) {
+            ScriptProfiler.reset();
+            ScriptProfiler.enable();
+            try {
+                for (Entry entry : corpus)
+                    entry.run.run();
+            } finally {
+                ScriptProfiler.disable();
+            }
+            sb.append("  by opcode:\n").append(ScriptProfiler.report());
+            ScriptProfiler.reset();
+        }
+        return sb.toString();
+    }
+
+    private static JsonNode readJson(String resource) throws IOException {
+        InputStream in = AllocationBudgetTest.class.getClassLoader().getResourceAsStream(resource);
+        try {
+            return new ObjectMapper().readTree(new InputStreamReader(in, UTF8));
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.nchain.tx;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the bytes allocated on the heap by an operation, with the per-thread allocation counter of the JVM. The
+ * operation can be warmed up first, so that the JIT has its chance at removing allocations, then the best of a few
+ * rounds is kept, to be immune to the odd deoptimization or lazy initialization. The allocations of the counter itself
+ * are taken off.
+ */
+final class AllocationMeter {
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    private static final int ROUNDS = 5;
+
+    private final long overhead;
+
+    AllocationMeter() {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++)
+            overhead = Math.min(overhead, -allocated() + allocated());
+        this.overhead = overhead;
+    }
+
+    /** Whether this JVM counts allocations per thread. */
+    static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    /** The bytes allocated by one run of the operation, once it has been run the given number of times. */
+    long bytes(Runnable operation, int warmup) {
+        for (int i = 0; i < warmup; i++)
+            operation.run();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = allocated();
+            operation.run();
+            best = Math.min(best, allocated() - start - overhead);
+        }
+        return Math.max(0, best);
+    }
+
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+    }
+}
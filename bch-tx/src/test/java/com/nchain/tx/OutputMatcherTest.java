@@ -0,0 +1,105 @@
+package com.nchain.tx;
+
+import com.nchain.address.CashAddress;
+import com.nchain.key.ECKey;
+import com.nchain.params.NetworkParameters;
+import com.nchain.params.UnitTestParams;
+import com.nchain.script.ScriptBuilder;
+import com.nchain.shared.ProtocolException;
+import com.nchain.tools.FakeTxBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OutputMatcherTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.INSTANCE;
+
+    private final Random random = new Random(42);
+    private final List<CashAddress> watched = new ArrayList<>();
+    private final OutputMatcher matcher;
+
+    public OutputMatcherTest() {
+        OutputMatcher.Builder builder = new OutputMatcher.Builder(16);
+        for (int i = 0; i < 300; i++) {
+            CashAddress address = i % 3 == 0 ? CashAddress.fromP2SHHash(PARAMS, randomHash()) :
+                    CashAddress.fromP2PubKey(PARAMS, randomHash());
+            watched.add(address);
+            builder.add(address);
+        }
+        // Duplicates are only counted once.
+        builder.add(watched.get(1));
+        matcher = builder.build();
+    }
+
+    private byte[] randomHash() {
+        byte[] hash = new byte[20];
+        random.nextBytes(hash);
+        return hash;
+    }
+
+    @Test
+    public void lookups() {
+        assertEquals(300, matcher.getSize());
+        for (CashAddress address : watched)
+            assertTrue(matcher.contains(address));
+        // The same hash with the other address type isn't watched.
+        assertFalse(matcher.contains(CashAddress.fromP2SHHash(PARAMS, watched.get(1).getHash160())));
+        for (int i = 0; i < 10000; i++)
+            assertFalse(matcher.contains(CashAddress.CashAddressType.PubKey, randomHash()));
+    }
+
+    @Test
+    public void transactions() throws Exception {
+        Transaction tx1 = FakeTxBuilder.createFakeTx(PARAMS, Coin.valueOf(1000), watched.get(1)).build();
+        Transaction tx2 = new TransactionBuilder()
+                .addInput(tx1, 1)
+                .addOutput(Coin.valueOf(1), ECKey.create())
+                .addOutput(Coin.valueOf(2), ECKey.create().toCashAddress(PARAMS))
+                .addOutput(Coin.valueOf(3), ScriptBuilder.createP2SHOutputScript(watched.get(1).getHash160()))
+                .addOutput(Coin.valueOf(4), ScriptBuilder.createP2SHOutputScript(watched.get(3).getHash160()))
+                .addOutput(Coin.valueOf(5), watched.get(4))
+                .build();
+        assertArrayEquals(new int[] {0}, matcher.matchingOutputs(tx1));
+        assertArrayEquals(new int[] {3, 4}, matcher.matchingOutputs(tx2));
+        assertTrue(matcher.matches(tx2.getOutputs().get(3)));
+        assertFalse(matcher.matches(tx2.getOutputs().get(0)));
+
+        byte[] raw1 = tx1.bitcoinSerialize();
+        byte[] raw2 = tx2.bitcoinSerialize();
+        byte[] raw = Arrays.copyOf(raw1, raw1.length + raw2.length);
+        System.arraycopy(raw2, 0, raw, raw1.length, raw2.length);
+        List<OutputMatcher.Match> matches = matcher.scanTransactions(raw, 0, 2);
+        assertEquals(3, matches.size());
+        assertEquals(0, matches.get(0).getTransaction());
+        assertEquals(0, matches.get(0).getOutput());
+        assertEquals(Coin.valueOf(1000), matches.get(0).getValue());
+        assertEquals(watched.get(1), matches.get(0).toAddress(PARAMS));
+        assertEquals(1, matches.get(1).getTransaction());
+        assertEquals(raw1.length, matches.get(1).getTransactionOffset());
+        assertEquals(3, matches.get(1).getOutput());
+        assertEquals(watched.get(3), matches.get(1).toAddress(PARAMS));
+        assertEquals(Coin.valueOf(5), matches.get(2).getValue());
+        assertEquals(CashAddress.CashAddressType.PubKey, matches.get(2).getAddressType());
+        assertArrayEquals(watched.get(4).getHash160(), matches.get(2).getHash160());
+
+        // The same transactions as a block: an 80 byte header and the transaction count.
+        byte[] block = new byte[80 + 1 + raw.length];
+        block[80] = 2;
+        System.arraycopy(raw, 0, block, 81, raw.length);
+        List<OutputMatcher.Match> blockMatches = matcher.scanBlock(block);
+        assertEquals(3, blockMatches.size());
+        assertEquals(81 + raw1.length, blockMatches.get(1).getTransactionOffset());
+
+        try {
+            matcher.scanTransactions(Arrays.copyOf(raw, raw.length - 1), 0, 2);
+            fail();
+        } catch (ProtocolException e) {
+            // expected
+        }
+    }
+}
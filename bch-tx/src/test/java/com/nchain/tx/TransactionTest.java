@@ -28,14 +28,24 @@ import com.nchain.shared.Sha256Hash;
 import com.nchain.shared.VerificationException;
 import com.nchain.tools.FakeTxBuilder;
 import com.nchain.tools.HEX;
+import com.nchain.tools.Workload;
+import com.nchain.tools.WorkloadGenerator;
 import com.nchain.script.Script;
 import com.nchain.script.ScriptBuilder;
 import com.nchain.script.ScriptException;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -451,4 +461,41 @@ public class TransactionTest {
         assertEquals(rawTx4, HEX.encode(tx4.bitcoinSerialize()));
     }
 
+    @Test
+    public void sharedBetweenThreads() throws Exception {
+        WorkloadGenerator generator = new WorkloadGenerator(11);
+        generator.setTransactions(200);
+        Workload reference = generator.generate();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reference.write(out);
+        final Workload workload = Workload.read(new ByteArrayInputStream(out.toByteArray()));
+
+        // Every thread fills the caches of the same freshly parsed transactions and verifies their inputs.
+        final int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Sha256Hash>>> results = new ArrayList<Future<List<Sha256Hash>>>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(new Callable<List<Sha256Hash>>() {
+                    @Override
+                    public List<Sha256Hash> call() {
+                        List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
+                        for (Transaction tx : workload.getTransactions()) {
+                            workload.verify(tx);
+                            assertEquals(tx.bitcoinSerialize().length, tx.getLength());
+                            hashes.add(tx.getHash());
+                        }
+                        return hashes;
+                    }
+                }));
+            }
+            for (Future<List<Sha256Hash>> result : results) {
+                List<Sha256Hash> hashes = result.get();
+                for (int i = 0; i < hashes.size(); i++)
+                    assertEquals(reference.getTransactions().get(i).getHash(), hashes.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }